@@ -7,6 +7,7 @@ import com.aiforjava.llm.Chat.HighLevel.ChatServices;
 import com.aiforjava.llm.Chat.LowLevel.ChatServices_LowLevel;
 import com.aiforjava.llm.client.DefaultHttpClient;
 import com.aiforjava.llm.streams.DefaultStreamResponseParser;
+import com.aiforjava.llm.streams.StreamHandle;
 import com.aiforjava.llm.client.LLM_Client;
 import com.aiforjava.llm.models.ModelParams;
 import com.aiforjava.llm.Prompt.PromptTemplate;
@@ -33,6 +34,9 @@ public class SwingChatbot extends JFrame {
     private final JTextPane reasoningArea;
     private final JTextField inputField;
     private final JButton sendButton;
+    private final JButton stopButton;
+    private volatile StreamHandle activeStream; // The reply being generated, if any
+    private volatile boolean stopRequested; // Stop was clicked for the current reply, possibly before activeStream was set
     private ChatServices chatService;
     private File selectedImageFile; // To store the selected image file
     private JLabel selectedImageLabel; // To display the selected image filename
@@ -178,6 +182,14 @@ public class SwingChatbot extends JFrame {
         sendButton.setFocusPainted(true); // Remove focus border
         sendButton.setBorder(BorderFactory.createEmptyBorder(8, 15, 8, 15));
 
+        stopButton = new JButton("Stop");
+        stopButton.setBackground(BUTTON_COLOR);
+        stopButton.setForeground(FOREGROUND_COLOR);
+        stopButton.setFont(BUTTON_FONT);
+        stopButton.setFocusPainted(false);
+        stopButton.setBorder(BorderFactory.createEmptyBorder(8, 15, 8, 15));
+        stopButton.setEnabled(false); // Only enabled while a reply is being generated
+
         JButton clearButton = new JButton("Clear");
         clearButton.setBackground(BUTTON_COLOR);
         clearButton.setForeground(FOREGROUND_COLOR);
@@ -188,9 +200,10 @@ public class SwingChatbot extends JFrame {
         inputPanel.add(inputField, BorderLayout.CENTER);
 
         // Panel for buttons
-        JPanel buttonPanel = new JPanel(new GridLayout(1, 4, 5, 0)); // Changed to 4 columns for new button
+        JPanel buttonPanel = new JPanel(new GridLayout(1, 5, 5, 0)); // Changed to 5 columns for new button
         buttonPanel.setBackground(BACKGROUND_COLOR);
         buttonPanel.add(sendButton);
+        buttonPanel.add(stopButton);
         buttonPanel.add(clearButton);
 
         // Attach Image Button
@@ -298,6 +311,18 @@ public class SwingChatbot extends JFrame {
             }
         });
 
+        // Stop the reply being generated; the backend stops generating and the partial reply is kept in memory
+        stopButton.addActionListener(new ActionListener() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                stopRequested = true; // Seen by the worker if the stream has not been started yet
+                StreamHandle stream = activeStream;
+                if (stream != null) {
+                    stream.cancel(true);
+                }
+            }
+        });
+
         clearButton.addActionListener(new ActionListener() {
             @Override
             public void actionPerformed(ActionEvent e) {
@@ -386,6 +411,8 @@ public class SwingChatbot extends JFrame {
         // Disable input and button while AI is thinking
         inputField.setEnabled(false);
         sendButton.setEnabled(false);
+        stopRequested = false;
+        stopButton.setEnabled(true);
         generatingLabel.setVisible(true); // Show thinking indicator
         generatingAnimationTimer.start(); // Start animation
         appendStyledText("AI 🤖: ", FOREGROUND_COLOR, true, StyleConstants.ALIGN_LEFT); // Prepare for AI response
@@ -397,10 +424,18 @@ public class SwingChatbot extends JFrame {
         new SwingWorker<Void, com.aiforjava.llm.streams.StreamResponse>() {
             @Override
             protected Void doInBackground() throws Exception {
+                StreamHandle stream;
                 if (selectedImageFile != null) {
-                    chatService.chatStream(finalUserMessage, selectedImageFile, finalRequestParams, this::publish);
+                    stream = chatService.startChatStream(finalUserMessage, selectedImageFile, finalRequestParams, this::publish);
                 } else {
-                    chatService.chatStream(finalUserMessage, finalRequestParams, this::publish);
+                    stream = chatService.startChatStream(finalUserMessage, finalRequestParams, this::publish);
+                }
+                activeStream = stream;
+                if (stopRequested) {
+                    stream.cancel(true); // Stop was clicked while the stream was being started
+                }
+                if (!stream.isCancelled()) {
+                    stream.await();
                 }
                 return null;
             }
@@ -419,7 +454,13 @@ public class SwingChatbot extends JFrame {
 
             @Override
             protected void done() {
+                StreamHandle stream = activeStream;
+                activeStream = null;
                 try {
+                    if (stream != null && stream.isCancelled()) {
+                        appendStyledText(chatArea, " [stopped]\n\n", FOREGROUND_COLOR.darker(), false, StyleConstants.ALIGN_LEFT);
+                        return;
+                    }
                     get(); // Check for exceptions from doInBackground
                     appendStyledText(chatArea, "\n\n", FOREGROUND_COLOR, false, StyleConstants.ALIGN_LEFT); // New line after AI's response
                 } catch (Exception e) {
@@ -429,6 +470,7 @@ public class SwingChatbot extends JFrame {
                     // Re-enable input and button
                     inputField.setEnabled(true);
                     sendButton.setEnabled(true);
+                    stopButton.setEnabled(false);
                     generatingLabel.setVisible(false); // Hide thinking indicator
                     generatingAnimationTimer.stop(); // Stop animation
                     inputField.requestFocusInWindow(); // Focus back to input field
@@ -4,7 +4,6 @@ import com.aiforjava.exception.LLMServiceException;
 import com.aiforjava.llm.Chat.LowLevel.ChatServices_LowLevel;
 import com.aiforjava.llm.client.DefaultHttpClient;
 import com.aiforjava.llm.streams.DefaultStreamResponseParser;
-import com.aiforjava.llm.client.LLM_Client;
 import com.aiforjava.llm.models.ModelParams;
 import com.aiforjava.message.Message;
 import com.aiforjava.message.MessageRole;
@@ -15,8 +14,8 @@ import java.util.List;
 public class Welcome {
 
     public static String generateWelcomeMessage() throws LLMServiceException {
-        try{
-            LLM_Client client = new DefaultHttpClient("http://localhost:1234", Duration.ofSeconds(90),"local", false, new DefaultStreamResponseParser(), 0L);
+        // The client is only needed for this one greeting, so close it to release its share of the transport
+        try (DefaultHttpClient client = new DefaultHttpClient("http://localhost:1234", Duration.ofSeconds(90),"local", false, new DefaultStreamResponseParser(), 0L)) {
             ChatServices_LowLevel llm = new ChatServices_LowLevel(client, "google/gemma-3-1b");
 
             ModelParams params = new ModelParams.Builder()
@@ -0,0 +1,18 @@
+package com.aiforjava.exception;
+
+/**
+ * Thrown when a call to the LLM service is rejected locally, without contacting the backend at all:
+ * for example because a circuit breaker is open after repeated failures, or because the maximum
+ * number of concurrent calls is reached and the wait queue is full. Rejection is immediate, so callers
+ * can fail fast or fall back instead of waiting for a timeout from an unhealthy server.
+ */
+public class LLMCallRejectedException extends LLMServiceException {
+
+    public LLMCallRejectedException(String message) {
+        super(message);
+    }
+
+    public LLMCallRejectedException(String message, Throwable cause) {
+        super(message, cause);
+    }
+}
@@ -0,0 +1,39 @@
+package com.aiforjava.exception;
+
+import java.time.Duration;
+
+/**
+ * Represents an HTTP error response (status code >= 400) returned by the LLM service.
+ * Besides the message it carries the status code and, when the server sent a "Retry-After" header
+ * (typically with 429 or 503), the delay the server asked for. This lets callers such as a retry policy
+ * tell transient overload apart from errors that will not go away by themselves.
+ */
+public class LLMHttpException extends LLMServiceException {
+
+    private final int statusCode;
+    private final Duration retryAfter;
+
+    public LLMHttpException(String message, int statusCode) {
+        this(message, statusCode, null);
+    }
+
+    public LLMHttpException(String message, int statusCode, Duration retryAfter) {
+        super(message);
+        this.statusCode = statusCode;
+        this.retryAfter = retryAfter;
+    }
+
+    /**
+     * @return The HTTP status code of the error response.
+     */
+    public int getStatusCode() {
+        return statusCode;
+    }
+
+    /**
+     * @return The delay requested by the server's "Retry-After" header, or null if none was sent.
+     */
+    public Duration getRetryAfter() {
+        return retryAfter;
+    }
+}
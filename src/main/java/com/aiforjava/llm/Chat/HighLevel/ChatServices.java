@@ -1,11 +1,17 @@
 package com.aiforjava.llm.Chat.HighLevel;
 
+import com.aiforjava.exception.Exception_Timeout;
 import com.aiforjava.exception.LLMServiceException;
 import com.aiforjava.exception.LLMParseException;
 import com.aiforjava.llm.Chat.LowLevel.ChatServices_LowLevel;
+import com.aiforjava.llm.client.Deadline;
 import com.aiforjava.llm.client.LLMResponse;
 import com.aiforjava.llm.models.ModelParams;
+import com.aiforjava.llm.streams.OverflowPolicy;
+import com.aiforjava.llm.streams.StreamHandle;
 import com.aiforjava.llm.streams.StreamHandler;
+import com.aiforjava.llm.streams.StreamPublisher;
+import com.aiforjava.llm.streams.StreamResponse;
 import com.aiforjava.memory.MemoryManager;
 import com.aiforjava.message.Message;
 import com.aiforjava.message.MessageRole;
@@ -17,8 +23,12 @@ import com.aiforjava.util.ImageEncoder;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Provides a high-level abstraction for chat interactions with an LLM.
@@ -32,7 +42,7 @@ public class ChatServices {
     private final ModelParams defaultParams;
     private final PromptTemplate promptTemplate;
     private final PromptTemplate imageDescriptionPromptTemplate; // New prompt template for image descriptions
-    private String lastReasoningContent; // To store the reasoning part of the last response
+    private volatile String lastReasoningContent; // To store the reasoning part of the last response
 
     /**
      * Constructs a new ChatServices instance.
@@ -95,8 +105,23 @@ public class ChatServices {
      * @throws LLMServiceException If an error occurs during the chat completion.
      */
     public String chat(String userMessage, ModelParams params) throws LLMServiceException {
+        return chat(userMessage, params, Deadline.none());
+    }
+
+    /**
+     * Sends a user message to the LLM with custom model parameters and returns the response, giving up once the
+     * deadline has passed.
+     *
+     * @param userMessage The user's message.
+     * @param params The model parameters to use for this request.
+     * @param deadline The deadline for the whole exchange.
+     * @return The LLM's response.
+     * @throws LLMServiceException If an error occurs during the chat completion.
+     * @throws Exception_Timeout If the deadline passes.
+     */
+    public String chat(String userMessage, ModelParams params, Deadline deadline) throws LLMServiceException {
         memory.addMessage(new Message(MessageRole.USER, promptTemplate.formatUserMessage(userMessage)));
-        LLMResponse llmResponse = llm.generate(memory.getMessagesList(), params);
+        LLMResponse llmResponse = llm.generate(memory.getMessagesList(), params, deadline);
         this.lastReasoningContent = llmResponse.getReasoningContent(); // Store reasoning
         Message assistantMessage = new Message(MessageRole.ASSISTANT, llmResponse.getContent());
         assistantMessage.setTokenCount(llmResponse.getTotalTokens());
@@ -129,6 +154,24 @@ public class ChatServices {
      * @throws IOException If an I/O error occurs while reading the image file.
      */
     public String chat(String userMessage, File imageFile, ModelParams params) throws LLMServiceException, IOException {
+        return chat(userMessage, imageFile, params, Deadline.none());
+    }
+
+    /**
+     * Sends a user message along with an image to the LLM with custom model parameters and returns the response.
+     * The deadline covers both the image description and the reply: the reply only gets the budget the description
+     * left, and is not requested at all once the deadline has passed.
+     *
+     * @param userMessage The user's message.
+     * @param imageFile The image file to send.
+     * @param params The model parameters to use for this request.
+     * @param deadline The deadline for the whole exchange.
+     * @return The LLM's response.
+     * @throws LLMServiceException If an error occurs during the chat completion.
+     * @throws IOException If an I/O error occurs while reading the image file.
+     * @throws Exception_Timeout If the deadline passes.
+     */
+    public String chat(String userMessage, File imageFile, ModelParams params, Deadline deadline) throws LLMServiceException, IOException {
         String base64Image = ImageEncoder.encodeImageToBase64(imageFile);
         List<MessagePart> contentParts = Arrays.asList(
                 new TextPart(promptTemplate.formatUserMessage(userMessage)),
@@ -147,14 +190,14 @@ public class ChatServices {
                     .setTemperature(0.0)
                     .setMaxTokens(50) // Keep description concise
                     .build();
-            LLMResponse imageDescriptionResponse = llm.generate(Arrays.asList(new Message(MessageRole.USER, imageDescriptionContent)), descriptionParams);
+            LLMResponse imageDescriptionResponse = llm.generate(Arrays.asList(new Message(MessageRole.USER, imageDescriptionContent)), descriptionParams, deadline);
             memory.addMessage(new Message(MessageRole.SYSTEM, "Image Description: " + imageDescriptionResponse.getContent()));
         } catch (LLMParseException e) {
             // Log the error but don't fail the main chat operation
             System.err.println("Warning: Failed to generate image description: " + e.getMessage());
         }
 
-        LLMResponse llmResponse = llm.generate(memory.getMessagesList(), params);
+        LLMResponse llmResponse = llm.generate(memory.getMessagesList(), params, deadline);
         Message assistantMessage = new Message(MessageRole.ASSISTANT, llmResponse.getContent());
         assistantMessage.setTokenCount(llmResponse.getTotalTokens());
         memory.addMessage(assistantMessage);
@@ -182,8 +225,23 @@ public class ChatServices {
      * @throws LLMServiceException If an error occurs during the chat completion.
      */
     public LLMResponse chatAndGetTokens(String userMessage, ModelParams params) throws LLMServiceException {
+        return chatAndGetTokens(userMessage, params, Deadline.none());
+    }
+
+    /**
+     * Sends a user message to the LLM with custom model parameters and returns the response along with token
+     * information, giving up once the deadline has passed.
+     *
+     * @param userMessage The user's message.
+     * @param params The model parameters to use for this request.
+     * @param deadline The deadline for the whole exchange.
+     * @return An LLMResponse object containing the LLM's response and token count.
+     * @throws LLMServiceException If an error occurs during the chat completion.
+     * @throws Exception_Timeout If the deadline passes.
+     */
+    public LLMResponse chatAndGetTokens(String userMessage, ModelParams params, Deadline deadline) throws LLMServiceException {
         memory.addMessage(new Message(MessageRole.USER, promptTemplate.formatUserMessage(userMessage)));
-        LLMResponse llmResponse = llm.generate(memory.getMessagesList(), params);
+        LLMResponse llmResponse = llm.generate(memory.getMessagesList(), params, deadline);
         this.lastReasoningContent = llmResponse.getReasoningContent(); // Store reasoning
         Message assistantMessage = new Message(MessageRole.ASSISTANT, llmResponse.getContent());
         assistantMessage.setTokenCount(llmResponse.getTotalTokens());
@@ -216,6 +274,24 @@ public class ChatServices {
      * @throws IOException If an I/O error occurs while reading the image file.
      */
     public LLMResponse chatAndGetTokens(String userMessage, File imageFile, ModelParams params) throws LLMServiceException, IOException {
+        return chatAndGetTokens(userMessage, imageFile, params, Deadline.none());
+    }
+
+    /**
+     * Sends a user message along with an image to the LLM with custom model parameters and returns the response
+     * along with token information. The deadline covers both the image description and the reply, see
+     * {@link #chat(String, File, ModelParams, Deadline)}.
+     *
+     * @param userMessage The user's message.
+     * @param imageFile The image file to send.
+     * @param params The model parameters to use for this request.
+     * @param deadline The deadline for the whole exchange.
+     * @return An LLMResponse object containing the LLM's response and token count.
+     * @throws LLMServiceException If an error occurs during the chat completion.
+     * @throws IOException If an I/O error occurs while reading the image file.
+     * @throws Exception_Timeout If the deadline passes.
+     */
+    public LLMResponse chatAndGetTokens(String userMessage, File imageFile, ModelParams params, Deadline deadline) throws LLMServiceException, IOException {
         String base64Image = ImageEncoder.encodeImageToBase64(imageFile);
         List<MessagePart> contentParts = Arrays.asList(
                 new TextPart(promptTemplate.formatUserMessage(userMessage)),
@@ -234,14 +310,14 @@ public class ChatServices {
                     .setTemperature(0.0)
                     .setMaxTokens(50) // Keep description concise
                     .build();
-            LLMResponse imageDescriptionResponse = llm.generate(Arrays.asList(new Message(MessageRole.USER, imageDescriptionContent)), descriptionParams);
+            LLMResponse imageDescriptionResponse = llm.generate(Arrays.asList(new Message(MessageRole.USER, imageDescriptionContent)), descriptionParams, deadline);
             memory.addMessage(new Message(MessageRole.SYSTEM, "Image Description: " + imageDescriptionResponse.getContent()));
         } catch (LLMParseException e) {
             // Log the error but don't fail the main chat operation
             System.err.println("Warning: Failed to generate image description: " + e.getMessage());
         }
 
-        LLMResponse llmResponse = llm.generate(memory.getMessagesList(), params);
+        LLMResponse llmResponse = llm.generate(memory.getMessagesList(), params, deadline);
         Message assistantMessage = new Message(MessageRole.ASSISTANT, llmResponse.getContent());
         assistantMessage.setTokenCount(llmResponse.getTotalTokens());
         memory.addMessage(assistantMessage);
@@ -262,6 +338,7 @@ public class ChatServices {
 
     /**
      * Sends a user message to the LLM with custom model parameters and streams the response.
+     * The user message and the reply are added to the memory once the stream has completed.
      *
      * @param userMessage The user's message.
      * @param params The model parameters to use for this request.
@@ -269,40 +346,7 @@ public class ChatServices {
      * @throws LLMServiceException If an error occurs during the chat completion.
      */
     public void chatStream(String userMessage, ModelParams params, StreamHandler handler) throws LLMServiceException, LLMParseException {
-        boolean noThink = userMessage.endsWith("/no_think");
-        if (noThink) {
-            userMessage = userMessage.substring(0, userMessage.length() - "/no_think".length());
-        }
-
-        memory.addMessage(new Message(MessageRole.USER, promptTemplate.formatUserMessage(userMessage)));
-
-        List<Message> messagesToSend = new java.util.ArrayList<>(memory.getMessagesList());
-        if (noThink) {
-            Message lastUserMessage = messagesToSend.get(messagesToSend.size() - 1);
-            MessagePart firstPart = lastUserMessage.getContentParts().get(0);
-            if (firstPart instanceof TextPart) {
-                TextPart textPart = (TextPart) firstPart;
-                Message modifiedMessage = new Message(lastUserMessage.getRole(), Arrays.asList(new TextPart(textPart.getText() + "/no_think")));
-                messagesToSend.set(messagesToSend.size() - 1, modifiedMessage);
-            }
-        }
-
-        StringBuilder response = new StringBuilder();
-        StringBuilder reasoning = new StringBuilder();
-        llm.generateStream(messagesToSend, params, streamResponse -> {
-            if (streamResponse.getContent() != null) {
-                response.append(streamResponse.getContent());
-            }
-            if (streamResponse.getReasoningContent() != null) {
-                reasoning.append(streamResponse.getReasoningContent());
-            }
-            handler.onStream(streamResponse);
-        });
-        this.lastReasoningContent = reasoning.length() > 0 ? reasoning.toString() : null;
-        Message assistantMessage = new Message(MessageRole.ASSISTANT, response.toString());
-        // For streaming, we estimate tokens as actual token count is not directly available from stream
-        assistantMessage.setTokenCount(com.aiforjava.util.TokenCalculator.estimateTokens(assistantMessage));
-        memory.addMessage(assistantMessage);
+        startChatStream(userMessage, params, handler).await();
     }
 
     /**
@@ -321,6 +365,7 @@ public class ChatServices {
 
     /**
      * Sends a user message along with an image to the LLM with custom model parameters and streams the response.
+     * The user message, the image description and the reply are added to the memory once the stream has completed.
      *
      * @param userMessage The user's message.
      * @param imageFile The image file to send.
@@ -330,6 +375,100 @@ public class ChatServices {
      * @throws IOException If an I/O error occurs while reading the image file.
      */
     public void chatStream(String userMessage, File imageFile, ModelParams params, StreamHandler handler) throws LLMServiceException, IOException, LLMParseException {
+        startChatStream(userMessage, imageFile, params, handler).await();
+    }
+
+    /**
+     * Starts streaming the response to a user message in the background and returns a handle to stop it.
+     * This method uses the default model parameters.
+     *
+     * @param userMessage The user's message.
+     * @param handler The stream handler to process the response chunks.
+     * @return A handle to await or cancel the stream.
+     */
+    public StreamHandle startChatStream(String userMessage, StreamHandler handler) {
+        return startChatStream(userMessage, defaultParams, handler);
+    }
+
+    /**
+     * Starts streaming the response to a user message in the background and returns a handle to stop it.
+     * The memory is only updated when the stream ends: on success the user message and the reply are added.
+     * If the stream fails or is cancelled, the memory is left as it was, unless it was cancelled with
+     * {@link StreamHandle#cancel(boolean) cancel(true)}, in which case the partial reply is added as the
+     * assistant's message.
+     *
+     * @param userMessage The user's message.
+     * @param params The model parameters to use for this request.
+     * @param handler The stream handler to process the response chunks.
+     * @return A handle to await or cancel the stream.
+     */
+    public StreamHandle startChatStream(String userMessage, ModelParams params, StreamHandler handler) {
+        return startChatStream(userMessage, params, Deadline.none(), handler);
+    }
+
+    /**
+     * Starts streaming the response to a user message in the background, aborting the stream if it has not ended
+     * by the deadline. The handle then completes exceptionally with {@link Exception_Timeout} and the memory is
+     * left as it was.
+     *
+     * @param userMessage The user's message.
+     * @param params The model parameters to use for this request.
+     * @param deadline The deadline for the whole exchange.
+     * @param handler The stream handler to process the response chunks.
+     * @return A handle to await or cancel the stream.
+     */
+    public StreamHandle startChatStream(String userMessage, ModelParams params, Deadline deadline, StreamHandler handler) {
+        boolean noThink = userMessage.endsWith("/no_think");
+        if (noThink) {
+            userMessage = userMessage.substring(0, userMessage.length() - "/no_think".length());
+        }
+        Turn turn = new Turn(new Message(MessageRole.USER, promptTemplate.formatUserMessage(userMessage)));
+        return startTurn(turn, null, params, deadline, handler, noThink);
+    }
+
+    /**
+     * Starts streaming the response to a user message with an image in the background and returns a handle to stop it.
+     * This method uses the default model parameters.
+     *
+     * @param userMessage The user's message.
+     * @param imageFile The image file to send.
+     * @param handler The stream handler to process the response chunks.
+     * @return A handle to await or cancel the stream.
+     * @throws IOException If an I/O error occurs while reading the image file.
+     */
+    public StreamHandle startChatStream(String userMessage, File imageFile, StreamHandler handler) throws IOException {
+        return startChatStream(userMessage, imageFile, defaultParams, handler);
+    }
+
+    /**
+     * Starts streaming the response to a user message with an image in the background and returns a handle to stop it.
+     * The image description is generated first; cancelling the handle during that step aborts it as well.
+     * The memory is updated as described in {@link #startChatStream(String, ModelParams, StreamHandler)}.
+     *
+     * @param userMessage The user's message.
+     * @param imageFile The image file to send.
+     * @param params The model parameters to use for this request.
+     * @param handler The stream handler to process the response chunks.
+     * @return A handle to await or cancel the stream.
+     * @throws IOException If an I/O error occurs while reading the image file.
+     */
+    public StreamHandle startChatStream(String userMessage, File imageFile, ModelParams params, StreamHandler handler) throws IOException {
+        return startChatStream(userMessage, imageFile, params, Deadline.none(), handler);
+    }
+
+    /**
+     * Starts streaming the response to a user message with an image in the background. The deadline covers the
+     * image description and the whole stream; the stream is not started if the description used up the budget.
+     *
+     * @param userMessage The user's message.
+     * @param imageFile The image file to send.
+     * @param params The model parameters to use for this request.
+     * @param deadline The deadline for the whole exchange.
+     * @param handler The stream handler to process the response chunks.
+     * @return A handle to await or cancel the stream.
+     * @throws IOException If an I/O error occurs while reading the image file.
+     */
+    public StreamHandle startChatStream(String userMessage, File imageFile, ModelParams params, Deadline deadline, StreamHandler handler) throws IOException {
         boolean noThink = userMessage.endsWith("/no_think");
         if (noThink) {
             userMessage = userMessage.substring(0, userMessage.length() - "/no_think".length());
@@ -340,55 +479,192 @@ public class ChatServices {
                 new TextPart(promptTemplate.formatUserMessage(userMessage)),
                 new ImagePart(base64Image)
         );
-        memory.addMessage(new Message(MessageRole.USER, contentParts));
+        Turn turn = new Turn(new Message(MessageRole.USER, contentParts));
 
-        // Generate and store image description for memory persistence
-        try {
-            List<MessagePart> imageDescriptionContent = Arrays.asList(
-                    new TextPart(imageDescriptionPromptTemplate.getSystemPrompt()),
-                    new ImagePart(base64Image)
-            );
-            // Use a minimal ModelParams for description generation
-            ModelParams descriptionParams = new ModelParams.Builder()
-                    .setTemperature(0.0)
-                    .setMaxTokens(50) // Keep description concise
-                    .build();
-            LLMResponse imageDescriptionResponse = llm.generate(Arrays.asList(new Message(MessageRole.USER, imageDescriptionContent)), descriptionParams);
-            memory.addMessage(new Message(MessageRole.SYSTEM, "Image Description: " + imageDescriptionResponse.getContent()));
-        } catch (LLMParseException e) {
-            // Log the error but don't fail the main chat operation
-            System.err.println("Warning: Failed to generate image description: " + e.getMessage());
+        // Generate the image description for memory persistence
+        List<MessagePart> imageDescriptionContent = Arrays.asList(
+                new TextPart(imageDescriptionPromptTemplate.getSystemPrompt()),
+                new ImagePart(base64Image)
+        );
+        // Use a minimal ModelParams for description generation
+        ModelParams descriptionParams = new ModelParams.Builder()
+                .setTemperature(0.0)
+                .setMaxTokens(50) // Keep description concise
+                .build();
+        CompletableFuture<LLMResponse> imageDescription = llm.generateAsync(Arrays.asList(new Message(MessageRole.USER, imageDescriptionContent)), descriptionParams, deadline);
+        return startTurn(turn, imageDescription, params, deadline, handler, noThink);
+    }
+
+    /**
+     * Returns a publisher that streams the response to a user message when it is subscribed to, delivering chunks
+     * only as the subscriber requests them. This method uses the default model parameters; up to 256 chunks are
+     * buffered and the stream waits for the subscriber when the buffer is full ({@link OverflowPolicy#BLOCK}).
+     *
+     * @param userMessage The user's message.
+     * @return A publisher for a single subscriber.
+     */
+    public StreamPublisher chatStreamPublisher(String userMessage) {
+        return chatStreamPublisher(userMessage, defaultParams, 256, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Returns a publisher that streams the response to a user message when it is subscribed to, with the given
+     * buffer size and overflow policy, see {@link StreamPublisher}. The memory is updated as described in
+     * {@link #startChatStream(String, ModelParams, StreamHandler)}, with the complete reply even if the policy
+     * dropped chunks on their way to the subscriber; cancelling the subscription discards the exchange.
+     *
+     * @param userMessage The user's message.
+     * @param params The model parameters to use for this request.
+     * @param bufferSize The number of chunks held for the subscriber.
+     * @param overflowPolicy What to do with a chunk when the buffer is full.
+     * @return A publisher for a single subscriber.
+     */
+    public StreamPublisher chatStreamPublisher(String userMessage, ModelParams params, int bufferSize, OverflowPolicy overflowPolicy) {
+        return new StreamPublisher(handler -> startChatStream(userMessage, params, handler).getCompletion(), bufferSize, overflowPolicy);
+    }
+
+    /**
+     * Runs one streamed exchange: waits for the optional image description, streams the reply and commits the turn
+     * to the memory when the stream ends. Cancelling the returned handle aborts whichever step is running.
+     */
+    private StreamHandle startTurn(Turn turn, CompletableFuture<LLMResponse> imageDescription, ModelParams params, Deadline deadline, StreamHandler handler, boolean noThink) {
+        CompletableFuture<Void> completion = new CompletableFuture<>();
+        StreamHandle handle = new StreamHandle(completion);
+        CompletableFuture<LLMResponse> preparation = imageDescription != null ? imageDescription : CompletableFuture.completedFuture(null);
+        AtomicReference<CompletableFuture<?>> step = new AtomicReference<>(preparation);
+        completion.whenComplete((ignored, failure) -> {
+            if (completion.isCancelled()) {
+                step.get().cancel(true);
+                turn.finish(handle.isPartialResponseKept(), true);
+            }
+        });
+
+        preparation.whenComplete((description, descriptionFailure) -> {
+            if (descriptionFailure != null) {
+                Throwable cause = unwrap(descriptionFailure);
+                if (!(cause instanceof LLMParseException)) {
+                    completion.completeExceptionally(cause);
+                    return;
+                }
+                // Log the error but don't fail the main chat operation
+                System.err.println("Warning: Failed to generate image description: " + cause.getMessage());
+            } else if (description != null) {
+                turn.addContext(new Message(MessageRole.SYSTEM, "Image Description: " + description.getContent()));
+            }
+            if (completion.isDone()) {
+                return; // Cancelled while the description was being generated
+            }
+
+            CompletableFuture<Void> stream = llm.generateStreamAsync(turn.messagesToSend(noThink), params, new StreamHandler() {
+                @Override
+                public void onStream(StreamResponse streamResponse) {
+                    if (turn.record(streamResponse)) {
+                        handler.onStream(streamResponse);
+                    }
+                }
+
+                @Override
+                public void onComplete() {
+                    if (!completion.isDone()) {
+                        handler.onComplete();
+                    }
+                }
+            }, deadline);
+            step.set(stream);
+            if (completion.isDone()) {
+                stream.cancel(true);
+            }
+            stream.whenComplete((ignored, streamFailure) -> {
+                if (streamFailure != null) {
+                    completion.completeExceptionally(unwrap(streamFailure));
+                } else if (turn.finish(true, false)) {
+                    completion.complete(null);
+                }
+            });
+        });
+        return handle;
+    }
+
+    private static Throwable unwrap(Throwable failure) {
+        while (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
         }
+        return failure;
+    }
 
-        List<Message> messagesToSend = new java.util.ArrayList<>(memory.getMessagesList());
-        if (noThink) {
-            Message lastUserMessage = messagesToSend.get(messagesToSend.size() - 1);
-            MessagePart firstPart = lastUserMessage.getContentParts().get(0);
-            if (firstPart instanceof TextPart) {
-                TextPart textPart = (TextPart) firstPart;
-                List<MessagePart> newParts = new java.util.ArrayList<>(lastUserMessage.getContentParts());
-                newParts.set(0, new TextPart(textPart.getText() + "/no_think"));
-                Message modifiedMessage = new Message(lastUserMessage.getRole(), newParts);
-                messagesToSend.set(messagesToSend.size() - 1, modifiedMessage);
+    /**
+     * The messages of one streamed exchange, held back from the memory until the stream ends so that a failed or
+     * cancelled stream leaves the memory as it was.
+     */
+    private final class Turn {
+        private final Message userMessage;
+        private final List<Message> context = new ArrayList<>();
+        private final StringBuilder response = new StringBuilder();
+        private final StringBuilder reasoning = new StringBuilder();
+        private boolean finished;
+
+        Turn(Message userMessage) {
+            this.userMessage = userMessage;
+        }
+
+        synchronized void addContext(Message message) {
+            context.add(message);
+        }
+
+        synchronized List<Message> messagesToSend(boolean noThink) {
+            List<Message> messages = new ArrayList<>(memory.getMessagesList());
+            Message sentUserMessage = userMessage;
+            MessagePart firstPart = userMessage.getContentParts().get(0);
+            if (noThink && firstPart instanceof TextPart) {
+                List<MessagePart> newParts = new ArrayList<>(userMessage.getContentParts());
+                newParts.set(0, new TextPart(((TextPart) firstPart).getText() + "/no_think"));
+                sentUserMessage = new Message(userMessage.getRole(), newParts);
             }
+            messages.add(sentUserMessage);
+            messages.addAll(context);
+            return messages;
         }
 
-        StringBuilder response = new StringBuilder();
-        StringBuilder reasoning = new StringBuilder();
-        llm.generateStream(messagesToSend, params, streamResponse -> {
+        /**
+         * Appends a chunk to the reply, unless the turn has already finished.
+         *
+         * @return True if the chunk should be passed on to the handler.
+         */
+        synchronized boolean record(StreamResponse streamResponse) {
+            if (finished) {
+                return false;
+            }
             if (streamResponse.getContent() != null) {
                 response.append(streamResponse.getContent());
             }
             if (streamResponse.getReasoningContent() != null) {
                 reasoning.append(streamResponse.getReasoningContent());
             }
-            handler.onStream(streamResponse);
-        });
-        this.lastReasoningContent = reasoning.length() > 0 ? reasoning.toString() : null;
-        Message assistantMessage = new Message(MessageRole.ASSISTANT, response.toString());
-        // For streaming, we estimate tokens as actual token count is not directly available from stream
-        assistantMessage.setTokenCount(com.aiforjava.util.TokenCalculator.estimateTokens(assistantMessage));
-        memory.addMessage(assistantMessage);
+            return true;
+        }
+
+        /**
+         * Ends the turn, adding its messages to the memory if requested. A partial reply is only added if
+         * some content was received.
+         *
+         * @return False if the turn had already finished.
+         */
+        synchronized boolean finish(boolean commit, boolean partial) {
+            if (finished) {
+                return false;
+            }
+            finished = true;
+            if (commit && (!partial || response.length() > 0)) {
+                memory.addMessage(userMessage);
+                context.forEach(memory::addMessage);
+                lastReasoningContent = reasoning.length() > 0 ? reasoning.toString() : null;
+                Message assistantMessage = new Message(MessageRole.ASSISTANT, response.toString());
+                // For streaming, we estimate tokens as actual token count is not directly available from stream
+                assistantMessage.setTokenCount(com.aiforjava.util.TokenCalculator.estimateTokens(assistantMessage));
+                memory.addMessage(assistantMessage);
+            }
+            return true;
+        }
     }
 
     /**
@@ -1,21 +1,39 @@
 package com.aiforjava.llm.Chat.LowLevel;
 
+import com.aiforjava.exception.LLMNetworkException;
 import com.aiforjava.exception.LLMParseException;
 import com.aiforjava.exception.LLMServiceException;
+import com.aiforjava.exception.LLMStreamProcessingException;
+import com.aiforjava.llm.client.Deadline;
 import com.aiforjava.llm.client.LLM_Client;
 import com.aiforjava.llm.client.LLMResponse;
+import com.aiforjava.llm.client.RequestBody;
 import com.aiforjava.llm.models.ModelParams;
+import com.aiforjava.llm.streams.OverflowPolicy;
+import com.aiforjava.llm.streams.StreamHandle;
 import com.aiforjava.llm.streams.StreamHandler;
+import com.aiforjava.llm.streams.StreamPublisher;
+import com.aiforjava.llm.streams.StreamResponse;
 import com.aiforjava.message.Message;
 import com.aiforjava.message.files.ImagePart;
 import com.aiforjava.message.files.TextPart;
+import com.fasterxml.jackson.core.JsonGenerator;
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
-import com.fasterxml.jackson.databind.node.ArrayNode;
-import com.fasterxml.jackson.databind.node.ObjectNode;
 
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import com.aiforjava.memory.cache.LLMCacheManager;
 
 /**
@@ -29,6 +47,7 @@ public class ChatServices_LowLevel {
     private final String modelName;
     private final ObjectMapper mapper = new ObjectMapper();
     private final LLMCacheManager cacheManager;
+    private final Map<String, SharedStream> inFlightStreams = new ConcurrentHashMap<>();
 
     /**
      * Constructs a new ChatServices_LowLevel instance.
@@ -63,20 +82,89 @@ public class ChatServices_LowLevel {
      * @throws LLMServiceException If any service-related error occurs during the request.
      */
     public LLMResponse generate(List<Message> messages, ModelParams params) throws LLMServiceException {
-        try {
-            String requestJson = buildRequest(messages, params, false);
-            String response = client.sendRequest("v1/chat/completions", requestJson);
+        try (RequestBody requestBody = buildRequest(messages, params, false)) {
+            String response = client.sendRequest("v1/chat/completions", requestBody);
             return parseResponse(response);
         } catch (LLMServiceException e) {
             throw e;
         }
     }
 
+    /**
+     * Generates a chat completion response from the LLM without streaming, within the budget left by a deadline.
+     * The request is not sent if the deadline has already passed, and is aborted if it passes while waiting.
+     *
+     * @param messages A list of Message objects representing the conversation history.
+     * @param params ModelParams object containing parameters like temperature, max tokens, etc.
+     * @param deadline The deadline of the operation this call belongs to.
+     * @return The generated response content from the LLM.
+     * @throws LLMServiceException If any service-related error occurs during the request.
+     * @throws com.aiforjava.exception.Exception_Timeout If the deadline passes.
+     */
+    public LLMResponse generate(List<Message> messages, ModelParams params, Deadline deadline) throws LLMServiceException {
+        if (!deadline.isBounded()) {
+            return generate(messages, params);
+        }
+        CompletableFuture<LLMResponse> response = generateAsync(messages, params, deadline);
+        try {
+            return await(response);
+        } catch (LLMNetworkException e) {
+            response.cancel(true); // Interrupted: abort the request
+            throw e;
+        }
+    }
+
+    /**
+     * Generates a chat completion response from the LLM without streaming and without blocking the calling thread.
+     * The request is sent through {@link LLM_Client#sendRequestAsync(String, RequestBody)}, so many requests can be
+     * kept in flight without dedicating a thread to each of them.
+     *
+     * @param messages A list of Message objects representing the conversation history.
+     * @param params ModelParams object containing parameters like temperature, max tokens, etc.
+     * @return A CompletableFuture completed with the generated response, or exceptionally with an
+     *         {@link LLMServiceException} (e.g. {@link LLMParseException}) if the request or parsing fails.
+     *         Cancelling it aborts the request.
+     */
+    public CompletableFuture<LLMResponse> generateAsync(List<Message> messages, ModelParams params) {
+        return generateAsync(messages, params, Deadline.none());
+    }
+
+    /**
+     * Variant of {@link #generateAsync(List, ModelParams)} bound by a deadline: the request gets only the budget
+     * that is left, see {@link LLM_Client#sendRequestAsync(String, RequestBody, Deadline)}.
+     *
+     * @param messages A list of Message objects representing the conversation history.
+     * @param params ModelParams object containing parameters like temperature, max tokens, etc.
+     * @param deadline The deadline of the operation this call belongs to.
+     * @return A CompletableFuture completed with the generated response, or exceptionally with
+     *         {@link com.aiforjava.exception.Exception_Timeout} if the deadline passes.
+     */
+    public CompletableFuture<LLMResponse> generateAsync(List<Message> messages, ModelParams params, Deadline deadline) {
+        RequestBody requestBody = buildRequest(messages, params, false);
+        CompletableFuture<String> request = client.sendRequestAsync("v1/chat/completions", requestBody, deadline);
+        request.whenComplete((response, failure) -> requestBody.close());
+        CompletableFuture<LLMResponse> result = request
+                .thenApply(response -> {
+                    try {
+                        return parseResponse(response);
+                    } catch (LLMParseException e) {
+                        throw new CompletionException(e);
+                    }
+                });
+        result.whenComplete((response, failure) -> {
+            if (result.isCancelled()) {
+                request.cancel(true); // Abort the exchange, not just the parsing step
+            }
+        });
+        return result;
+    }
+
     /**
      * Generates a chat completion response from the LLM, utilizing a cache if available.
      * This method constructs the JSON request based on the provided messages and model parameters.
      * If a cached response is found, it is returned directly; otherwise, an LLM call is made
-     * and the response is stored in the cache.
+     * and the response is stored in the cache. Concurrent calls with identical messages and parameters
+     * are coalesced: only the first one sends a request and the others wait for its response.
      *
      * @param messages A list of Message objects representing the conversation history.
      * @param params ModelParams object containing parameters like temperature, max tokens, etc.
@@ -84,52 +172,194 @@ public class ChatServices_LowLevel {
      * @throws LLMServiceException If any service-related error occurs during the request.
      */
     public LLMResponse generateWithCache(List<Message> messages, ModelParams params) throws LLMServiceException {
+        if (cacheManager == null) {
+            return generate(messages, params);
+        }
+        // Wait on a copy: giving up must not cancel the shared request other callers are waiting for
+        return await(generateWithCacheAsync(messages, params));
+    }
+
+    /**
+     * Asynchronous variant of {@link #generateWithCache(List, ModelParams)}. Identical concurrent requests share
+     * one in-flight request; cancelling the returned future only stops this caller from waiting.
+     *
+     * @param messages A list of Message objects representing the conversation history.
+     * @param params ModelParams object containing parameters like temperature, max tokens, etc.
+     * @return A CompletableFuture completed with the cached or generated response.
+     */
+    public CompletableFuture<LLMResponse> generateWithCacheAsync(List<Message> messages, ModelParams params) {
+        if (cacheManager == null) {
+            return generateAsync(messages, params);
+        }
         String cacheKey = generateCacheKey(messages, params);
-        if (cacheManager != null) {
-            LLMResponse cachedResponse = cacheManager.get(cacheKey);
-            if (cachedResponse != null) {
-                return cachedResponse;
-            }
+        return cacheManager.get(cacheKey, key -> generateAsync(messages, params)).copy();
+    }
+
+    /**
+     * Generates a chat completion response from the LLM with streaming, sharing identical streams.
+     * If the same messages and parameters are already being streamed for another caller, this caller joins that
+     * stream: it first receives the chunks delivered so far and then the rest as they arrive, and no second request
+     * is sent. If a cache manager is configured, a cached response is delivered as a single chunk and the output of
+     * a completed stream is cached.
+     *
+     * @param messages A list of Message objects representing the conversation history.
+     * @param params ModelParams object containing parameters like temperature, max tokens, etc.
+     * @param handler A StreamHandler to process the incoming stream of content.
+     * @throws LLMServiceException If any error occurs during streaming generation.
+     */
+    public void generateStreamWithCache(List<Message> messages, ModelParams params, StreamHandler handler) throws LLMServiceException {
+        CompletableFuture<Void> subscription = generateStreamWithCacheAsync(messages, params, handler);
+        try {
+            await(subscription);
+        } catch (LLMNetworkException e) {
+            subscription.cancel(true); // Interrupted: leave the shared stream
+            throw e;
         }
+    }
+
+    /**
+     * Asynchronous variant of {@link #generateStreamWithCache(List, ModelParams, StreamHandler)}.
+     * Cancelling the returned future detaches this caller; the upstream request is only cancelled once every
+     * caller sharing it has left.
+     *
+     * @param messages A list of Message objects representing the conversation history.
+     * @param params ModelParams object containing parameters like temperature, max tokens, etc.
+     * @param handler A StreamHandler to process the incoming stream of content.
+     * @return A CompletableFuture that completes when the stream has ended for this caller.
+     */
+    public CompletableFuture<Void> generateStreamWithCacheAsync(List<Message> messages, ModelParams params, StreamHandler handler) {
+        String cacheKey = generateCacheKey(messages, params);
+        while (true) {
+            LLMResponse cached = cacheManager != null ? cacheManager.get(cacheKey) : null;
+            if (cached != null) {
+                try {
+                    handler.onStream(new StreamResponse(cached.getContent(), cached.getReasoningContent()));
+                    handler.onComplete();
+                    return CompletableFuture.completedFuture(null);
+                } catch (RuntimeException e) {
+                    return CompletableFuture.failedFuture(e instanceof LLMStreamProcessingException ? e : new LLMStreamProcessingException("Error during stream processing", e));
+                }
+            }
 
-        LLMResponse llmResponse = generate(messages, params); // Use the existing generate method
+            SharedStream created = new SharedStream();
+            SharedStream shared = inFlightStreams.putIfAbsent(cacheKey, created);
+            boolean leader = shared == null;
+            if (leader) {
+                shared = created;
+            }
+            CompletableFuture<Void> subscription = shared.join(handler);
+            if (subscription == null) {
+                continue; // The stream ended between lookup and join; its output may be cached now
+            }
+            if (leader) {
+                SharedStream stream = shared;
+                CompletableFuture<Void> upstream;
+                try {
+                    RequestBody requestBody = buildRequest(messages, params, true);
+                    upstream = client.sendStreamRequestAsync("v1/chat/completions", requestBody, stream);
+                    upstream.whenComplete((ignored, failure) -> requestBody.close());
+                } catch (RuntimeException e) {
+                    upstream = CompletableFuture.failedFuture(e);
+                }
+                stream.start(upstream, failure -> {
+                    inFlightStreams.remove(cacheKey, stream);
+                    if (failure == null && cacheManager != null) {
+                        cacheManager.put(cacheKey, stream.toResponse());
+                    }
+                });
+            }
+            return subscription;
+        }
+    }
 
-        if (cacheManager != null) {
-            cacheManager.put(cacheKey, llmResponse);
+    private static <T> T await(CompletableFuture<T> future) throws LLMServiceException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LLMNetworkException("Request was Interrupted", e);
+        } catch (CancellationException e) {
+            throw new LLMNetworkException("Request was cancelled", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            while (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof LLMServiceException) {
+                throw (LLMServiceException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new LLMServiceException("Unexpected error during LLM request", cause);
         }
-        return llmResponse;
     }
 
     /**
-     * Generates a unique cache key based on the messages and model parameters.
-     * This key is used to store and retrieve responses from the cache.
+     * Generates a unique cache key based on the model, the messages and the model parameters.
+     * This key is used to store and retrieve responses from the cache, and to share identical in-flight requests,
+     * so it must tell apart any two requests that could get different replies. Texts are prefixed with their length
+     * so that no text can pass for a message boundary, and images are represented by a SHA-256 digest of their data.
      *
      * @param messages A list of Message objects.
      * @param params ModelParams object.
      * @return A string representing the cache key.
      */
     private String generateCacheKey(List<Message> messages, ModelParams params) {
-        // A simple concatenation for demonstration. For production, consider a more robust hashing.
         StringBuilder keyBuilder = new StringBuilder();
+        keyBuilder.append("model:").append(modelName).append('|');
         for (Message msg : messages) {
             keyBuilder.append(msg.getRole().name()).append(":");
             for (com.aiforjava.message.MessagePart part : msg.getContentParts()) {
                 if (part instanceof TextPart) {
-                    keyBuilder.append(((TextPart) part).getText());
+                    String text = ((TextPart) part).getText();
+                    keyBuilder.append("text[").append(text.length()).append("]").append(text);
                 } else if (part instanceof ImagePart) {
-                    // For image parts, use a hash of the image data or a unique identifier
-                    keyBuilder.append("[IMAGE]"); // Placeholder for now
+                    keyBuilder.append("image[").append(digest(((ImagePart) part).getImage_url().getUrl())).append("]");
                 }
             }
             keyBuilder.append("|");
         }
         keyBuilder.append("temp:").append(params.getTemperature());
-        keyBuilder.append("maxTokens:").append(params.getMaxTokens());
+        keyBuilder.append("maxTokens:").append(params.isMaxTokensSet() ? String.valueOf(params.getMaxTokens()) : "default");
         keyBuilder.append("topP:").append(params.getTopP());
         // Add other relevant parameters to the key
         return keyBuilder.toString();
     }
 
+    /**
+     * Returns the hex SHA-256 digest of an image URL. The data URL of an inline image is Base64, i.e. ASCII, so it is
+     * fed to the digest in small blocks rather than copied into a byte array of its full size.
+     */
+    private static String digest(String url) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e); // Required of every Java platform
+        }
+        byte[] block = new byte[8192];
+        int length = 0;
+        for (int i = 0; i < url.length(); i++) {
+            char c = url.charAt(i);
+            if (c < 0x80) {
+                block[length++] = (byte) c;
+            } else { // Not expected in a data URL, but a remote URL may contain any character
+                digest.update(block, 0, length);
+                length = 0;
+                digest.update((byte) 0xFF); // Cannot occur in ASCII, so the encoding stays unambiguous
+                // The raw UTF-16 unit: encoding a lone surrogate half would turn every one into U+FFFD
+                digest.update((byte) (c >> 8));
+                digest.update((byte) c);
+            }
+            if (length == block.length) {
+                digest.update(block, 0, length);
+                length = 0;
+            }
+        }
+        digest.update(block, 0, length);
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
     /**
      * Generates a chat completion response from the LLM with streaming.
      * The response content is delivered in chunks via the provided StreamHandler.
@@ -140,8 +370,134 @@ public class ChatServices_LowLevel {
      * @throws LLMServiceException If any error occurs during streaming generation.
      */
     public void generateStream(List<Message> messages, ModelParams params, StreamHandler handler) throws LLMServiceException, LLMParseException {
-        String requestJson = buildRequest(messages, params, true);
-        client.sendStreamRequest("v1/chat/completions", requestJson, handler);
+        try (RequestBody requestBody = buildRequest(messages, params, true)) {
+            client.sendStreamRequest("v1/chat/completions", requestBody, handler);
+        }
+    }
+
+    /**
+     * Generates a chat completion response from the LLM with streaming, within the budget left by a deadline.
+     * The stream is not started if the deadline has already passed, and is aborted if it passes mid-stream.
+     *
+     * @param messages A list of Message objects representing the conversation history.
+     * @param params ModelParams object containing parameters like temperature, max tokens, etc.
+     * @param handler A StreamHandler to process the incoming stream of content.
+     * @param deadline The deadline of the operation this call belongs to.
+     * @throws LLMServiceException If any error occurs during streaming generation.
+     * @throws com.aiforjava.exception.Exception_Timeout If the deadline passes.
+     */
+    public void generateStream(List<Message> messages, ModelParams params, StreamHandler handler, Deadline deadline) throws LLMServiceException {
+        if (!deadline.isBounded()) {
+            generateStream(messages, params, handler);
+            return;
+        }
+        CompletableFuture<Void> stream = generateStreamAsync(messages, params, handler, deadline);
+        try {
+            await(stream);
+        } catch (LLMNetworkException e) {
+            stream.cancel(true); // Interrupted: abort the stream
+            throw e;
+        }
+    }
+
+    /**
+     * Generates a chat completion response from the LLM with streaming, without blocking the calling thread.
+     * The response content is delivered in chunks via the provided StreamHandler as it arrives.
+     *
+     * @param messages A list of Message objects representing the conversation history.
+     * @param params ModelParams object containing parameters like temperature, max tokens, etc.
+     * @param handler A StreamHandler to process the incoming stream of content.
+     * @return A CompletableFuture that completes when the stream has ended, or exceptionally if it fails.
+     */
+    public CompletableFuture<Void> generateStreamAsync(List<Message> messages, ModelParams params, StreamHandler handler) {
+        return generateStreamAsync(messages, params, handler, Deadline.none());
+    }
+
+    /**
+     * Variant of {@link #generateStreamAsync(List, ModelParams, StreamHandler)} bound by a deadline that covers the
+     * whole stream, see {@link LLM_Client#sendStreamRequestAsync(String, RequestBody, StreamHandler, Deadline)}.
+     *
+     * @param messages A list of Message objects representing the conversation history.
+     * @param params ModelParams object containing parameters like temperature, max tokens, etc.
+     * @param handler A StreamHandler to process the incoming stream of content.
+     * @param deadline The deadline of the operation this call belongs to.
+     * @return A CompletableFuture that completes when the stream has ended, or exceptionally if it fails or the
+     *         deadline passes.
+     */
+    public CompletableFuture<Void> generateStreamAsync(List<Message> messages, ModelParams params, StreamHandler handler, Deadline deadline) {
+        RequestBody requestBody = buildRequest(messages, params, true);
+        CompletableFuture<Void> stream = client.sendStreamRequestAsync("v1/chat/completions", requestBody, handler, deadline);
+        stream.whenComplete((ignored, failure) -> requestBody.close());
+        return stream;
+    }
+
+    /**
+     * Starts a streaming chat completion in the background and returns a handle to stop it.
+     * {@link StreamHandle#cancel()} closes the HTTP exchange, so the backend stops generating, and no further
+     * chunks are handed to the handler.
+     *
+     * @param messages A list of Message objects representing the conversation history.
+     * @param params ModelParams object containing parameters like temperature, max tokens, etc.
+     * @param handler A StreamHandler to process the incoming stream of content.
+     * @return A handle to await or cancel the stream.
+     */
+    public StreamHandle startStream(List<Message> messages, ModelParams params, StreamHandler handler) {
+        CompletableFuture<Void> completion = new CompletableFuture<>();
+        CompletableFuture<Void> stream = generateStreamAsync(messages, params, new StreamHandler() {
+            @Override
+            public void onStream(StreamResponse chunk) {
+                if (!completion.isDone()) { // Drop chunks that were already in flight when the stream was cancelled
+                    handler.onStream(chunk);
+                }
+            }
+
+            @Override
+            public void onComplete() {
+                if (!completion.isDone()) {
+                    handler.onComplete();
+                }
+            }
+        });
+        stream.whenComplete((ignored, failure) -> {
+            if (failure != null) {
+                completion.completeExceptionally(failure);
+            } else {
+                completion.complete(null);
+            }
+        });
+        completion.whenComplete((ignored, failure) -> {
+            if (completion.isCancelled()) {
+                stream.cancel(true);
+            }
+        });
+        return new StreamHandle(completion);
+    }
+
+    /**
+     * Returns a publisher that streams a chat completion when it is subscribed to, delivering chunks only as the
+     * subscriber requests them. Up to 256 chunks are buffered, and when the buffer is full the stream waits for
+     * the subscriber ({@link OverflowPolicy#BLOCK}).
+     *
+     * @param messages A list of Message objects representing the conversation history.
+     * @param params ModelParams object containing parameters like temperature, max tokens, etc.
+     * @return A publisher for a single subscriber. Cancelling the subscription aborts the request.
+     */
+    public StreamPublisher generateStreamPublisher(List<Message> messages, ModelParams params) {
+        return generateStreamPublisher(messages, params, 256, OverflowPolicy.BLOCK);
+    }
+
+    /**
+     * Returns a publisher that streams a chat completion when it is subscribed to, with the given buffer size and
+     * overflow policy, see {@link StreamPublisher}.
+     *
+     * @param messages A list of Message objects representing the conversation history.
+     * @param params ModelParams object containing parameters like temperature, max tokens, etc.
+     * @param bufferSize The number of chunks held for the subscriber.
+     * @param overflowPolicy What to do with a chunk when the buffer is full.
+     * @return A publisher for a single subscriber. Cancelling the subscription aborts the request.
+     */
+    public StreamPublisher generateStreamPublisher(List<Message> messages, ModelParams params, int bufferSize, OverflowPolicy overflowPolicy) {
+        return new StreamPublisher(handler -> generateStreamAsync(messages, params, handler), bufferSize, overflowPolicy);
     }
 
     /**
@@ -175,37 +531,51 @@ public class ChatServices_LowLevel {
     /**
      * Builds the JSON request payload for chat completion based on messages and model parameters.
      * This internal helper method ensures the request conforms to the LLM's API specification.
+     * The JSON is streamed straight into the pooled chunks of a {@link RequestBody}, so even a long history with
+     * images is serialized once, without an intermediate tree or string.
      *
      * @param messages A list of Message objects.
      * @param params ModelParams object.
      * @param stream A boolean indicating whether the request is for streaming or not.
-     * @return The JSON request payload as a string.
+     * @return The JSON request payload, to be closed by the caller once the request has completed.
      */
-    private String buildRequest(List<Message> messages, ModelParams params, boolean stream) {
-        ObjectNode request = mapper.createObjectNode();
-        request.put("model", modelName);
-        request.put("temperature", params.getTemperature());
-        request.put("stream", stream);
+    private RequestBody buildRequest(List<Message> messages, ModelParams params, boolean stream) {
+        RequestBody body = new RequestBody();
+        try (JsonGenerator generator = mapper.getFactory().createGenerator(body.getOutputStream())) {
+            generator.writeStartObject();
+            generator.writeStringField("model", modelName);
+            generator.writeNumberField("temperature", params.getTemperature());
+            if (params.isMaxTokensSet()) {
+                generator.writeNumberField("max_tokens", params.getMaxTokens());
+            }
+            generator.writeBooleanField("stream", stream);
 
-        ArrayNode messagesNode = request.putArray("messages");
-        for (Message msg : messages) {
-            ObjectNode messageContentNode = mapper.createObjectNode();
-            messageContentNode.put("role", msg.getRole().name().toLowerCase());
+            generator.writeArrayFieldStart("messages");
+            for (Message msg : messages) {
+                generator.writeStartObject();
+                generator.writeStringField("role", msg.getRole().name().toLowerCase());
 
-            ArrayNode contentArray = messageContentNode.putArray("content");
-            for (com.aiforjava.message.MessagePart part : msg.getContentParts()) {
-                if (part instanceof TextPart) {
-                    contentArray.add(mapper.createObjectNode()
-                            .put("type", "text")
-                            .put("text", ((TextPart) part).getText()));
-                } else if (part instanceof ImagePart) {
-                    contentArray.add(mapper.valueToTree(part)); // Jackson will handle ImagePart's JsonCreator
+                generator.writeArrayFieldStart("content");
+                for (com.aiforjava.message.MessagePart part : msg.getContentParts()) {
+                    if (part instanceof TextPart) {
+                        generator.writeStartObject();
+                        generator.writeStringField("type", "text");
+                        generator.writeStringField("text", ((TextPart) part).getText());
+                        generator.writeEndObject();
+                    } else if (part instanceof ImagePart) {
+                        generator.writeObject(part); // Jackson will handle ImagePart's JsonCreator
+                    }
                 }
+                generator.writeEndArray();
+                generator.writeEndObject();
             }
-            messagesNode.add(messageContentNode);
+            generator.writeEndArray();
+            generator.writeEndObject();
+        } catch (IOException e) {
+            body.close();
+            throw new UncheckedIOException("Failed to serialize chat request", e);
         }
-
-        return request.toString();
+        return body;
     }
 
     /**
@@ -0,0 +1,158 @@
+package com.aiforjava.llm.Chat.LowLevel;
+
+import com.aiforjava.exception.LLMStreamProcessingException;
+import com.aiforjava.llm.client.LLMResponse;
+import com.aiforjava.llm.streams.StreamHandler;
+import com.aiforjava.llm.streams.StreamResponse;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+/**
+ * One upstream LLM stream shared by several callers that asked for the same completion at the same time.
+ * The stream records every chunk it receives; a caller joining late is first replayed the chunks so far and then
+ * receives the rest live, so every subscriber sees the complete output in order. A subscriber whose handler
+ * throws, or whose future is cancelled, is detached without affecting the others; when the last subscriber
+ * is gone the upstream request is cancelled.
+ */
+final class SharedStream implements StreamHandler {
+    private final List<StreamResponse> chunks = new ArrayList<>();
+    private final List<Subscriber> subscribers = new ArrayList<>();
+    private final StringBuilder content = new StringBuilder();
+    private final StringBuilder reasoning = new StringBuilder();
+    private CompletableFuture<Void> upstream;
+    private boolean finished;
+    private boolean delivering; // A handler may cancel its own subscription while chunks are being delivered
+
+    /**
+     * Starts delivering the upstream stream. Must be called once, after the first subscriber has joined.
+     *
+     * @param upstream The future of the upstream stream request, which delivers its chunks to this SharedStream.
+     * @param onFinished Runs when the upstream has ended, before the subscribers are notified (e.g. to stop
+     *                   new callers from joining and to cache the output). Receives the failure, or null on success.
+     */
+    synchronized void start(CompletableFuture<Void> upstream, Consumer<Throwable> onFinished) {
+        this.upstream = upstream;
+        upstream.whenComplete((ignored, failure) -> finish(failure, onFinished));
+        cancelIfAbandoned(); // Every subscriber may have left before the request was even sent
+    }
+
+    /**
+     * Attaches a handler, replaying the chunks received so far.
+     *
+     * @return A future that completes when the stream has ended for this subscriber, or null if the stream
+     *         already finished and can no longer be joined.
+     */
+    synchronized CompletableFuture<Void> join(StreamHandler handler) {
+        if (finished) {
+            return null;
+        }
+        Subscriber subscriber = new Subscriber(handler);
+        for (StreamResponse chunk : chunks) {
+            if (!subscriber.deliver(chunk)) {
+                return subscriber.done;
+            }
+        }
+        subscribers.add(subscriber);
+        subscriber.done.whenComplete((ignored, failure) -> {
+            if (subscriber.done.isCancelled()) {
+                leave(subscriber);
+            }
+        });
+        return subscriber.done;
+    }
+
+    /**
+     * Returns the complete output as a response once the stream has ended successfully.
+     */
+    synchronized LLMResponse toResponse() {
+        return new LLMResponse(content.toString(), reasoning.length() > 0 ? reasoning.toString() : null, null);
+    }
+
+    @Override
+    public synchronized void onStream(StreamResponse response) {
+        chunks.add(response);
+        if (response.getContent() != null) {
+            content.append(response.getContent());
+        }
+        if (response.getReasoningContent() != null) {
+            reasoning.append(response.getReasoningContent());
+        }
+        delivering = true;
+        try {
+            subscribers.removeIf(subscriber -> !subscriber.deliver(response));
+        } finally {
+            delivering = false;
+        }
+        cancelIfAbandoned();
+    }
+
+    private synchronized void leave(Subscriber subscriber) {
+        if (!delivering) {
+            subscribers.remove(subscriber); // Otherwise the delivery loop drops it
+        }
+        cancelIfAbandoned();
+    }
+
+    private void cancelIfAbandoned() {
+        if (upstream != null && !finished && subscribers.stream().allMatch(subscriber -> subscriber.done.isDone())) {
+            upstream.cancel(true);
+        }
+    }
+
+    private synchronized void finish(Throwable failure, Consumer<Throwable> onFinished) {
+        finished = true;
+        onFinished.accept(failure);
+        for (Subscriber subscriber : subscribers) {
+            if (failure == null) {
+                subscriber.complete();
+            } else {
+                subscriber.done.completeExceptionally(failure);
+            }
+        }
+        subscribers.clear();
+        chunks.clear();
+    }
+
+    private static final class Subscriber {
+        final StreamHandler handler;
+        final CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Subscriber(StreamHandler handler) {
+            this.handler = handler;
+        }
+
+        /**
+         * @return False if this subscriber is done, either cancelled or because its handler failed.
+         */
+        boolean deliver(StreamResponse chunk) {
+            if (done.isDone()) {
+                return false;
+            }
+            try {
+                handler.onStream(chunk);
+                return true;
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e instanceof LLMStreamProcessingException ? e : new LLMStreamProcessingException("Error during stream processing", e));
+                return false;
+            }
+        }
+
+        /**
+         * Ends the stream for this subscriber after the upstream has ended normally.
+         */
+        void complete() {
+            if (done.isDone()) {
+                return;
+            }
+            try {
+                handler.onComplete();
+                done.complete(null);
+            } catch (RuntimeException e) {
+                done.completeExceptionally(e instanceof LLMStreamProcessingException ? e : new LLMStreamProcessingException("Error during stream processing", e));
+            }
+        }
+    }
+}
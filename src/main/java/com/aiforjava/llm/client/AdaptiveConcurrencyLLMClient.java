@@ -0,0 +1,471 @@
+package com.aiforjava.llm.client;
+
+import com.aiforjava.exception.Exception_Timeout;
+import com.aiforjava.exception.LLMHttpException;
+import com.aiforjava.exception.LLMNetworkException;
+import com.aiforjava.exception.LLMServiceException;
+import com.aiforjava.llm.streams.StreamHandler;
+import com.aiforjava.llm.streams.StreamResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+import java.util.function.Supplier;
+
+/**
+ * An {@link LLM_Client} decorator that limits the calls in flight to the wrapped backend, and keeps resizing the
+ * limit from the latencies it observes instead of relying on a fixed, hand-tuned cap.
+ * <p>
+ * Up to the throughput knee of a backend, more concurrent calls raise throughput at little cost in latency; past
+ * it they only queue on the GPU and every user waits longer. Where the knee lies depends on the model size and on
+ * whatever else shares the GPU, so the limit is adapted continuously with a {@link ConcurrencyLimitAlgorithm}.
+ * The latency sample of a non-streaming call is its duration; for a stream it is the time to the first chunk,
+ * since the total duration mostly reflects the length of the answer. Timeouts and 429/503 responses count as
+ * overload signals. Calls over the limit wait for a free slot; asynchronous callers wait without holding a thread.
+ */
+public class AdaptiveConcurrencyLLMClient extends ForwardingLLMClient {
+    private static final Logger logger = LoggerFactory.getLogger(AdaptiveConcurrencyLLMClient.class);
+    private static final int SHORT_WINDOW = 10;
+    private static final long BASELINE_RISE_NANOS = TimeUnit.MINUTES.toNanos(5);
+    private static final double SMOOTHING = 0.2;
+
+    private final ConcurrencyLimitAlgorithm algorithm;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long latencyThresholdNanos;
+    private final double backoffRatio;
+    private final double tolerance;
+    private final AsyncSemaphore permits;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    // Guarded by "this"
+    private double limit;
+    private int appliedLimit;
+    private double shortLatency = -1;
+    private double longLatency = -1;
+    private long lastSampleNanos;
+
+    private AdaptiveConcurrencyLLMClient(Builder builder) {
+        super(builder.delegate);
+        this.algorithm = builder.algorithm;
+        this.minLimit = builder.minLimit;
+        this.maxLimit = builder.maxLimit;
+        this.latencyThresholdNanos = builder.latencyThreshold.toNanos();
+        this.backoffRatio = builder.backoffRatio;
+        this.tolerance = builder.tolerance;
+        this.limit = Math.max(minLimit, Math.min(maxLimit, builder.initialLimit));
+        this.appliedLimit = (int) limit;
+        this.permits = new AsyncSemaphore(appliedLimit);
+    }
+
+    @Override
+    public String sendRequest(String endpoint, String json) throws LLMServiceException {
+        return limit(() -> delegate().sendRequest(endpoint, json));
+    }
+
+    @Override
+    public void sendStreamRequest(String endpoint, String json, StreamHandler handler) throws LLMServiceException {
+        limitStream(handler, timer -> delegate().sendStreamRequest(endpoint, json, timer));
+    }
+
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, String json) {
+        return limitRequestAsync(() -> delegate().sendRequestAsync(endpoint, json));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, String json, StreamHandler handler) {
+        return limitStreamAsync(handler, timer -> delegate().sendStreamRequestAsync(endpoint, json, timer));
+    }
+
+    @Override
+    public String sendRequest(String endpoint, RequestBody body) throws LLMServiceException {
+        return limit(() -> delegate().sendRequest(endpoint, body));
+    }
+
+    @Override
+    public void sendStreamRequest(String endpoint, RequestBody body, StreamHandler handler) throws LLMServiceException {
+        limitStream(handler, timer -> delegate().sendStreamRequest(endpoint, body, timer));
+    }
+
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, RequestBody body) {
+        return limitRequestAsync(() -> delegate().sendRequestAsync(endpoint, body));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, RequestBody body, StreamHandler handler) {
+        return limitStreamAsync(handler, timer -> delegate().sendStreamRequestAsync(endpoint, body, timer));
+    }
+
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, RequestBody body, Deadline deadline) {
+        return deadline.bound(() -> limitRequestAsync(() -> delegate().sendRequestAsync(endpoint, body, deadline)));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, RequestBody body, StreamHandler handler, Deadline deadline) {
+        return deadline.bound(() -> limitStreamAsync(handler, timer -> delegate().sendStreamRequestAsync(endpoint, body, timer, deadline)));
+    }
+
+    /**
+     * Returns the current concurrency limit.
+     *
+     * @return The number of calls allowed in flight.
+     */
+    public synchronized int getLimit() {
+        return appliedLimit;
+    }
+
+    /**
+     * Returns the number of calls currently in flight.
+     *
+     * @return The calls in flight.
+     */
+    public int getInFlight() {
+        return inFlight.get();
+    }
+
+    /**
+     * Returns the number of calls waiting for a free slot.
+     *
+     * @return The queue length.
+     */
+    public int getQueuedCalls() {
+        return permits.queueLength();
+    }
+
+    private void acquire() throws LLMServiceException {
+        CompletableFuture<Void> permit = permits.acquire();
+        try {
+            permit.get();
+        } catch (InterruptedException e) {
+            if (!permit.cancel(false)) {
+                permits.release(); // Granted concurrently with the interrupt
+            }
+            Thread.currentThread().interrupt();
+            throw new LLMNetworkException("Request was Interrupted while waiting for a free call slot", e);
+        } catch (ExecutionException e) {
+            throw new LLMServiceException("Failed to acquire a call slot", e);
+        }
+    }
+
+    private String limit(RequestCall<String> call) throws LLMServiceException {
+        acquire();
+        long start = System.nanoTime();
+        int load = inFlight.incrementAndGet();
+        try {
+            String response = call.send();
+            onSample(System.nanoTime() - start, false, load);
+            return response;
+        } catch (LLMServiceException | RuntimeException e) {
+            onFailure(e, load);
+            throw e;
+        } finally {
+            inFlight.decrementAndGet();
+            permits.release();
+        }
+    }
+
+    private void limitStream(StreamHandler handler, StreamCall call) throws LLMServiceException {
+        acquire();
+        FirstChunkTimer timer = new FirstChunkTimer(handler, inFlight.incrementAndGet());
+        try {
+            call.send(timer);
+            timer.onEnd();
+        } catch (LLMServiceException | RuntimeException e) {
+            onFailure(e, timer.load);
+            throw e;
+        } finally {
+            inFlight.decrementAndGet();
+            permits.release();
+        }
+    }
+
+    private CompletableFuture<String> limitRequestAsync(Supplier<CompletableFuture<String>> send) {
+        return limitAsync(load -> {
+            long start = System.nanoTime();
+            CompletableFuture<String> call = send.get();
+            call.whenComplete((value, failure) -> {
+                if (failure == null) {
+                    onSample(System.nanoTime() - start, false, load);
+                } else {
+                    onFailure(unwrap(failure), load);
+                }
+            });
+            return call;
+        });
+    }
+
+    private CompletableFuture<Void> limitStreamAsync(StreamHandler handler, Function<StreamHandler, CompletableFuture<Void>> send) {
+        return limitAsync(load -> {
+            FirstChunkTimer timer = new FirstChunkTimer(handler, load);
+            CompletableFuture<Void> call = send.apply(timer);
+            call.whenComplete((value, failure) -> {
+                if (failure == null) {
+                    timer.onEnd();
+                } else {
+                    onFailure(unwrap(failure), load);
+                }
+            });
+            return call;
+        });
+    }
+
+    private <T> CompletableFuture<T> limitAsync(IntFunction<CompletableFuture<T>> call) {
+        CompletableFuture<Void> permit = permits.acquire();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        permit.whenComplete((granted, waitFailure) -> {
+            if (waitFailure != null) {
+                return; // Cancelled while waiting
+            }
+            if (result.isDone()) {
+                permits.release(); // Cancelled while the permit was being granted
+                return;
+            }
+            int load = inFlight.incrementAndGet();
+            CompletableFuture<T> inFlightCall;
+            try {
+                inFlightCall = call.apply(load);
+            } catch (RuntimeException e) {
+                inFlightCall = CompletableFuture.failedFuture(e);
+            }
+            CompletableFuture<T> started = inFlightCall;
+            started.whenComplete((value, failure) -> {
+                inFlight.decrementAndGet();
+                permits.release();
+                if (failure != null) {
+                    result.completeExceptionally(unwrap(failure));
+                } else {
+                    result.complete(value);
+                }
+            });
+            result.whenComplete((value, failure) -> {
+                if (result.isCancelled()) {
+                    started.cancel(true);
+                }
+            });
+        });
+        result.whenComplete((value, failure) -> {
+            if (result.isCancelled()) {
+                permit.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    private void onFailure(Throwable error, int load) {
+        boolean overloaded = error instanceof Exception_Timeout
+                || (error instanceof LLMHttpException
+                    && (((LLMHttpException) error).getStatusCode() == 429 || ((LLMHttpException) error).getStatusCode() == 503));
+        if (overloaded) {
+            onSample(0, true, load);
+        }
+    }
+
+    /**
+     * Feeds one latency sample to the algorithm and applies the resulting limit.
+     *
+     * @param latencyNanos The observed latency; ignored if the call was dropped.
+     * @param dropped True if the call timed out or was rejected as overloaded.
+     * @param load The number of calls in flight when the call started, including itself.
+     */
+    private void onSample(long latencyNanos, boolean dropped, int load) {
+        int delta;
+        synchronized (this) {
+            double next = dropped ? limit * backoffRatio
+                    : algorithm == ConcurrencyLimitAlgorithm.AIMD ? aimd(latencyNanos, load) : gradient(latencyNanos, load);
+            limit = Math.max(minLimit, Math.min(maxLimit, next));
+            int newLimit = (int) limit;
+            delta = newLimit - appliedLimit;
+            appliedLimit = newLimit;
+        }
+        if (delta != 0) {
+            logger.debug("Concurrency limit changed by {} to {}", delta, limit);
+            permits.adjustPermits(delta);
+        }
+    }
+
+    private double aimd(long latencyNanos, int load) {
+        if (latencyNanos > latencyThresholdNanos) {
+            return limit * backoffRatio;
+        }
+        // Only grow while the limit is actually being used, otherwise it would drift up without evidence
+        return load * 2 >= limit ? limit + 1 : limit;
+    }
+
+    private double gradient(long latencyNanos, int load) {
+        long now = System.nanoTime();
+        shortLatency = shortLatency < 0 ? latencyNanos : ewma(shortLatency, latencyNanos, SHORT_WINDOW);
+        if (longLatency < 0 || shortLatency < longLatency) {
+            longLatency = shortLatency; // The backend got faster (e.g. a smaller model); follow at once
+        } else {
+            // Rising latency is mostly the queue the baseline should reveal, so follow it only slowly, in time
+            // rather than in samples, in case the backend has become slower for good
+            longLatency += (shortLatency - longLatency) * Math.min(1, (double) (now - lastSampleNanos) / BASELINE_RISE_NANOS);
+        }
+        lastSampleNanos = now;
+        if (load * 2 < limit) {
+            return limit;
+        }
+        double gradient = Math.max(0.5, Math.min(1.0, tolerance * longLatency / shortLatency));
+        double queueAllowance = Math.sqrt(limit); // Headroom that lets the limit probe upwards while latency is flat
+        return limit * (1 - SMOOTHING) + (limit * gradient + queueAllowance) * SMOOTHING;
+    }
+
+    private static double ewma(double average, double sample, int window) {
+        return average + (sample - average) * 2 / (window + 1);
+    }
+
+    /**
+     * Passes chunks on and takes the latency sample of a stream when its first chunk arrives.
+     */
+    private final class FirstChunkTimer implements StreamHandler {
+        private final StreamHandler handler;
+        private final int load;
+        private final long start = System.nanoTime();
+        private volatile boolean sampled;
+
+        FirstChunkTimer(StreamHandler handler, int load) {
+            this.handler = handler;
+            this.load = load;
+        }
+
+        @Override
+        public void onStream(StreamResponse response) {
+            if (!sampled) {
+                sampled = true;
+                onSample(System.nanoTime() - start, false, load);
+            }
+            handler.onStream(response);
+        }
+
+        @Override
+        public void onComplete() {
+            handler.onComplete();
+        }
+
+        /**
+         * Takes the sample from the whole call if the stream ended without any chunk.
+         */
+        void onEnd() {
+            if (!sampled) {
+                sampled = true;
+                onSample(System.nanoTime() - start, false, load);
+            }
+        }
+    }
+
+    /**
+     * Builder class for constructing AdaptiveConcurrencyLLMClient instances.
+     */
+    public static class Builder {
+        private final LLM_Client delegate;
+        private ConcurrencyLimitAlgorithm algorithm = ConcurrencyLimitAlgorithm.GRADIENT;
+        private int initialLimit = 4;
+        private int minLimit = 1;
+        private int maxLimit = 64;
+        private Duration latencyThreshold = Duration.ofSeconds(5);
+        private double backoffRatio = 0.9;
+        private double tolerance = 1.5;
+
+        /**
+         * Creates a builder wrapping the given client.
+         * @param delegate The client whose concurrency is limited. Must not be null.
+         */
+        public Builder(LLM_Client delegate) {
+            this.delegate = Objects.requireNonNull(delegate, "Delegate client cannot be null");
+        }
+
+        /**
+         * Sets the algorithm that resizes the limit. Defaults to {@link ConcurrencyLimitAlgorithm#GRADIENT}.
+         * @param value The algorithm.
+         * @return The Builder instance.
+         */
+        public Builder setAlgorithm(ConcurrencyLimitAlgorithm value) {
+            this.algorithm = Objects.requireNonNull(value, "Algorithm cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets the limit used until latencies have been observed. Defaults to 4.
+         * @param value The initial limit.
+         * @return The Builder instance.
+         */
+        public Builder setInitialLimit(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("Initial limit must be greater than 0");
+            }
+            this.initialLimit = value;
+            return this;
+        }
+
+        /**
+         * Sets the range the limit is kept in. Defaults to 1 to 64.
+         * @param min The lowest limit, at least 1.
+         * @param max The highest limit, at least min.
+         * @return The Builder instance.
+         */
+        public Builder setLimitRange(int min, int max) {
+            if (min <= 0 || max < min) {
+                throw new IllegalArgumentException("Limit range must satisfy 0 < min <= max");
+            }
+            this.minLimit = min;
+            this.maxLimit = max;
+            return this;
+        }
+
+        /**
+         * Sets the latency above which {@link ConcurrencyLimitAlgorithm#AIMD} backs off; for streams it applies to
+         * the time to the first chunk. Not used by the gradient algorithm. Defaults to 5 seconds.
+         * @param value The latency threshold.
+         * @return The Builder instance.
+         */
+        public Builder setLatencyThreshold(Duration value) {
+            this.latencyThreshold = Objects.requireNonNull(value, "Latency threshold cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets the factor the limit is multiplied by on an overload signal. Defaults to 0.9.
+         * @param value The ratio, greater than 0 and less than 1.
+         * @return The Builder instance.
+         */
+        public Builder setBackoffRatio(double value) {
+            if (value <= 0 || value >= 1) {
+                throw new IllegalArgumentException("Backoff ratio must be greater than 0 and less than 1.");
+            }
+            this.backoffRatio = value;
+            return this;
+        }
+
+        /**
+         * Sets how much slower than the long-term baseline recent calls may get before the gradient algorithm
+         * shrinks the limit. Defaults to 1.5.
+         * @param value The tolerance, at least 1.
+         * @return The Builder instance.
+         */
+        public Builder setTolerance(double value) {
+            if (value < 1) {
+                throw new IllegalArgumentException("Tolerance must be at least 1.");
+            }
+            this.tolerance = value;
+            return this;
+        }
+
+        /**
+         * Builds and returns a new AdaptiveConcurrencyLLMClient instance.
+         * @return A new AdaptiveConcurrencyLLMClient instance.
+         */
+        public AdaptiveConcurrencyLLMClient build() {
+            return new AdaptiveConcurrencyLLMClient(this);
+        }
+    }
+}
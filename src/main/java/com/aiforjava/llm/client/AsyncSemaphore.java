@@ -0,0 +1,146 @@
+package com.aiforjava.llm.client;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * A minimal non-blocking counting semaphore. Instead of parking the calling thread,
+ * {@link #acquire()} returns a future that completes once a permit has been granted,
+ * so asynchronous callers can queue for capacity without holding a thread.
+ * Waiters are served in FIFO order; a waiter whose future was cancelled is skipped.
+ */
+final class AsyncSemaphore {
+    private static final CompletableFuture<Void> GRANTED = CompletableFuture.completedFuture(null);
+
+    private final Queue<CompletableFuture<Void>> waiters = new ArrayDeque<>();
+    private int available;
+
+    AsyncSemaphore(int permits) {
+        if (permits <= 0) {
+            throw new IllegalArgumentException("Permits must be greater than 0");
+        }
+        this.available = permits;
+    }
+
+    /**
+     * Requests a permit.
+     *
+     * @return A future that completes when the permit is granted. Every granted permit must be
+     *         returned with {@link #release()}.
+     */
+    CompletableFuture<Void> acquire() {
+        synchronized (this) {
+            if (available > 0) {
+                available--;
+                return GRANTED;
+            }
+            return enqueue();
+        }
+    }
+
+    /**
+     * Requests a permit, but only joins the wait queue while it is shorter than the given bound.
+     *
+     * @param maxWaiters The maximum number of callers allowed to wait; 0 means never wait.
+     * @return A future as for {@link #acquire()}, or null if no permit is free and the queue is full.
+     */
+    CompletableFuture<Void> acquire(int maxWaiters) {
+        synchronized (this) {
+            if (available > 0) {
+                available--;
+                return GRANTED;
+            }
+            if (waiters.size() >= maxWaiters) {
+                return null;
+            }
+            return enqueue();
+        }
+    }
+
+    private CompletableFuture<Void> enqueue() {
+        CompletableFuture<Void> waiter = new CompletableFuture<>();
+        waiters.add(waiter);
+        // A waiter that gives up (cancelled or timed out) leaves the queue right away so it does not count against its bound
+        waiter.whenComplete((ignored, failure) -> {
+            if (failure != null) {
+                synchronized (this) {
+                    waiters.remove(waiter);
+                }
+            }
+        });
+        return waiter;
+    }
+
+    /**
+     * Tries to take a permit without waiting.
+     *
+     * @return True if a permit was taken.
+     */
+    synchronized boolean tryAcquire() {
+        if (available > 0) {
+            available--;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Returns a permit, handing it directly to the oldest live waiter if there is one.
+     */
+    void release() {
+        while (true) {
+            CompletableFuture<Void> next;
+            synchronized (this) {
+                if (available < 0) {
+                    available++; // Paying off a shrink, see adjustPermits
+                    return;
+                }
+                next = waiters.poll();
+                if (next == null) {
+                    available++;
+                    return;
+                }
+            }
+            // Complete outside the lock; a waiter cancelled in the meantime gives the permit to the next one
+            if (next.complete(null)) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Changes the total number of permits. Growing hands the new permits to waiters at once; shrinking takes
+     * effect as permits in use are released, which may leave the available count negative for a while.
+     *
+     * @param delta The number of permits to add, or to remove if negative.
+     */
+    void adjustPermits(int delta) {
+        if (delta < 0) {
+            synchronized (this) {
+                available += delta;
+            }
+        }
+        for (int i = 0; i < delta; i++) {
+            release();
+        }
+    }
+
+    /**
+     * Returns the number of callers currently waiting for a permit.
+     *
+     * @return The queue length.
+     */
+    synchronized int queueLength() {
+        return waiters.size();
+    }
+
+    /**
+     * Returns the number of permits that can be granted immediately.
+     *
+     * @return The available permits.
+     */
+    synchronized int availablePermits() {
+        return available;
+    }
+}
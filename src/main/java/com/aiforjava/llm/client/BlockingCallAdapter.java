@@ -0,0 +1,41 @@
+package com.aiforjava.llm.client;
+
+import java.util.concurrent.CompletableFuture;
+
+/**
+ * Bridges blocking {@link LLM_Client} calls to the asynchronous API for implementations that have no
+ * native asynchronous transport. Each call runs on its own virtual thread, so waiting for the backend
+ * does not hold a platform thread; cancelling the returned future interrupts that virtual thread.
+ */
+final class BlockingCallAdapter {
+
+    /**
+     * A blocking call that may throw checked exceptions such as LLMServiceException.
+     *
+     * @param <T> The result type.
+     */
+    @FunctionalInterface
+    interface BlockingCall<T> {
+        T call() throws Exception;
+    }
+
+    private BlockingCallAdapter() {
+    }
+
+    static <T> CompletableFuture<T> supplyAsync(BlockingCall<T> call) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        Thread worker = Thread.ofVirtual().name("ai4j-llm-call").start(() -> {
+            try {
+                future.complete(call.call());
+            } catch (Throwable t) {
+                future.completeExceptionally(t);
+            }
+        });
+        future.whenComplete((result, ex) -> {
+            if (future.isCancelled()) {
+                worker.interrupt();
+            }
+        });
+        return future;
+    }
+}
@@ -0,0 +1,182 @@
+package com.aiforjava.llm.client;
+
+import com.aiforjava.exception.Exception_Timeout;
+import com.aiforjava.exception.LLMHttpException;
+import com.aiforjava.exception.LLMNetworkException;
+
+import java.time.Duration;
+import java.util.concurrent.CancellationException;
+
+/**
+ * A count-based circuit breaker guarding one backend endpoint.
+ * <p>
+ * While {@link State#CLOSED}, the outcomes of the last {@code windowSize} calls are kept in a ring buffer.
+ * Once at least {@code minimumCalls} outcomes are recorded and the failure rate reaches the threshold, the
+ * breaker trips to {@link State#OPEN} and every call is rejected without touching the network. After the
+ * open duration the breaker moves to {@link State#HALF_OPEN} and lets a few trial calls through: if all of
+ * them succeed it closes again with a fresh window, a single failure re-opens it.
+ * <p>
+ * Only failures that say something about the backend's health are counted: timeouts, network errors,
+ * 429 and 5xx responses. Client errors, parse errors and cancellations are ignored.
+ * All methods are synchronized and cheap, so a rejected call costs microseconds.
+ */
+public final class CircuitBreaker {
+
+    /**
+     * The states of the breaker.
+     */
+    public enum State {
+        /** Calls pass through and their outcomes are recorded. */
+        CLOSED,
+        /** Calls are rejected immediately until the open duration has elapsed. */
+        OPEN,
+        /** A limited number of trial calls probe whether the backend has recovered. */
+        HALF_OPEN
+    }
+
+    private final int windowSize;
+    private final int minimumCalls;
+    private final float failureRateThreshold;
+    private final long openDurationNanos;
+    private final int halfOpenTrialCalls;
+
+    private final boolean[] outcomes; // True marks a failure
+    private int recorded;
+    private int next;
+    private int failures;
+    private State state = State.CLOSED;
+    private long openedAt;
+    private int trialsStarted;
+    private int trialsSucceeded;
+
+    CircuitBreaker(int windowSize, int minimumCalls, float failureRateThreshold, Duration openDuration, int halfOpenTrialCalls) {
+        this.windowSize = windowSize;
+        this.minimumCalls = minimumCalls;
+        this.failureRateThreshold = failureRateThreshold;
+        this.openDurationNanos = openDuration.toNanos();
+        this.halfOpenTrialCalls = halfOpenTrialCalls;
+        this.outcomes = new boolean[windowSize];
+    }
+
+    /**
+     * Asks whether a call may proceed. Every permitted call must later be reported through exactly one of
+     * {@link #onSuccess()}, {@link #onFailure(Throwable)} or {@link #onIgnored()}.
+     *
+     * @return True if the call may proceed, false if it must be rejected.
+     */
+    synchronized boolean tryAcquirePermission() {
+        if (state == State.OPEN) {
+            if (System.nanoTime() - openedAt < openDurationNanos) {
+                return false;
+            }
+            state = State.HALF_OPEN;
+            trialsStarted = 0;
+            trialsSucceeded = 0;
+        }
+        if (state == State.HALF_OPEN) {
+            if (trialsStarted >= halfOpenTrialCalls) {
+                return false;
+            }
+            trialsStarted++;
+        }
+        return true;
+    }
+
+    /**
+     * Records a successful call.
+     */
+    synchronized void onSuccess() {
+        if (state == State.HALF_OPEN) {
+            if (++trialsSucceeded >= halfOpenTrialCalls) {
+                close();
+            }
+        } else if (state == State.CLOSED) {
+            record(false);
+        }
+    }
+
+    /**
+     * Records a failed call. Failures that do not indicate an unhealthy backend are treated as ignored.
+     *
+     * @param error The exception the call failed with.
+     */
+    synchronized void onFailure(Throwable error) {
+        if (!countsAsFailure(error)) {
+            onIgnored();
+            return;
+        }
+        if (state == State.HALF_OPEN) {
+            open();
+        } else if (state == State.CLOSED) {
+            record(true);
+            if (recorded >= minimumCalls && getFailureRate() >= failureRateThreshold) {
+                open();
+            }
+        }
+    }
+
+    /**
+     * Reports a permitted call whose outcome should not be counted, e.g. because it was cancelled or rejected by a bulkhead.
+     */
+    synchronized void onIgnored() {
+        if (state == State.HALF_OPEN && trialsStarted > 0) {
+            trialsStarted--; // Give the trial slot back
+        }
+    }
+
+    /**
+     * @return The current state. An open breaker whose open duration has elapsed is reported as OPEN until the next call probes it.
+     */
+    public synchronized State getState() {
+        return state;
+    }
+
+    /**
+     * @return The failure rate in percent over the recorded window, or 0 if nothing has been recorded.
+     */
+    public synchronized float getFailureRate() {
+        return recorded == 0 ? 0f : failures * 100f / recorded;
+    }
+
+    static boolean countsAsFailure(Throwable error) {
+        if (error instanceof Exception_Timeout) {
+            return true;
+        }
+        if (error instanceof LLMHttpException) {
+            int status = ((LLMHttpException) error).getStatusCode();
+            return status == 429 || status >= 500;
+        }
+        if (error instanceof LLMNetworkException) {
+            Throwable cause = error.getCause();
+            return !(cause instanceof InterruptedException) && !(cause instanceof CancellationException);
+        }
+        return false;
+    }
+
+    private void record(boolean failure) {
+        if (recorded == windowSize) {
+            if (outcomes[next]) {
+                failures--;
+            }
+        } else {
+            recorded++;
+        }
+        outcomes[next] = failure;
+        if (failure) {
+            failures++;
+        }
+        next = (next + 1) % windowSize;
+    }
+
+    private void open() {
+        state = State.OPEN;
+        openedAt = System.nanoTime();
+    }
+
+    private void close() {
+        state = State.CLOSED;
+        recorded = 0;
+        next = 0;
+        failures = 0;
+    }
+}
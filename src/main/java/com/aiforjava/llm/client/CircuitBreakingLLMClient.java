@@ -0,0 +1,397 @@
+package com.aiforjava.llm.client;
+
+import com.aiforjava.exception.LLMCallRejectedException;
+import com.aiforjava.exception.LLMNetworkException;
+import com.aiforjava.exception.LLMServiceException;
+import com.aiforjava.llm.streams.StreamHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
+
+/**
+ * An {@link LLM_Client} decorator that protects callers from an unhealthy backend with a per-endpoint
+ * {@link CircuitBreaker} and an optional bulkhead limiting the number of concurrent calls.
+ * <p>
+ * When the breaker for an endpoint is open, calls fail immediately with an {@link LLMCallRejectedException}
+ * instead of waiting for the full request timeout. The bulkhead caps how many calls reach the wrapped client
+ * at once; further callers wait in a bounded queue for at most the configured time and are rejected when
+ * the queue is full, so an overloaded server cannot make threads pile up without limit. Asynchronous
+ * callers wait for a bulkhead slot without holding a thread; a call bound by a {@link Deadline} gives up its place
+ * in the queue once the deadline passes.
+ */
+public class CircuitBreakingLLMClient extends ForwardingLLMClient {
+    private static final Logger logger = LoggerFactory.getLogger(CircuitBreakingLLMClient.class);
+
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+    private final int slidingWindowSize;
+    private final int minimumCalls;
+    private final float failureRateThreshold;
+    private final Duration openDuration;
+    private final int halfOpenTrialCalls;
+    private final AsyncSemaphore bulkhead; // Null when concurrency is not limited
+    private final int maxQueuedCalls;
+    private final Duration maxQueueWait;
+
+    private CircuitBreakingLLMClient(Builder builder) {
+        super(builder.delegate);
+        this.slidingWindowSize = builder.slidingWindowSize;
+        this.minimumCalls = builder.minimumCalls;
+        this.failureRateThreshold = builder.failureRateThreshold;
+        this.openDuration = builder.openDuration;
+        this.halfOpenTrialCalls = builder.halfOpenTrialCalls;
+        this.bulkhead = builder.maxConcurrentCalls > 0 ? new AsyncSemaphore(builder.maxConcurrentCalls) : null;
+        this.maxQueuedCalls = builder.maxQueuedCalls;
+        this.maxQueueWait = builder.maxQueueWait;
+    }
+
+    @Override
+    public String sendRequest(String endpoint, String json) throws LLMServiceException {
+        return guard(endpoint, () -> delegate().sendRequest(endpoint, json));
+    }
+
+    @Override
+    public void sendStreamRequest(String endpoint, String json, StreamHandler handler) throws LLMServiceException {
+        guard(endpoint, () -> {
+            delegate().sendStreamRequest(endpoint, json, handler);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, String json) {
+        return guardAsync(endpoint, () -> delegate().sendRequestAsync(endpoint, json));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, String json, StreamHandler handler) {
+        return guardAsync(endpoint, () -> delegate().sendStreamRequestAsync(endpoint, json, handler));
+    }
+
+    @Override
+    public String sendRequest(String endpoint, RequestBody body) throws LLMServiceException {
+        return guard(endpoint, () -> delegate().sendRequest(endpoint, body));
+    }
+
+    @Override
+    public void sendStreamRequest(String endpoint, RequestBody body, StreamHandler handler) throws LLMServiceException {
+        guard(endpoint, () -> {
+            delegate().sendStreamRequest(endpoint, body, handler);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, RequestBody body) {
+        return guardAsync(endpoint, () -> delegate().sendRequestAsync(endpoint, body));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, RequestBody body, StreamHandler handler) {
+        return guardAsync(endpoint, () -> delegate().sendStreamRequestAsync(endpoint, body, handler));
+    }
+
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, RequestBody body, Deadline deadline) {
+        return deadline.bound(() -> guardAsync(endpoint, () -> delegate().sendRequestAsync(endpoint, body, deadline)));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, RequestBody body, StreamHandler handler, Deadline deadline) {
+        return deadline.bound(() -> guardAsync(endpoint, () -> delegate().sendStreamRequestAsync(endpoint, body, handler, deadline)));
+    }
+
+    /**
+     * Returns the state of the circuit breaker guarding an endpoint.
+     *
+     * @param endpoint The endpoint as passed to the send methods.
+     * @return The breaker state; CLOSED if the endpoint has not been called yet.
+     */
+    public CircuitBreaker.State getCircuitState(String endpoint) {
+        CircuitBreaker breaker = breakers.get(endpoint);
+        return breaker == null ? CircuitBreaker.State.CLOSED : breaker.getState();
+    }
+
+    /**
+     * Returns the number of calls currently waiting for a bulkhead slot.
+     *
+     * @return The queue length, or 0 if concurrency is not limited.
+     */
+    public int getQueuedCalls() {
+        return bulkhead == null ? 0 : bulkhead.queueLength();
+    }
+
+    private <T> T guard(String endpoint, RequestCall<T> call) throws LLMServiceException {
+        CircuitBreaker breaker = admit(endpoint);
+        enterBulkhead(breaker);
+        try {
+            T result = call.send();
+            breaker.onSuccess();
+            return result;
+        } catch (LLMServiceException | RuntimeException e) {
+            breaker.onFailure(e);
+            throw e;
+        } finally {
+            leaveBulkhead();
+        }
+    }
+
+    private CircuitBreaker admit(String endpoint) throws LLMCallRejectedException {
+        CircuitBreaker breaker = breakers.computeIfAbsent(endpoint, key ->
+                new CircuitBreaker(slidingWindowSize, minimumCalls, failureRateThreshold, openDuration, halfOpenTrialCalls));
+        if (!breaker.tryAcquirePermission()) {
+            throw new LLMCallRejectedException("Circuit breaker for endpoint '" + endpoint + "' is open, backend considered unhealthy");
+        }
+        return breaker;
+    }
+
+    private void enterBulkhead(CircuitBreaker breaker) throws LLMServiceException {
+        if (bulkhead == null) {
+            return;
+        }
+        CompletableFuture<Void> permit = bulkhead.acquire(maxQueuedCalls);
+        if (permit == null) {
+            breaker.onIgnored();
+            throw bulkheadFull();
+        }
+        try {
+            permit.get(maxQueueWait.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            if (permit.cancel(false)) {
+                breaker.onIgnored();
+                throw new LLMCallRejectedException("Timed out after " + maxQueueWait.toMillis() + " ms waiting for a free call slot", e);
+            }
+            // Granted concurrently with the timeout, go ahead
+        } catch (InterruptedException e) {
+            if (!permit.cancel(false)) {
+                bulkhead.release(); // Granted concurrently with the interrupt
+            }
+            breaker.onIgnored();
+            Thread.currentThread().interrupt();
+            throw new LLMNetworkException("Request was Interrupted while waiting for a free call slot", e);
+        } catch (ExecutionException e) {
+            breaker.onIgnored();
+            throw new LLMServiceException("Failed to acquire a call slot", e);
+        }
+    }
+
+    private void leaveBulkhead() {
+        if (bulkhead != null) {
+            bulkhead.release();
+        }
+    }
+
+    private LLMCallRejectedException bulkheadFull() {
+        logger.warn("Rejecting LLM call: all call slots are busy and {} calls are already queued", maxQueuedCalls);
+        return new LLMCallRejectedException("Too many concurrent LLM calls, wait queue is full");
+    }
+
+    private <T> CompletableFuture<T> guardAsync(String endpoint, Supplier<CompletableFuture<T>> call) {
+        CircuitBreaker breaker;
+        try {
+            breaker = admit(endpoint);
+        } catch (LLMCallRejectedException e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<Void> permit = bulkhead == null ? CompletableFuture.completedFuture(null) : bulkhead.acquire(maxQueuedCalls);
+        if (permit == null) {
+            breaker.onIgnored();
+            return CompletableFuture.failedFuture(bulkheadFull());
+        }
+        if (!permit.isDone()) {
+            permit.orTimeout(maxQueueWait.toMillis(), TimeUnit.MILLISECONDS);
+        }
+
+        CompletableFuture<T> result = new CompletableFuture<>();
+        permit.whenComplete((granted, waitFailure) -> {
+            if (waitFailure != null) {
+                breaker.onIgnored();
+                Throwable cause = unwrap(waitFailure);
+                result.completeExceptionally(cause instanceof TimeoutException
+                        ? new LLMCallRejectedException("Timed out after " + maxQueueWait.toMillis() + " ms waiting for a free call slot", cause)
+                        : cause);
+                return;
+            }
+            if (result.isDone()) {
+                leaveBulkhead(); // Cancelled while the slot was being granted
+                breaker.onIgnored();
+                return;
+            }
+            CompletableFuture<T> inFlight;
+            try {
+                inFlight = call.get();
+            } catch (RuntimeException e) {
+                inFlight = CompletableFuture.failedFuture(e);
+            }
+            inFlight.whenComplete((value, failure) -> {
+                leaveBulkhead();
+                if (failure == null) {
+                    breaker.onSuccess();
+                    result.complete(value);
+                } else {
+                    Throwable cause = unwrap(failure);
+                    breaker.onFailure(cause);
+                    result.completeExceptionally(cause);
+                }
+            });
+            CompletableFuture<T> exchange = inFlight;
+            result.whenComplete((value, failure) -> {
+                if (result.isCancelled()) {
+                    exchange.cancel(true);
+                }
+            });
+        });
+        // Cancelling while still queued gives up the place in the queue
+        result.whenComplete((value, failure) -> {
+            if (result.isCancelled()) {
+                permit.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Builder class for constructing CircuitBreakingLLMClient instances.
+     */
+    public static class Builder {
+        private final LLM_Client delegate;
+        private int slidingWindowSize = 20;
+        private int minimumCalls = 10;
+        private float failureRateThreshold = 50f;
+        private Duration openDuration = Duration.ofSeconds(30);
+        private int halfOpenTrialCalls = 3;
+        private int maxConcurrentCalls = 0;
+        private int maxQueuedCalls = 100;
+        private Duration maxQueueWait = Duration.ofSeconds(30);
+
+        /**
+         * Creates a builder wrapping the given client.
+         * @param delegate The client to protect. Must not be null.
+         */
+        public Builder(LLM_Client delegate) {
+            this.delegate = Objects.requireNonNull(delegate, "Delegate client cannot be null");
+        }
+
+        /**
+         * Sets how many of the most recent call outcomes the failure rate is computed over.
+         * @param value The window size, at least 1.
+         * @return The Builder instance.
+         */
+        public Builder setSlidingWindowSize(int value) {
+            if (value < 1) {
+                throw new IllegalArgumentException("Sliding window size must be at least 1.");
+            }
+            this.slidingWindowSize = value;
+            return this;
+        }
+
+        /**
+         * Sets the number of recorded calls required before the failure rate can trip the breaker.
+         * @param value The minimum number of calls, at least 1.
+         * @return The Builder instance.
+         */
+        public Builder setMinimumCalls(int value) {
+            if (value < 1) {
+                throw new IllegalArgumentException("Minimum calls must be at least 1.");
+            }
+            this.minimumCalls = value;
+            return this;
+        }
+
+        /**
+         * Sets the failure rate, in percent, at which the breaker opens.
+         * @param value The threshold, greater than 0 and at most 100.
+         * @return The Builder instance.
+         */
+        public Builder setFailureRateThreshold(float value) {
+            if (value <= 0 || value > 100) {
+                throw new IllegalArgumentException("Failure rate threshold must be greater than 0 and at most 100.");
+            }
+            this.failureRateThreshold = value;
+            return this;
+        }
+
+        /**
+         * Sets how long an open breaker rejects calls before letting trial calls through.
+         * @param value The open duration.
+         * @return The Builder instance.
+         */
+        public Builder setOpenDuration(Duration value) {
+            Objects.requireNonNull(value, "Open duration cannot be null");
+            if (value.isNegative()) {
+                throw new IllegalArgumentException("Open duration cannot be negative.");
+            }
+            this.openDuration = value;
+            return this;
+        }
+
+        /**
+         * Sets how many trial calls a half-open breaker lets through; all must succeed to close it.
+         * @param value The number of trial calls, at least 1.
+         * @return The Builder instance.
+         */
+        public Builder setHalfOpenTrialCalls(int value) {
+            if (value < 1) {
+                throw new IllegalArgumentException("Half-open trial calls must be at least 1.");
+            }
+            this.halfOpenTrialCalls = value;
+            return this;
+        }
+
+        /**
+         * Limits the number of calls that reach the wrapped client at the same time (the bulkhead).
+         * @param value The maximum concurrent calls, or 0 (the default) for no limit.
+         * @return The Builder instance.
+         */
+        public Builder setMaxConcurrentCalls(int value) {
+            if (value < 0) {
+                throw new IllegalArgumentException("Max concurrent calls cannot be negative.");
+            }
+            this.maxConcurrentCalls = value;
+            return this;
+        }
+
+        /**
+         * Sets how many calls may wait for a bulkhead slot; further calls are rejected immediately.
+         * @param value The maximum queue length, 0 to reject as soon as all slots are busy.
+         * @return The Builder instance.
+         */
+        public Builder setMaxQueuedCalls(int value) {
+            if (value < 0) {
+                throw new IllegalArgumentException("Max queued calls cannot be negative.");
+            }
+            this.maxQueuedCalls = value;
+            return this;
+        }
+
+        /**
+         * Sets how long a call may wait for a bulkhead slot before it is rejected.
+         * @param value The maximum wait.
+         * @return The Builder instance.
+         */
+        public Builder setMaxQueueWait(Duration value) {
+            Objects.requireNonNull(value, "Max queue wait cannot be null");
+            if (value.isNegative()) {
+                throw new IllegalArgumentException("Max queue wait cannot be negative.");
+            }
+            this.maxQueueWait = value;
+            return this;
+        }
+
+        /**
+         * Builds and returns a new CircuitBreakingLLMClient instance.
+         * @return A new CircuitBreakingLLMClient instance.
+         */
+        public CircuitBreakingLLMClient build() {
+            return new CircuitBreakingLLMClient(this);
+        }
+    }
+}
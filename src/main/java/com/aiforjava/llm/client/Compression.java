@@ -0,0 +1,30 @@
+package com.aiforjava.llm.client;
+
+/**
+ * Selects the content coding an LLM client uses to compress request bodies.
+ */
+public enum Compression {
+    /**
+     * The gzip coding (RFC 1952), understood by virtually every HTTP server and proxy.
+     */
+    GZIP("gzip"),
+    /**
+     * The HTTP "deflate" coding, i.e. zlib-wrapped deflate data (RFC 1950). Slightly smaller framing than gzip.
+     */
+    DEFLATE("deflate");
+
+    private final String token;
+
+    Compression(String token) {
+        this.token = token;
+    }
+
+    /**
+     * Returns the token used in the Content-Encoding header.
+     *
+     * @return The content coding token.
+     */
+    public String getToken() {
+        return token;
+    }
+}
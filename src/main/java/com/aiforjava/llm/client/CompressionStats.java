@@ -0,0 +1,74 @@
+package com.aiforjava.llm.client;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Counts how many body bytes an LLM client's compression kept off the wire.
+ * Request bytes are counted for every body sent, compressed or not; response bytes only for compressed responses.
+ */
+public final class CompressionStats {
+    private final AtomicLong requestBytes = new AtomicLong();
+    private final AtomicLong requestWireBytes = new AtomicLong();
+    private final AtomicLong compressedRequests = new AtomicLong();
+    private final AtomicLong responseBytes = new AtomicLong();
+    private final AtomicLong responseWireBytes = new AtomicLong();
+
+    CompressionStats() {
+    }
+
+    void recordRequest(int uncompressed, int sent) {
+        requestBytes.addAndGet(uncompressed);
+        requestWireBytes.addAndGet(sent);
+        if (sent != uncompressed) {
+            compressedRequests.incrementAndGet();
+        }
+    }
+
+    void recordResponse(int received, int decompressed) {
+        responseWireBytes.addAndGet(received);
+        responseBytes.addAndGet(decompressed);
+    }
+
+    /**
+     * @return The number of request bodies that were sent compressed.
+     */
+    public long getCompressedRequests() {
+        return compressedRequests.get();
+    }
+
+    /**
+     * @return The total size of all request bodies before compression.
+     */
+    public long getRequestBytes() {
+        return requestBytes.get();
+    }
+
+    /**
+     * @return The total size of all request bodies as sent.
+     */
+    public long getRequestWireBytes() {
+        return requestWireBytes.get();
+    }
+
+    /**
+     * @return The number of request bytes compression saved.
+     */
+    public long getRequestBytesSaved() {
+        return requestBytes.get() - requestWireBytes.get();
+    }
+
+    /**
+     * @return The number of response bytes compression saved.
+     */
+    public long getResponseBytesSaved() {
+        return responseBytes.get() - responseWireBytes.get();
+    }
+
+    @Override
+    public String toString() {
+        return "CompressionStats{compressedRequests=" + getCompressedRequests()
+                + ", requestBytes=" + getRequestBytes()
+                + ", requestBytesSaved=" + getRequestBytesSaved()
+                + ", responseBytesSaved=" + getResponseBytesSaved() + "}";
+    }
+}
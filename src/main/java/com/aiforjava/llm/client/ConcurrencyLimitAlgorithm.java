@@ -0,0 +1,20 @@
+package com.aiforjava.llm.client;
+
+/**
+ * Selects how {@link AdaptiveConcurrencyLLMClient} resizes its concurrency limit from the latencies it observes.
+ */
+public enum ConcurrencyLimitAlgorithm {
+    /**
+     * Additive increase, multiplicative decrease: the limit grows by one for every fast call made while the limit
+     * is nearly used up, and is cut by the backoff ratio whenever a call is slower than the latency threshold,
+     * times out or is rejected as overloaded (429/503). Simple and predictable, but needs a threshold.
+     */
+    AIMD,
+    /**
+     * Compares the recent latency with the long-term baseline, as TCP Vegas does with round-trip times: while
+     * they agree, the limit probes upwards; once the recent latency rises above the baseline times the tolerance,
+     * requests are queueing on the backend and the limit shrinks in proportion. Needs no threshold and follows
+     * changes of model or GPU contention on its own. This is the default.
+     */
+    GRADIENT
+}
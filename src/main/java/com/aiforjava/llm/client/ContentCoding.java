@@ -0,0 +1,105 @@
+package com.aiforjava.llm.client;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encodes request bodies and decodes response bodies for the HTTP clients' optional compression.
+ * Compression uses the fastest deflate level: chat payloads (JSON, base64 images) are what it is for, and
+ * the aim is to shorten the time to put a body on the wire, not to get the smallest possible body.
+ */
+final class ContentCoding {
+    /**
+     * The Accept-Encoding value sent with non-streaming requests when compression is enabled.
+     */
+    static final String ACCEPT_ENCODING = "gzip, deflate";
+
+    private ContentCoding() {
+    }
+
+    /**
+     * Compresses a request body if compression is set and the body has at least {@code threshold} bytes.
+     *
+     * @return The compressed body, or null if the body is to be sent as it is: uncompressed bodies are sent
+     *         straight from their chunks, and so is a body that compressing would not make smaller.
+     */
+    static byte[] encode(RequestBody body, Compression compression, int threshold, CompressionStats stats) {
+        int length = Math.toIntExact(body.contentLength());
+        byte[] compressed = null;
+        if (compression != null && length >= threshold) {
+            compressed = compress(body, compression);
+            if (compressed.length >= length) {
+                compressed = null;
+            }
+        }
+        stats.recordRequest(length, compressed != null ? compressed.length : length);
+        return compressed;
+    }
+
+    /**
+     * Decodes a response body according to its Content-Encoding header.
+     *
+     * @throws IOException If the body is corrupt or uses an unsupported coding.
+     */
+    static String decode(byte[] body, String contentEncoding, CompressionStats stats) throws IOException {
+        String coding = contentEncoding == null ? "identity" : contentEncoding.trim().toLowerCase();
+        if (coding.isEmpty() || coding.equals("identity")) {
+            return new String(body, StandardCharsets.UTF_8);
+        }
+        InputStream in;
+        switch (coding) {
+            case "gzip":
+            case "x-gzip":
+                in = new GZIPInputStream(new ByteArrayInputStream(body));
+                break;
+            case "deflate":
+                in = new InflaterInputStream(new ByteArrayInputStream(body));
+                break;
+            default:
+                throw new IOException("Unsupported Content-Encoding: " + contentEncoding);
+        }
+        byte[] decoded;
+        try (InputStream stream = in) {
+            decoded = stream.readAllBytes();
+        }
+        stats.recordResponse(body.length, decoded.length);
+        return new String(decoded, StandardCharsets.UTF_8);
+    }
+
+    private static byte[] compress(RequestBody body, Compression compression) {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream((int) Math.max(64, body.contentLength() / 4));
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED, compression == Compression.GZIP);
+        try {
+            try (OutputStream out = compression == Compression.GZIP
+                    ? new FastGzipOutputStream(buffer, deflater)
+                    : new DeflaterOutputStream(buffer, deflater, 8192)) {
+                body.writeTo(out);
+            }
+        } catch (IOException e) {
+            throw new IllegalStateException("In-memory compression failed", e); // ByteArrayOutputStream never throws
+        } finally {
+            deflater.end();
+        }
+        return buffer.toByteArray();
+    }
+
+    /**
+     * A GZIPOutputStream using the given (fast) deflater instead of its default-level one.
+     */
+    private static final class FastGzipOutputStream extends GZIPOutputStream {
+        FastGzipOutputStream(OutputStream out, Deflater fast) throws IOException {
+            super(out, 8192);
+            def.end();
+            def = fast;
+        }
+    }
+}
@@ -0,0 +1,177 @@
+package com.aiforjava.llm.client;
+
+import com.aiforjava.exception.Exception_Timeout;
+
+import java.time.Duration;
+import java.time.temporal.ChronoUnit;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * A point in time by which a whole operation must have finished, such as a chat turn that needs an image
+ * description and then a reply. It is passed down from the chat services to the client, and every backend call
+ * along the way is given only the budget that is left, so the bound holds for the turn as a whole rather than per
+ * call. Work that would start after the deadline is not started, and work still running when it passes is aborted,
+ * both with an {@link Exception_Timeout}.
+ * <p>
+ * Instances are immutable and can be shared between threads.
+ */
+public final class Deadline {
+    private static final Deadline NONE = new Deadline(0, 0);
+
+    private final long budgetNanos; // Zero for no deadline
+    private final long expiresAtNanos;
+
+    private Deadline(long budgetNanos, long expiresAtNanos) {
+        this.budgetNanos = budgetNanos;
+        this.expiresAtNanos = expiresAtNanos;
+    }
+
+    /**
+     * Creates a deadline that expires once the given budget has elapsed, counted from now.
+     *
+     * @param budget The time the operation may take. Must be greater than 0.
+     * @return The deadline.
+     */
+    public static Deadline after(Duration budget) {
+        Objects.requireNonNull(budget, "Budget cannot be null");
+        if (budget.isNegative() || budget.isZero()) {
+            throw new IllegalArgumentException("Budget must be greater than 0");
+        }
+        long budgetNanos = budget.toNanos();
+        return new Deadline(budgetNanos, System.nanoTime() + budgetNanos);
+    }
+
+    /**
+     * Returns the absence of a deadline: calls are bound only by the client's own timeouts.
+     *
+     * @return A deadline that never expires.
+     */
+    public static Deadline none() {
+        return NONE;
+    }
+
+    /**
+     * @return True if this deadline can expire, false for {@link #none()}.
+     */
+    public boolean isBounded() {
+        return budgetNanos > 0;
+    }
+
+    /**
+     * @return True if the deadline has passed.
+     */
+    public boolean isExpired() {
+        return isBounded() && System.nanoTime() - expiresAtNanos >= 0;
+    }
+
+    /**
+     * Returns the budget that is left, or {@link Duration#ZERO} once the deadline has passed.
+     *
+     * @return The remaining time. For {@link #none()}, a duration too long to ever elapse.
+     */
+    public Duration remaining() {
+        if (!isBounded()) {
+            return ChronoUnit.FOREVER.getDuration();
+        }
+        return Duration.ofNanos(Math.max(0, expiresAtNanos - System.nanoTime()));
+    }
+
+    /**
+     * Shortens a timeout to the remaining budget. This is how a hop applies the deadline to its own timeouts.
+     *
+     * @param timeout A timeout, or {@link Duration#ZERO} for none.
+     * @return The smaller of the timeout and the remaining budget (at least one millisecond, so that it can be
+     *         passed to APIs that reject a zero timeout); the timeout itself if there is no deadline.
+     */
+    public Duration limit(Duration timeout) {
+        if (!isBounded()) {
+            return timeout;
+        }
+        Duration remaining = remaining();
+        if (remaining.compareTo(Duration.ofMillis(1)) < 0) {
+            remaining = Duration.ofMillis(1);
+        }
+        return timeout.isZero() || remaining.compareTo(timeout) < 0 ? remaining : timeout;
+    }
+
+    /**
+     * Throws if the deadline has passed, so that work which could no longer finish in time is skipped.
+     *
+     * @param operation What was about to be started, for the message.
+     * @throws Exception_Timeout If the deadline has passed.
+     */
+    public void check(String operation) {
+        if (isExpired()) {
+            throw expired(operation);
+        }
+    }
+
+    /**
+     * Starts an asynchronous call unless the deadline has already passed, and aborts it if it is still running
+     * when the deadline passes. Cancelling the returned future cancels the call.
+     *
+     * @param call Starts the call.
+     * @return A future completed like the call's, or exceptionally with {@link Exception_Timeout} once the
+     *         deadline has passed.
+     */
+    public <T> CompletableFuture<T> bound(Supplier<CompletableFuture<T>> call) {
+        if (!isBounded()) {
+            return call.get();
+        }
+        if (isExpired()) {
+            return CompletableFuture.failedFuture(expired("the request was sent"));
+        }
+        CompletableFuture<T> inFlight = call.get();
+        CompletableFuture<T> result = new CompletableFuture<>();
+        TimerWheel.Timeout timeout = TimerWheel.shared().schedule(
+                () -> result.completeExceptionally(expired(null)),
+                expiresAtNanos - System.nanoTime());
+        inFlight.whenComplete((value, failure) -> {
+            if (failure != null) {
+                result.completeExceptionally(failure);
+            } else {
+                result.complete(value);
+            }
+        });
+        result.whenComplete((value, failure) -> {
+            timeout.cancel();
+            if (failure != null) {
+                inFlight.cancel(true); // The deadline passed or the caller gave up
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Returns whether a wait of the given length ends before the deadline. A hop checks this before it waits,
+     * e.g. to back off before a retry, since a call started after the deadline would only fail.
+     *
+     * @param waitNanos The length of the wait.
+     * @return True if the deadline leaves time after the wait; always true for {@link #none()}.
+     */
+    boolean outlasts(long waitNanos) {
+        return !isBounded() || expiresAtNanos - System.nanoTime() > waitNanos;
+    }
+
+    /**
+     * Returns the failure of a call that is not started because the deadline would pass during the wait before it.
+     *
+     * @param wait What the call would have waited for, for the message.
+     */
+    Exception_Timeout passesDuring(String wait) {
+        return new Exception_Timeout("Deadline of " + StreamWatchdog.describe(Duration.ofNanos(budgetNanos))
+                + " would pass while waiting for " + wait, null);
+    }
+
+    private Exception_Timeout expired(String operation) {
+        String message = "Deadline of " + StreamWatchdog.describe(Duration.ofNanos(budgetNanos)) + " exceeded";
+        return new Exception_Timeout(operation != null ? message + " before " + operation : message, null);
+    }
+
+    @Override
+    public String toString() {
+        return isBounded() ? "Deadline[remaining=" + remaining() + "]" : "Deadline[none]";
+    }
+}
@@ -2,6 +2,7 @@
 package com.aiforjava.llm.client;
 
 import com.aiforjava.exception.Exception_Timeout;
+import com.aiforjava.exception.LLMHttpException;
 import com.aiforjava.exception.LLMNetworkException;
 import com.aiforjava.exception.LLMParseException;
 import com.aiforjava.exception.LLMServiceException;
@@ -9,38 +10,74 @@ import com.aiforjava.exception.LLMStreamProcessingException;
 import com.aiforjava.llm.streams.DefaultStreamResponseParser;
 import com.aiforjava.llm.streams.StreamHandler;
 import com.aiforjava.llm.streams.StreamResponseParser;
-import com.aiforjava.llm.streams.StreamResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import java.io.IOException;
 import java.net.URI;
 import java.net.http.HttpClient;
 import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.net.http.HttpConnectTimeoutException;
 import java.net.http.HttpTimeoutException;
 import java.time.Duration;
 import java.util.Objects;
+import java.util.concurrent.CancellationException;
 import java.util.concurrent.CompletableFuture;
 import java.util.concurrent.CompletionException;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.stream.Stream;
+import java.util.function.Supplier;
 
 /**
  * DefaultHttpClient is an implementation of the LLM_Client interface that uses Java's
  * built-in HttpClient to communicate with Large Language Models (LLMs) over HTTP.
  * It handles sending both standard (non-streaming) and streaming requests to the LLM endpoint.
+ * By default it speaks HTTP/1.1; {@link Builder#setHttpProtocol(HttpProtocol)} enables HTTP/2 so that many
+ * concurrent requests and streams can be multiplexed over a single connection.
+ * {@link Builder#setCompression(Compression)} compresses large request bodies and lets the server compress
+ * non-streaming responses.
+ * Streams have their own timeouts for the first chunk, the gap between chunks and the whole stream, so a stalled
+ * generation is detected quickly without cutting off long healthy ones; see {@link Builder#setIdleTimeout(Duration)}.
+ * Clients with the same protocol and connect timeout share one HttpClient, connection pool and scheduler, so creating
+ * a client per chat session does not add threads; close each client when it is no longer needed.
+ * {@link Builder#setWarmUpConnections(int)} opens connections when the client is created and
+ * {@link Builder#setKeepAliveInterval(Duration)} keeps them open while the client is idle, so that the first
+ * request after startup or a quiet period does not pay for the connect and TLS handshake.
  */
 public class DefaultHttpClient implements LLM_Client, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(DefaultHttpClient.class);
+
     private final HttpClient httpClient;
     private final String baseUrl;
     private final Duration timeout;
+    private final Duration connectTimeout;
+    private final Duration firstTokenTimeout;
+    private final Duration idleTimeout;
+    private final Duration totalTimeout;
     private final String apiKey;
     private final boolean useBaseUrlAsEndpoint;
     private final StreamResponseParser streamResponseParser;
     private final long streamDelayMillis;
     private final ScheduledExecutorService scheduler;
+    private final boolean ownsScheduler; // A scheduler passed in by the caller is shut down on close
+    private final HttpTransport transport;
+    private final AtomicBoolean closed = new AtomicBoolean();
+    private final HttpClient.Version httpVersion;
+    private final AsyncSemaphore streamPermits; // Null when the number of concurrent exchanges is not capped
+    private final CompletableFuture<Void> protocolReady;
+    private final int warmUpConnections;
+    private final CompletableFuture<Void> warmUp;
+    private final long keepAliveIntervalNanos;
+    private final ScheduledFuture<?> keepAlivePinger; // Null when idle connections are not kept alive
+    private volatile long lastActivityNanos = System.nanoTime();
+    private final Compression compression; // Null when request bodies are sent uncompressed
+    private final int compressionThreshold;
+    private final CompressionStats compressionStats = new CompressionStats();
 
     /**
      * Constructs a new DefaultHttpClient.
@@ -50,7 +87,7 @@ public class DefaultHttpClient implements LLM_Client, AutoCloseable {
      * @param apiKey  The API key needed for running online models like gemini, openAI, deepseek etc
      */
     public DefaultHttpClient(String baseUrl, Duration timeout, String apiKey) {
-        this(baseUrl, timeout, apiKey, false, new DefaultStreamResponseParser(), 0L, Executors.newSingleThreadScheduledExecutor());
+        this(new Builder(baseUrl).setTimeout(timeout).setApiKey(apiKey));
     }
 
     /**
@@ -62,7 +99,7 @@ public class DefaultHttpClient implements LLM_Client, AutoCloseable {
      * @param useBaseUrlAsEndpoint If true, the baseUrl will be used as the full endpoint URI, ignoring the 'endpoint' parameter for path concatenation.
      */
     public DefaultHttpClient(String baseUrl, Duration timeout, String apiKey, boolean useBaseUrlAsEndpoint) {
-        this(baseUrl, timeout, apiKey, useBaseUrlAsEndpoint, new DefaultStreamResponseParser(), 0L, Executors.newSingleThreadScheduledExecutor());
+        this(new Builder(baseUrl).setTimeout(timeout).setApiKey(apiKey).setUseBaseUrlAsEndpoint(useBaseUrlAsEndpoint));
     }
 
     /**
@@ -76,7 +113,12 @@ public class DefaultHttpClient implements LLM_Client, AutoCloseable {
      * @param streamDelayMillis The delay in milliseconds between processing each stream chunk for smoother output.
      */
     public DefaultHttpClient(String baseUrl, Duration timeout, String apiKey, boolean useBaseUrlAsEndpoint, StreamResponseParser streamResponseParser, long streamDelayMillis) {
-        this(baseUrl, timeout, apiKey, useBaseUrlAsEndpoint, streamResponseParser, streamDelayMillis, Executors.newSingleThreadScheduledExecutor());
+        this(new Builder(baseUrl)
+                .setTimeout(timeout)
+                .setApiKey(apiKey)
+                .setUseBaseUrlAsEndpoint(useBaseUrlAsEndpoint)
+                .setStreamResponseParser(streamResponseParser)
+                .setStreamDelayMillis(streamDelayMillis));
     }
 
     /**
@@ -88,20 +130,50 @@ public class DefaultHttpClient implements LLM_Client, AutoCloseable {
      * @param useBaseUrlAsEndpoint If true, the baseUrl will be used as the full endpoint URI, ignoring the 'endpoint' parameter for path concatenation.
      * @param streamResponseParser The parser to use for streaming responses.
      * @param streamDelayMillis The delay in milliseconds between processing each stream chunk for smoother output.
-     * @param scheduler The ScheduledExecutorService to use for scheduling delayed tasks.
+     * @param scheduler The ScheduledExecutorService to use for scheduling delayed tasks. It is shut down when this client is closed.
      */
     public DefaultHttpClient(String baseUrl, Duration timeout, String apiKey, boolean useBaseUrlAsEndpoint, StreamResponseParser streamResponseParser, long streamDelayMillis, ScheduledExecutorService scheduler) {
-        this.baseUrl = Objects.requireNonNull(baseUrl, "URL cannot be null");
-        this.timeout = Objects.requireNonNull(timeout, "Timeout cannot be null");
-        this.apiKey = apiKey; //Initialize API key for online models
-        this.useBaseUrlAsEndpoint = useBaseUrlAsEndpoint;
-        this.streamResponseParser = Objects.requireNonNull(streamResponseParser, "StreamResponseParser cannot be null");
-        this.streamDelayMillis = streamDelayMillis;
-        this.scheduler = Objects.requireNonNull(scheduler, "Scheduler cannot be null");
-        this.httpClient = HttpClient.newBuilder()
-                .connectTimeout(timeout)
-                .version(HttpClient.Version.HTTP_1_1)
-                .build();
+        this(new Builder(baseUrl)
+                .setTimeout(timeout)
+                .setApiKey(apiKey)
+                .setUseBaseUrlAsEndpoint(useBaseUrlAsEndpoint)
+                .setStreamResponseParser(streamResponseParser)
+                .setStreamDelayMillis(streamDelayMillis)
+                .setScheduler(Objects.requireNonNull(scheduler, "Scheduler cannot be null")));
+    }
+
+    private DefaultHttpClient(Builder builder) {
+        this.baseUrl = builder.baseUrl;
+        this.timeout = builder.timeout;
+        this.firstTokenTimeout = builder.firstTokenTimeout != null ? builder.firstTokenTimeout : builder.timeout;
+        this.idleTimeout = builder.idleTimeout != null ? builder.idleTimeout : builder.timeout;
+        this.totalTimeout = builder.totalTimeout;
+        this.apiKey = builder.apiKey; //Initialize API key for online models
+        this.useBaseUrlAsEndpoint = builder.useBaseUrlAsEndpoint;
+        this.streamResponseParser = builder.streamResponseParser;
+        this.streamDelayMillis = builder.streamDelayMillis;
+        this.httpVersion = builder.httpProtocol == HttpProtocol.HTTP_1_1 ? HttpClient.Version.HTTP_1_1 : HttpClient.Version.HTTP_2;
+        this.connectTimeout = builder.connectTimeout != null ? builder.connectTimeout : builder.timeout;
+        this.transport = builder.sharedTransport
+                ? HttpTransport.acquire(httpVersion, connectTimeout, builder.virtualThreads)
+                : HttpTransport.createPrivate(httpVersion, connectTimeout, builder.virtualThreads);
+        this.httpClient = transport.httpClient();
+        this.ownsScheduler = builder.scheduler != null;
+        this.scheduler = builder.scheduler != null ? builder.scheduler : transport.scheduler();
+        this.streamPermits = builder.maxConcurrentStreams > 0 ? new AsyncSemaphore(builder.maxConcurrentStreams) : null;
+        this.compression = builder.compression;
+        this.compressionThreshold = builder.compressionThreshold;
+        this.protocolReady = builder.httpProtocol == HttpProtocol.H2C_PRIOR_KNOWLEDGE && baseUrl.startsWith("http://")
+                ? primeH2cConnection()
+                : CompletableFuture.completedFuture(null);
+        this.warmUpConnections = builder.warmUpConnections;
+        this.warmUp = warmUpConnections > 0
+                ? protocolReady.thenCompose(v -> probe(warmUpConnections, "Warm-up"))
+                : CompletableFuture.completedFuture(null);
+        this.keepAliveIntervalNanos = builder.keepAliveInterval.toNanos();
+        this.keepAlivePinger = keepAliveIntervalNanos > 0
+                ? scheduler.scheduleWithFixedDelay(this::pingIfIdle, keepAliveIntervalNanos, keepAliveIntervalNanos, TimeUnit.NANOSECONDS)
+                : null;
     }
 
     /**
@@ -110,35 +182,45 @@ public class DefaultHttpClient implements LLM_Client, AutoCloseable {
      * @param endpoint The specific API endpoint (e.g., "v1/chat/completions").
      * @param json The JSON request payload as a string.
      * @return The raw JSON response body as a string.
-     * @throws LLMServiceException If an HTTP error occurs (e.g., status code >= 400).
+     * @throws LLMHttpException If an HTTP error occurs (e.g., status code >= 400).
      * @throws Exception_Timeout If the request times out.
      * @throws LLMNetworkException If a network error occurs or the request is interrupted.
      */
     @Override
     public String sendRequest(String endpoint, String json) throws LLMServiceException {
-        try {
-            // Construct the URI based on whether the base URL should be used as the full endpoint
-            String uriString = useBaseUrlAsEndpoint ? baseUrl : baseUrl + "/" + endpoint;
-            HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-                    .uri(URI.create(uriString))
-                    .timeout(timeout)
-                    .version(HttpClient.Version.HTTP_1_1)
-                    .header("Content-Type", "application/json");
-
-            if(apiKey!=null && !apiKey.isEmpty())
-                requestBuilder.header("Authorization", "Bearer " + apiKey);
+        try (RequestBody body = RequestBody.of(json)) {
+            return sendRequest(endpoint, body);
+        }
+    }
 
-            HttpRequest request = requestBuilder.POST(HttpRequest.BodyPublishers.ofString(json))
-                    .build();
+    /**
+     * Sends a non-streaming HTTP POST request, publishing the body's chunks without copying them.
+     *
+     * @param endpoint The specific API endpoint (e.g., "v1/chat/completions").
+     * @param body The JSON request payload.
+     * @return The raw JSON response body as a string.
+     * @throws LLMHttpException If an HTTP error occurs (e.g., status code >= 400).
+     * @throws Exception_Timeout If the request times out.
+     * @throws LLMNetworkException If a network error occurs or the request is interrupted.
+     */
+    @Override
+    public String sendRequest(String endpoint, RequestBody body) throws LLMServiceException {
+        lastActivityNanos = System.nanoTime();
+        acquireStreamPermit();
+        try {
+            HttpRequest request = newPostBuilder(endpoint, body, true).timeout(timeout).build();
 
-            HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+            HttpResponse<byte[]> response = httpClient.send(request, HttpResponse.BodyHandlers.ofByteArray());
+            String responseBody = decodeBody(response);
 
             if (response.statusCode() >= 400) {
-                throw new LLMServiceException("HTTP error: " + response.statusCode() + " : " + response.body());
+                throw httpError(response, responseBody);
             }
 
-            return response.body();
+            return responseBody;
 
+        } catch (HttpConnectTimeoutException e) {
+            throw new Exception_Timeout("Connect timed out after " + StreamWatchdog.describe(connectTimeout), e);
         } catch (HttpTimeoutException e) {
             throw new Exception_Timeout("Request timed out after " + timeout.toSeconds() + " seconds", e);
         } catch (IOException e) {
@@ -148,73 +230,105 @@ public class DefaultHttpClient implements LLM_Client, AutoCloseable {
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             throw new LLMNetworkException("Request was Interrupted", e);
+        } finally {
+            releaseStreamPermit();
         }
     }
 
     /**
      * Sends a streaming HTTP POST request to the LLM endpoint.
-     * The response is processed line by line by the provided StreamHandler.
+     * The response is processed line by line by the provided StreamHandler as it arrives; this method
+     * blocks until the stream has ended. If the calling thread is interrupted, the exchange is aborted.
      *
      * @param endpoint The specific API endpoint (e.g., "v1/chat/completions").
      * @param json The JSON request payload as a string.
      * @param handler A StreamHandler to process each chunk of the streaming response.
-     * @throws LLMServiceException If an HTTP error occurs.
+     * @throws LLMHttpException If an HTTP error occurs.
      * @throws Exception_Timeout If the request times out.
      * @throws LLMNetworkException If a network error occurs or the request is interrupted.
-     * @throws RuntimeException wrapping an {@link LLMParseException} if JSON parsing fails within the stream.
+     * @throws LLMStreamProcessingException wrapping an {@link LLMParseException} if JSON parsing fails within the stream.
      */
     @Override
     public void sendStreamRequest(String endpoint, String json, StreamHandler handler) throws LLMServiceException {
-        try {
-            String uriString = useBaseUrlAsEndpoint ? baseUrl : baseUrl + "/" + endpoint;
-            HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-                    .uri(URI.create(uriString))
-                    .timeout(timeout)
-                    .version(HttpClient.Version.HTTP_1_1)
-                    .header("Content-Type", "application/json");
+        await(sendStreamRequestAsync(endpoint, json, handler));
+    }
 
-            if(apiKey!=null && !apiKey.isEmpty())
-                requestBuilder.header("Authorization", "Bearer " + apiKey);
+    /**
+     * Sends a streaming HTTP POST request, publishing the body's chunks without copying them.
+     * Blocks until the stream has ended, like {@link #sendStreamRequest(String, String, StreamHandler)}.
+     *
+     * @param endpoint The specific API endpoint (e.g., "v1/chat/completions").
+     * @param body The JSON request payload.
+     * @param handler A StreamHandler to process each chunk of the streaming response.
+     * @throws LLMServiceException If the request fails, see {@link #sendStreamRequest(String, String, StreamHandler)}.
+     */
+    @Override
+    public void sendStreamRequest(String endpoint, RequestBody body, StreamHandler handler) throws LLMServiceException {
+        await(sendStreamRequestAsync(endpoint, body, handler));
+    }
 
-            HttpRequest request = requestBuilder.POST(HttpRequest.BodyPublishers.ofString(json))
-                    .build();
+    /**
+     * Sends a non-streaming HTTP POST request to the LLM endpoint asynchronously, using
+     * {@link HttpClient#sendAsync} so that no thread is blocked while the response is pending.
+     *
+     * @param endpoint The specific API endpoint (e.g., "v1/chat/completions").
+     * @param json The JSON request payload as a string.
+     * @return A CompletableFuture completed with the raw JSON response body. It completes exceptionally with
+     *         {@link LLMHttpException} on HTTP errors (status code >= 400), {@link Exception_Timeout} on timeouts
+     *         and {@link LLMNetworkException} on network errors.
+     */
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, String json) {
+        RequestBody body = RequestBody.of(json);
+        CompletableFuture<String> response = sendRequestAsync(endpoint, body);
+        response.whenComplete((value, failure) -> body.close());
+        return response;
+    }
 
-            HttpResponse<Stream<String>> response = httpClient.send(request, HttpResponse.BodyHandlers.ofLines());
+    /**
+     * Sends a non-streaming HTTP POST request asynchronously, publishing the body's chunks without copying them.
+     *
+     * @param endpoint The specific API endpoint (e.g., "v1/chat/completions").
+     * @param body The JSON request payload. Must stay open until the returned future has completed.
+     * @return A CompletableFuture completed with the raw JSON response body, see {@link #sendRequestAsync(String, String)}.
+     */
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, RequestBody body) {
+        return admitted(() -> requestAsync(endpoint, body, timeout));
+    }
 
-            if (response.statusCode() >= 400) {
-                throw new LLMServiceException("HTTP error: " + response.statusCode());
-            }
+    /**
+     * Sends a non-streaming request bound by a deadline. The request timeout is cut to the budget left once the
+     * request is admitted, so the exchange is aborted by the HttpClient itself when the deadline passes.
+     *
+     * @param endpoint The specific API endpoint (e.g., "v1/chat/completions").
+     * @param body The JSON request payload. Must stay open until the returned future has completed.
+     * @param deadline The deadline of the operation this call belongs to.
+     * @return A CompletableFuture completed with the raw JSON response body, see {@link #sendRequestAsync(String, String)}.
+     */
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, RequestBody body, Deadline deadline) {
+        return deadline.bound(() -> admitted(() -> requestAsync(endpoint, body, deadline.limit(timeout))));
+    }
 
-            try (Stream<String> stream = response.body()) {
-                stream.forEach(line -> {
+    private CompletableFuture<String> requestAsync(String endpoint, RequestBody body, Duration requestTimeout) {
+        HttpRequest request = newPostBuilder(endpoint, body, true).timeout(requestTimeout).build();
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofByteArray())
+                .thenApply(httpResponse -> {
+                    String responseBody;
                     try {
-                        StreamResponse content = streamResponseParser.parse(line);
-                        if (content != null) {
-                            handler.onStream(content);
-                        }
-                        if (streamDelayMillis > 0) {
-                            try {
-                                Thread.sleep(streamDelayMillis);
-                            } catch (InterruptedException e) {
-                                Thread.currentThread().interrupt();
-                                throw new LLMStreamProcessingException("Stream interrupted during delay", e);
-                            }
-                        }
-                    } catch (LLMParseException e) {
-                        throw new LLMStreamProcessingException("Error parsing LLM stream response", e);
+                        responseBody = decodeBody(httpResponse);
+                    } catch (IOException e) {
+                        throw new CompletionException(e);
+                    }
+                    if (httpResponse.statusCode() >= 400) {
+                        throw new CompletionException(httpError(httpResponse, responseBody));
                     }
+                    return responseBody;
+                })
+                .exceptionally(ex -> {
+                    throw asyncFailure(ex, requestTimeout, "Unexpected error during async request");
                 });
-            }
-        } catch (LLMStreamProcessingException e) {
-            throw e; // Re-throw the specific stream processing exception
-        } catch (HttpTimeoutException e) {
-            throw new Exception_Timeout("Request timed out after " + timeout.toSeconds() + " seconds", e);
-        } catch (IOException e) {
-            throw new LLMNetworkException("Network error communicating with " + baseUrl, e);
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new LLMNetworkException("Request was Interrupted", e);
-        }
     }
 
     /**
@@ -226,108 +340,347 @@ public class DefaultHttpClient implements LLM_Client, AutoCloseable {
      * @param json The JSON request payload as a string.
      * @param handler A StreamHandler to process each chunk of the streaming response.
      * @return A CompletableFuture that completes when the stream processing is finished or an error occurs.
-     * @throws LLMServiceException If an HTTP error occurs during the initial request setup.
-     * @throws Exception_Timeout If the initial request times out.
-     * @throws LLMNetworkException If a network error occurs during the initial request setup.
+     *         It completes exceptionally with {@link LLMHttpException} on HTTP errors, {@link Exception_Timeout}
+     *         on timeouts, {@link LLMNetworkException} on network errors and {@link LLMStreamProcessingException}
+     *         if a chunk cannot be parsed.
      */
+    @Override
     public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, String json, StreamHandler handler) {
-        String uriString = useBaseUrlAsEndpoint ? baseUrl : baseUrl + "/" + endpoint;
-        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
-                .uri(URI.create(uriString))
-                .timeout(timeout)
-                .version(HttpClient.Version.HTTP_1_1)
-                .header("Content-Type", "application/json");
+        RequestBody body = RequestBody.of(json);
+        CompletableFuture<Void> stream = sendStreamRequestAsync(endpoint, body, handler);
+        stream.whenComplete((value, failure) -> body.close());
+        return stream;
+    }
 
-        if(apiKey!=null && !apiKey.isEmpty())
-            requestBuilder.header("Authorization", "Bearer " + apiKey);
+    /**
+     * Sends a streaming HTTP POST request asynchronously, publishing the body's chunks without copying them.
+     *
+     * @param endpoint The specific API endpoint (e.g., "v1/chat/completions").
+     * @param body The JSON request payload. Must stay open until the returned future has completed.
+     * @param handler A StreamHandler to process each chunk of the streaming response.
+     * @return A CompletableFuture that completes when the stream processing is finished or an error occurs,
+     *         see {@link #sendStreamRequestAsync(String, String, StreamHandler)}.
+     */
+    @Override
+    public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, RequestBody body, StreamHandler handler) {
+        return admitted(() -> streamAsync(endpoint, body, handler, totalTimeout));
+    }
 
-        HttpRequest request = requestBuilder.POST(HttpRequest.BodyPublishers.ofString(json))
-                .build();
+    /**
+     * Sends a streaming request bound by a deadline. The total stream timeout is cut to the budget left once the
+     * request is admitted, so the watchdog aborts the stream when the deadline passes.
+     *
+     * @param endpoint The specific API endpoint (e.g., "v1/chat/completions").
+     * @param body The JSON request payload. Must stay open until the returned future has completed.
+     * @param handler A StreamHandler to process each chunk of the streaming response.
+     * @param deadline The deadline of the operation this call belongs to.
+     * @return A CompletableFuture that completes when the stream processing is finished or an error occurs,
+     *         see {@link #sendStreamRequestAsync(String, String, StreamHandler)}.
+     */
+    @Override
+    public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, RequestBody body, StreamHandler handler, Deadline deadline) {
+        return deadline.bound(() -> admitted(() -> streamAsync(endpoint, body, handler, deadline.limit(totalTimeout))));
+    }
 
-        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofLines())
+    /**
+     * Starts an exchange once the protocol is ready and, if concurrency is capped, a stream permit is free.
+     * Unlike a plain thenCompose chain, cancelling the returned future also cancels the exchange in flight.
+     */
+    private <T> CompletableFuture<T> admitted(Supplier<CompletableFuture<T>> exchange) {
+        lastActivityNanos = System.nanoTime();
+        CompletableFuture<Void> admission = streamPermits == null ? protocolReady : protocolReady.thenCompose(v -> streamPermits.acquire());
+        CompletableFuture<T> result = new CompletableFuture<>();
+        admission.whenComplete((ignored, admissionFailure) -> {
+            if (admissionFailure != null) {
+                result.completeExceptionally(admissionFailure);
+                return;
+            }
+            if (result.isDone()) {
+                releaseStreamPermit(); // Cancelled while waiting for a permit
+                return;
+            }
+            CompletableFuture<T> inFlight;
+            try {
+                inFlight = exchange.get();
+            } catch (RuntimeException e) {
+                // Building the request failed, e.g. on a base URL that is not a valid URI
+                releaseStreamPermit();
+                result.completeExceptionally(e instanceof IllegalArgumentException
+                        ? new LLMServiceException("Invalid request argument: " + e.getMessage(), e) : e);
+                return;
+            }
+            inFlight.whenComplete((value, failure) -> {
+                releaseStreamPermit();
+                if (failure != null) {
+                    result.completeExceptionally(failure);
+                } else {
+                    result.complete(value);
+                }
+            });
+            result.whenComplete((value, failure) -> {
+                if (result.isCancelled()) {
+                    inFlight.cancel(true);
+                }
+            });
+        });
+        return result;
+    }
+
+    /**
+     * Sends a stream request. It has no request timeout of its own: the watchdog covers the wait for the headers
+     * as part of the first-token timeout and, when a timeout expires, fails the stream and aborts the exchange.
+     */
+    private CompletableFuture<Void> streamAsync(String endpoint, RequestBody body, StreamHandler handler, Duration streamTimeout) {
+        HttpRequest request = newPostBuilder(endpoint, body, false).build();
+
+        CompletableFuture<Void> stream = new CompletableFuture<>();
+        StreamWatchdog watchdog = new StreamWatchdog(TimerWheel.shared(), firstTokenTimeout, idleTimeout, streamTimeout,
+                stream::completeExceptionally);
+        SseBodySubscriber subscriber = new SseBodySubscriber(streamResponseParser.newSession(), watchdog.watch(handler), streamDelayMillis, scheduler);
+        CompletableFuture<HttpResponse<Void>> exchange = httpClient.sendAsync(request, responseInfo ->
+                responseInfo.statusCode() >= 400 ? HttpResponse.BodySubscribers.replacing(null) : subscriber);
+        watchdog.start();
+        exchange
                 .thenApply(response -> {
                     if (response.statusCode() >= 400) {
-                        throw new CompletionException(new LLMServiceException("HTTP error: " + response.statusCode()));
+                        throw new CompletionException(httpError(response, null));
                     }
-                    return response.body();
-                })
-                .thenCompose(stream -> {
-                    CompletableFuture<Void> future = new CompletableFuture<>();
-                    AtomicBoolean isCancelled = new AtomicBoolean(false);
-
-                    // Convert stream to an iterator to process elements one by one
-                    java.util.Iterator<String> iterator = stream.iterator();
-
-                    // Ensure the stream is closed when the future completes
-                    future.whenComplete((v, ex) -> stream.close());
-
-                    // Recursive function to process stream elements with delay
-                    processStreamElement(iterator, handler, future, isCancelled);
-
-                    return future;
+                    return (Void) null;
                 })
                 .exceptionally(ex -> {
-                    Throwable cause = ex.getCause() != null ? ex.getCause() : ex;
-                    if (cause instanceof HttpTimeoutException) {
-                        throw new CompletionException(new Exception_Timeout("Request timed out after " + timeout.toSeconds() + " seconds", cause));
-                    } else if (cause instanceof IOException) {
-                        throw new CompletionException(new LLMNetworkException("Network error communicating with " + baseUrl, cause));
-                    } else if (cause instanceof InterruptedException) {
-                        Thread.currentThread().interrupt();
-                        throw new CompletionException(new LLMNetworkException("Request was Interrupted", cause));
-                    } else if (cause instanceof LLMServiceException) {
-                        throw new CompletionException((LLMServiceException) cause);
-                    } else if (cause instanceof LLMStreamProcessingException) {
-                        throw (LLMStreamProcessingException) cause;
+                    // Streams have no request timeout, so only the connect timeout can expire here
+                    throw asyncFailure(ex, connectTimeout, "Unexpected error during async stream request");
+                })
+                .whenComplete((v, ex) -> {
+                    if (ex != null) {
+                        stream.completeExceptionally(ex);
                     } else {
-                        throw new CompletionException("Unexpected error during async stream request", cause);
+                        stream.complete(null);
                     }
                 });
+        // Cancelling the returned future, or a timeout, aborts the exchange, whether it is still waiting for headers or streaming
+        stream.whenComplete((v, ex) -> {
+            watchdog.stop();
+            if (ex != null) {
+                exchange.cancel(true);
+                subscriber.cancel();
+            }
+        });
+        return stream;
     }
 
-    private void processStreamElement(java.util.Iterator<String> iterator, StreamHandler handler, CompletableFuture<Void> future, AtomicBoolean isCancelled) {
-        if (!iterator.hasNext() || isCancelled.get()) {
-            future.complete(null);
-            return;
-        }
+    private static LLMHttpException httpError(HttpResponse<?> response, String body) {
+        String message = "HTTP error: " + response.statusCode() + (body != null ? " : " + body : "");
+        return new LLMHttpException(message, response.statusCode(),
+                RetryAfter.parse(response.headers().firstValue("Retry-After").orElse(null)));
+    }
 
-        String line = iterator.next();
+    /**
+     * Translates a failure of an asynchronous exchange into the exception types used by the blocking methods,
+     * wrapped in a CompletionException so that it can be rethrown from a completion stage.
+     */
+    private RuntimeException asyncFailure(Throwable ex, Duration requestTimeout, String unexpectedMessage) {
+        Throwable cause = ex instanceof CompletionException && ex.getCause() != null ? ex.getCause() : ex;
+        if (cause instanceof HttpConnectTimeoutException) {
+            return new CompletionException(new Exception_Timeout("Connect timed out after " + StreamWatchdog.describe(connectTimeout), cause));
+        } else if (cause instanceof HttpTimeoutException) {
+            return new CompletionException(new Exception_Timeout("Request timed out after " + StreamWatchdog.describe(requestTimeout), cause));
+        } else if (cause instanceof IOException) {
+            return new CompletionException(new LLMNetworkException("Network error communicating with " + baseUrl, cause));
+        } else if (cause instanceof InterruptedException) {
+            Thread.currentThread().interrupt();
+            return new CompletionException(new LLMNetworkException("Request was Interrupted", cause));
+        } else if (cause instanceof LLMServiceException) {
+            return new CompletionException(cause);
+        } else if (cause instanceof RuntimeException) {
+            return (RuntimeException) cause; // LLMStreamProcessingException, Exception_Timeout, cancellation
+        } else {
+            return new CompletionException(unexpectedMessage, cause);
+        }
+    }
 
-        CompletableFuture.runAsync(() -> {
-            try {
-                StreamResponse content = streamResponseParser.parse(line);
-                if (content != null) {
-                    handler.onStream(content);
-                }
-            } catch (LLMParseException e) {
-                isCancelled.set(true);
-                future.completeExceptionally(new LLMStreamProcessingException("Error parsing LLM stream response", e));
-            } catch (Exception e) {
-                isCancelled.set(true);
-                future.completeExceptionally(new LLMNetworkException("Error during stream processing", e));
+    private <T> T await(CompletableFuture<T> future) throws LLMServiceException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new LLMNetworkException("Request was Interrupted", e);
+        } catch (CancellationException e) {
+            throw new LLMNetworkException("Request was cancelled", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof LLMServiceException) {
+                throw (LLMServiceException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
             }
-        }, scheduler).orTimeout(timeout.toMillis(), TimeUnit.MILLISECONDS)
-                .whenComplete((v, ex) -> {
+            throw new LLMServiceException("Unexpected error communicating with " + baseUrl, cause);
+        }
+    }
+
+    /**
+     * Returns a future that completes once the warm-up probes sent at construction have been answered or have
+     * failed, e.g. to hold back a readiness check until the connections are open. Requests do not wait for it.
+     *
+     * @return The warm-up future; already complete if warm-up is disabled.
+     */
+    public CompletableFuture<Void> getWarmUp() {
+        return warmUp;
+    }
+
+    /**
+     * Returns the body bytes saved by request and response compression so far.
+     *
+     * @return The compression statistics of this client.
+     */
+    public CompressionStats getCompressionStats() {
+        return compressionStats;
+    }
+
+    /**
+     * Creates a POST request carrying the JSON body, compressed if it is large enough. Only non-streaming requests
+     * advertise Accept-Encoding: a compressed event stream could not be handed out chunk by chunk.
+     */
+    private HttpRequest.Builder newPostBuilder(String endpoint, RequestBody body, boolean acceptCompressed) {
+        byte[] compressed = ContentCoding.encode(body, compression, compressionThreshold, compressionStats);
+        HttpRequest.BodyPublisher publisher;
+        if (compressed != null) {
+            publisher = HttpRequest.BodyPublishers.ofByteArray(compressed);
+        } else if (body.contentLength() > 0) {
+            publisher = HttpRequest.BodyPublishers.fromPublisher(body.publisher(), body.contentLength());
+        } else {
+            publisher = HttpRequest.BodyPublishers.noBody();
+        }
+        HttpRequest.Builder requestBuilder = newRequestBuilder(endpoint).POST(publisher);
+        if (compressed != null) {
+            requestBuilder.header("Content-Encoding", compression.getToken());
+        }
+        if (acceptCompressed && compression != null) {
+            requestBuilder.header("Accept-Encoding", ContentCoding.ACCEPT_ENCODING);
+        }
+        return requestBuilder;
+    }
+
+    private String decodeBody(HttpResponse<byte[]> response) throws IOException {
+        return ContentCoding.decode(response.body(), response.headers().firstValue("Content-Encoding").orElse(null), compressionStats);
+    }
+
+    private HttpRequest.Builder newRequestBuilder(String endpoint) {
+        // Construct the URI based on whether the base URL should be used as the full endpoint
+        String uriString = useBaseUrlAsEndpoint ? baseUrl : baseUrl + "/" + endpoint;
+        HttpRequest.Builder requestBuilder = HttpRequest.newBuilder()
+                .uri(URI.create(uriString))
+                .version(httpVersion)
+                .header("Content-Type", "application/json");
+
+        if(apiKey!=null && !apiKey.isEmpty())
+            requestBuilder.header("Authorization", "Bearer " + apiKey);
+        return requestBuilder;
+    }
+
+    /**
+     * Opens the h2c connection with a cheap, bodyless GET. java.net.http only upgrades plaintext connections
+     * through "Upgrade: h2c", and a POST with a body is a poor upgrade candidate, so doing it once up front
+     * lets every subsequent chat request be multiplexed on the upgraded connection.
+     */
+    private CompletableFuture<Void> primeH2cConnection() {
+        return httpClient.sendAsync(newProbeRequest(HttpClient.Version.HTTP_2), HttpResponse.BodyHandlers.discarding())
+                .handle((response, ex) -> {
                     if (ex != null) {
-                        isCancelled.set(true);
-                        future.completeExceptionally(ex);
-                    } else {
-                        if (streamDelayMillis > 0) {
-                            scheduler.schedule(() -> processStreamElement(iterator, handler, future, isCancelled), streamDelayMillis, TimeUnit.MILLISECONDS);
-                        } else {
-                            processStreamElement(iterator, handler, future, isCancelled);
-                        }
+                        logger.warn("h2c priming request to {} failed, continuing without it: {}", baseUrl, ex.getMessage());
+                    } else if (response.version() != HttpClient.Version.HTTP_2) {
+                        logger.info("{} refused the h2c upgrade, falling back to HTTP/1.1", baseUrl);
                     }
+                    return null;
                 });
     }
 
     /**
-     * Shuts down the internal ScheduledExecutorService, releasing its resources.
+     * Sends the given number of concurrent probes, so that with HTTP/1.1 each one opens (or keeps busy) its own
+     * pooled connection. Failures are only logged: warming up is best effort.
+     */
+    private CompletableFuture<Void> probe(int connections, String purpose) {
+        CompletableFuture<?>[] probes = new CompletableFuture<?>[connections];
+        for (int i = 0; i < connections; i++) {
+            probes[i] = httpClient.sendAsync(newProbeRequest(httpVersion), HttpResponse.BodyHandlers.discarding());
+        }
+        return CompletableFuture.allOf(probes).handle((ignored, ex) -> {
+            if (ex != null) {
+                logger.debug("{} probe to {} failed: {}", purpose, baseUrl, ex.getMessage());
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Pings the server if no request was started during the last keep-alive interval, before the server or the
+     * connection pool closes the idle connections.
+     */
+    private void pingIfIdle() {
+        if (System.nanoTime() - lastActivityNanos >= keepAliveIntervalNanos) {
+            probe(Math.max(1, warmUpConnections), "Keep-alive");
+        }
+    }
+
+    private HttpRequest newProbeRequest(HttpClient.Version version) {
+        HttpRequest.Builder probeBuilder = HttpRequest.newBuilder()
+                .uri(URI.create(baseUrl).resolve("/v1/models"))
+                .timeout(timeout)
+                .version(version)
+                .GET();
+        if(apiKey!=null && !apiKey.isEmpty())
+            probeBuilder.header("Authorization", "Bearer " + apiKey);
+        return probeBuilder.build();
+    }
+
+    private void acquireStreamPermit() throws LLMNetworkException {
+        try {
+            protocolReady.get(timeout.toMillis(), TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new LLMNetworkException("Request was Interrupted", e);
+        } catch (ExecutionException | TimeoutException e) {
+            // Priming is best effort; the request proceeds and negotiates on its own
+        }
+        if (streamPermits == null) {
+            return;
+        }
+        CompletableFuture<Void> permit = streamPermits.acquire();
+        try {
+            permit.get();
+        } catch (InterruptedException e) {
+            if (!permit.cancel(false)) {
+                streamPermits.release(); // Granted concurrently with the interrupt
+            }
+            Thread.currentThread().interrupt();
+            throw new LLMNetworkException("Request was Interrupted while waiting for a free stream", e);
+        } catch (ExecutionException e) {
+            throw new LLMNetworkException("Failed to acquire a stream permit", e);
+        }
+    }
+
+    private void releaseStreamPermit() {
+        if (streamPermits != null) {
+            streamPermits.release();
+        }
+    }
+
+    /**
+     * Releases this client's share of the transport; the last client using it shuts it down, letting exchanges
+     * still in flight finish. A scheduler passed to the constructor is shut down as well.
      * This method should be called when the DefaultHttpClient instance is no longer needed.
      */
     @Override
     public void close() {
-        if (!scheduler.isShutdown()) {
+        if (!closed.compareAndSet(false, true)) {
+            return;
+        }
+        if (keepAlivePinger != null) {
+            keepAlivePinger.cancel(false);
+        }
+        transport.release();
+        if (ownsScheduler && !scheduler.isShutdown()) {
             scheduler.shutdown();
             try {
                 if (!scheduler.awaitTermination(5, TimeUnit.SECONDS)) {
@@ -339,4 +692,261 @@ public class DefaultHttpClient implements LLM_Client, AutoCloseable {
             }
         }
     }
+
+    /**
+     * Builder class for constructing DefaultHttpClient instances.
+     * Provides a fluent API for the endpoint, timeout, stream handling and protocol settings.
+     */
+    public static class Builder {
+        private final String baseUrl;
+        private Duration timeout = Duration.ofSeconds(90);
+        private Duration connectTimeout;
+        private Duration firstTokenTimeout;
+        private Duration idleTimeout;
+        private Duration totalTimeout = Duration.ZERO;
+        private String apiKey;
+        private boolean useBaseUrlAsEndpoint = false;
+        private StreamResponseParser streamResponseParser = new DefaultStreamResponseParser();
+        private long streamDelayMillis = 0L;
+        private ScheduledExecutorService scheduler;
+        private HttpProtocol httpProtocol = HttpProtocol.HTTP_1_1;
+        private int maxConcurrentStreams = 0;
+        private Compression compression;
+        private int compressionThreshold = 8192;
+        private boolean sharedTransport = true;
+        private int warmUpConnections = 0;
+        private Duration keepAliveInterval = Duration.ZERO;
+        private boolean virtualThreads = false;
+
+        /**
+         * Creates a builder for the given base URL.
+         * @param baseUrl The base URL of the LLM API (e.g., "http://localhost:1234"). Must not be null.
+         */
+        public Builder(String baseUrl) {
+            this.baseUrl = Objects.requireNonNull(baseUrl, "URL cannot be null");
+        }
+
+        /**
+         * Sets the maximum duration to wait for the response of a non-streaming request. It is also the default
+         * for the connect, first-token and idle timeouts that are not set explicitly. Defaults to 90 seconds.
+         * @param value The timeout duration.
+         * @return The Builder instance.
+         */
+        public Builder setTimeout(Duration value) {
+            this.timeout = Objects.requireNonNull(value, "Timeout cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets the maximum duration to wait for a connection to be established.
+         * @param value The timeout, or {@link Duration#ZERO} to wait as long as the operating system does.
+         * @return The Builder instance.
+         */
+        public Builder setConnectTimeout(Duration value) {
+            this.connectTimeout = checkTimeout(value, "Connect timeout");
+            return this;
+        }
+
+        /**
+         * Sets how long a stream may take to deliver its first chunk, counted from when the request is sent.
+         * This covers queueing and prompt processing on the server, which can legitimately take much longer
+         * than the gap between two tokens.
+         * @param value The timeout, or {@link Duration#ZERO} to disable it.
+         * @return The Builder instance.
+         */
+        public Builder setFirstTokenTimeout(Duration value) {
+            this.firstTokenTimeout = checkTimeout(value, "First token timeout");
+            return this;
+        }
+
+        /**
+         * Sets how long a stream may go without delivering a chunk once the first one has arrived. A few seconds
+         * are enough to detect a stuck generation, since a healthy one produces tokens continuously.
+         * @param value The timeout, or {@link Duration#ZERO} to disable it.
+         * @return The Builder instance.
+         */
+        public Builder setIdleTimeout(Duration value) {
+            this.idleTimeout = checkTimeout(value, "Idle timeout");
+            return this;
+        }
+
+        /**
+         * Sets the maximum duration of a whole stream, however steadily it produces chunks. Disabled by default.
+         * @param value The timeout, or {@link Duration#ZERO} to disable it.
+         * @return The Builder instance.
+         */
+        public Builder setTotalTimeout(Duration value) {
+            this.totalTimeout = checkTimeout(value, "Total timeout");
+            return this;
+        }
+
+        private static Duration checkTimeout(Duration value, String name) {
+            Objects.requireNonNull(value, name + " cannot be null");
+            if (value.isNegative()) {
+                throw new IllegalArgumentException(name + " must not be negative");
+            }
+            return value;
+        }
+
+        /**
+         * Sets the API key needed for running online models like gemini, openAI, deepseek etc.
+         * @param value The API key, or null for local servers.
+         * @return The Builder instance.
+         */
+        public Builder setApiKey(String value) {
+            this.apiKey = value;
+            return this;
+        }
+
+        /**
+         * Sets whether the base URL is used as the full endpoint URI.
+         * @param value True to ignore the 'endpoint' parameter for path concatenation.
+         * @return The Builder instance.
+         */
+        public Builder setUseBaseUrlAsEndpoint(boolean value) {
+            this.useBaseUrlAsEndpoint = value;
+            return this;
+        }
+
+        /**
+         * Sets the parser to use for streaming responses.
+         * @param value The stream response parser.
+         * @return The Builder instance.
+         */
+        public Builder setStreamResponseParser(StreamResponseParser value) {
+            this.streamResponseParser = Objects.requireNonNull(value, "StreamResponseParser cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets the delay in milliseconds between processing each stream chunk for smoother output.
+         * @param value The delay in milliseconds.
+         * @return The Builder instance.
+         */
+        public Builder setStreamDelayMillis(long value) {
+            if (value < 0) {
+                throw new IllegalArgumentException("Stream delay must not be negative");
+            }
+            this.streamDelayMillis = value;
+            return this;
+        }
+
+        /**
+         * Sets the ScheduledExecutorService to use for scheduling delayed tasks. It is shut down when the client is closed.
+         * If not set, the client uses the scheduler of its transport.
+         * @param value The scheduler.
+         * @return The Builder instance.
+         */
+        public Builder setScheduler(ScheduledExecutorService value) {
+            this.scheduler = value;
+            return this;
+        }
+
+        /**
+         * Sets the HTTP protocol version. Defaults to {@link HttpProtocol#HTTP_1_1}.
+         * @param value The protocol to use.
+         * @return The Builder instance.
+         */
+        public Builder setHttpProtocol(HttpProtocol value) {
+            this.httpProtocol = Objects.requireNonNull(value, "HttpProtocol cannot be null");
+            return this;
+        }
+
+        /**
+         * Caps the number of requests and streams this client keeps in flight at once. With HTTP/2 this bounds
+         * the streams multiplexed on the shared connection; further calls wait for a free slot.
+         * @param value The maximum number of concurrent exchanges, or 0 for no limit.
+         * @return The Builder instance.
+         */
+        public Builder setMaxConcurrentStreams(int value) {
+            if (value < 0) {
+                throw new IllegalArgumentException("Max concurrent streams must not be negative");
+            }
+            this.maxConcurrentStreams = value;
+            return this;
+        }
+
+        /**
+         * Enables compression of request bodies with the given coding, and lets the server compress non-streaming
+         * responses, which are then decompressed transparently. Only worth it when the backend is remote and
+         * requests are large, e.g. conversations carrying base64 images. Disabled by default.
+         * @param value The coding for request bodies, or null to disable compression.
+         * @return The Builder instance.
+         */
+        public Builder setCompression(Compression value) {
+            this.compression = value;
+            return this;
+        }
+
+        /**
+         * Sets the body size below which requests are sent uncompressed even if compression is enabled,
+         * since compressing small bodies costs more time than it saves. Defaults to 8192 bytes.
+         * @param value The threshold in bytes.
+         * @return The Builder instance.
+         */
+        public Builder setCompressionThreshold(int value) {
+            if (value < 0) {
+                throw new IllegalArgumentException("Compression threshold must not be negative");
+            }
+            this.compressionThreshold = value;
+            return this;
+        }
+
+        /**
+         * Sets whether the client shares its HttpClient, connections and scheduler with other clients that use the
+         * same protocol, connect timeout and thread kind. Enabled by default; disable it to isolate a client.
+         * @param value True to share the transport.
+         * @return The Builder instance.
+         */
+        public Builder setSharedTransport(boolean value) {
+            this.sharedTransport = value;
+            return this;
+        }
+
+        /**
+         * Runs response handling, including the StreamHandler callbacks of streams, on virtual threads instead of
+         * the HttpClient's default thread pool. Disabled by default.
+         * @param value True to use virtual threads.
+         * @return The Builder instance.
+         */
+        public Builder setVirtualThreads(boolean value) {
+            this.virtualThreads = value;
+            return this;
+        }
+
+        /**
+         * Opens this many connections when the client is created, by sending as many concurrent
+         * {@code GET /v1/models} probes. One is enough with HTTP/2, where requests share a connection.
+         * Disabled (0) by default.
+         * @param value The number of connections to warm up.
+         * @return The Builder instance.
+         */
+        public Builder setWarmUpConnections(int value) {
+            if (value < 0) {
+                throw new IllegalArgumentException("Warm-up connections must not be negative");
+            }
+            this.warmUpConnections = value;
+            return this;
+        }
+
+        /**
+         * Keeps connections open while the client is idle: whenever no request was started for this long, the
+         * client sends probes over as many connections as were warmed up (at least one). Choose an interval shorter
+         * than the server's keep-alive timeout. Disabled by default.
+         * @param value The ping interval, or {@link Duration#ZERO} to disable it.
+         * @return The Builder instance.
+         */
+        public Builder setKeepAliveInterval(Duration value) {
+            this.keepAliveInterval = checkTimeout(value, "Keep-alive interval");
+            return this;
+        }
+
+        /**
+         * Builds and returns a new DefaultHttpClient with the configured settings.
+         * @return A new DefaultHttpClient.
+         */
+        public DefaultHttpClient build() {
+            return new DefaultHttpClient(this);
+        }
+    }
 }
@@ -0,0 +1,134 @@
+package com.aiforjava.llm.client;
+
+import com.aiforjava.exception.LLMServiceException;
+import com.aiforjava.llm.streams.StreamHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * Base class for {@link LLM_Client} decorators. Every call is forwarded to the wrapped client; subclasses
+ * override only the methods whose behavior they change, so that policies such as retries can be layered
+ * around any transport. Closing a forwarding client closes the wrapped client if it is {@link AutoCloseable}.
+ * <p>
+ * The {@link RequestBody} and {@link Deadline} overloads are forwarded as well, so that a body reaches the
+ * transport as chunks instead of being decoded to a string by the interface defaults, and the transport caps its
+ * own timeouts to the deadline. A subclass that changes a call must therefore override all of its forms.
+ */
+public abstract class ForwardingLLMClient implements LLM_Client, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(ForwardingLLMClient.class);
+
+    private final LLM_Client delegate;
+
+    /**
+     * @param delegate The client all calls are forwarded to. Must not be null.
+     */
+    protected ForwardingLLMClient(LLM_Client delegate) {
+        this.delegate = Objects.requireNonNull(delegate, "Delegate client cannot be null");
+    }
+
+    /**
+     * @return The wrapped client.
+     */
+    protected LLM_Client delegate() {
+        return delegate;
+    }
+
+    @Override
+    public String sendRequest(String endpoint, String json) throws LLMServiceException {
+        return delegate.sendRequest(endpoint, json);
+    }
+
+    @Override
+    public void sendStreamRequest(String endpoint, String json, StreamHandler handler) throws LLMServiceException {
+        delegate.sendStreamRequest(endpoint, json, handler);
+    }
+
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, String json) {
+        return delegate.sendRequestAsync(endpoint, json);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, String json, StreamHandler handler) {
+        return delegate.sendStreamRequestAsync(endpoint, json, handler);
+    }
+
+    @Override
+    public String sendRequest(String endpoint, RequestBody body) throws LLMServiceException {
+        return delegate.sendRequest(endpoint, body);
+    }
+
+    @Override
+    public void sendStreamRequest(String endpoint, RequestBody body, StreamHandler handler) throws LLMServiceException {
+        delegate.sendStreamRequest(endpoint, body, handler);
+    }
+
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, RequestBody body) {
+        return delegate.sendRequestAsync(endpoint, body);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, RequestBody body, StreamHandler handler) {
+        return delegate.sendStreamRequestAsync(endpoint, body, handler);
+    }
+
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, RequestBody body, Deadline deadline) {
+        return delegate.sendRequestAsync(endpoint, body, deadline);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, RequestBody body, StreamHandler handler, Deadline deadline) {
+        return delegate.sendStreamRequestAsync(endpoint, body, handler, deadline);
+    }
+
+    /**
+     * Strips the CompletionException/ExecutionException wrappers a failed future adds around the real cause.
+     *
+     * @param error The failure reported by a future.
+     * @return The underlying exception.
+     */
+    protected static Throwable unwrap(Throwable error) {
+        while ((error instanceof CompletionException || error instanceof ExecutionException) && error.getCause() != null) {
+            error = error.getCause();
+        }
+        return error;
+    }
+
+    /**
+     * A blocking call to a wrapped client, so that a decorator applies its policy to the String and
+     * {@link RequestBody} forms of a request through one helper.
+     */
+    @FunctionalInterface
+    interface RequestCall<T> {
+        T send() throws LLMServiceException;
+    }
+
+    /**
+     * A blocking streaming call to a wrapped client, given the handler the decorator passes down.
+     */
+    @FunctionalInterface
+    interface StreamCall {
+        void send(StreamHandler handler) throws LLMServiceException;
+    }
+
+    /**
+     * Closes the wrapped client if it holds resources.
+     */
+    @Override
+    public void close() {
+        if (delegate instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) delegate).close();
+            } catch (Exception e) {
+                logger.warn("Failed to close wrapped LLM client: {}", e.getMessage(), e);
+            }
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.aiforjava.llm.client;
+
+import com.aiforjava.exception.LLMNetworkException;
+import com.aiforjava.exception.LLMServiceException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+/**
+ * An {@link LLM_Client} decorator that hedges non-streaming requests to cut tail latency.
+ * <p>
+ * If a request has not been answered after the hedge delay, a duplicate is sent through the hedge client;
+ * whichever answers first wins and the other is cancelled. The delay is the configured percentile (p95 by
+ * default) of recently observed latencies, so only the slowest few percent of requests are hedged; until
+ * enough samples are collected a fixed initial delay is used. To keep hedging from doubling the load when the
+ * backend is slow across the board, hedges are paid from a budget that grows by a fixed fraction of each request.
+ * <p>
+ * To send the duplicate to a different server, use a {@link LoadBalancingLLMClient} as the delegate (each call picks
+ * a backend afresh) or set a dedicated hedge client. Streaming requests are not hedged, since a duplicate stream
+ * cannot be merged once output has been shown; they are forwarded unchanged.
+ */
+public class HedgingLLMClient extends ForwardingLLMClient {
+    private static final Logger logger = LoggerFactory.getLogger(HedgingLLMClient.class);
+    private static final int MIN_SAMPLES = 20;
+    private static final double MAX_BUDGET = 10; // Hedges that may be saved up during quiet periods
+
+    private final LLM_Client hedgeClient;
+    private final LatencyTracker latencies;
+    private final long initialDelayNanos;
+    private final long minDelayNanos;
+    private final double maxHedgeRatio;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong hedges = new AtomicLong();
+    private double budget; // Guarded by "this"
+
+    private HedgingLLMClient(Builder builder) {
+        super(builder.delegate);
+        this.hedgeClient = builder.hedgeClient != null ? builder.hedgeClient : builder.delegate;
+        this.latencies = new LatencyTracker(builder.windowSize, builder.percentile);
+        this.initialDelayNanos = builder.initialDelay.toNanos();
+        this.minDelayNanos = builder.minDelay.toNanos();
+        this.maxHedgeRatio = builder.maxHedgeRatio;
+    }
+
+    @Override
+    public String sendRequest(String endpoint, String json) throws LLMServiceException {
+        return await(sendRequestAsync(endpoint, json));
+    }
+
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, String json) {
+        return hedge(client -> client.sendRequestAsync(endpoint, json));
+    }
+
+    @Override
+    public String sendRequest(String endpoint, RequestBody body) throws LLMServiceException {
+        return await(sendRequestAsync(endpoint, body));
+    }
+
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, RequestBody body) {
+        return hedge(client -> client.sendRequestAsync(endpoint, body));
+    }
+
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, RequestBody body, Deadline deadline) {
+        return hedge(client -> client.sendRequestAsync(endpoint, body, deadline));
+    }
+
+    /**
+     * Returns the number of non-streaming requests seen so far.
+     *
+     * @return The request count.
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * Returns the number of duplicate requests sent so far.
+     *
+     * @return The hedge count.
+     */
+    public long getHedgeCount() {
+        return hedges.get();
+    }
+
+    /**
+     * Returns the delay after which a request is currently hedged.
+     *
+     * @return The hedge delay.
+     */
+    public Duration getHedgeDelay() {
+        return Duration.ofNanos(hedgeDelayNanos());
+    }
+
+    /**
+     * Closes the delegate and, if it is a different client, the hedge client.
+     */
+    @Override
+    public void close() {
+        super.close();
+        if (hedgeClient != delegate() && hedgeClient instanceof AutoCloseable) {
+            try {
+                ((AutoCloseable) hedgeClient).close();
+            } catch (Exception e) {
+                logger.warn("Failed to close hedge client: {}", e.getMessage(), e);
+            }
+        }
+    }
+
+    private String await(CompletableFuture<String> future) throws LLMServiceException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new LLMNetworkException("Request was Interrupted", e);
+        } catch (CancellationException e) {
+            throw new LLMNetworkException("Request was cancelled", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof LLMServiceException) {
+                throw (LLMServiceException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new LLMServiceException("Unexpected error during hedged request", cause);
+        }
+    }
+
+    /**
+     * Sends a request through the delegate and, once the hedge delay has passed without an answer, through the
+     * hedge client as well.
+     *
+     * @param send Sends the request through the given client.
+     */
+    private CompletableFuture<String> hedge(Function<LLM_Client, CompletableFuture<String>> send) {
+        requests.incrementAndGet();
+        synchronized (this) {
+            budget = Math.min(MAX_BUDGET, budget + maxHedgeRatio);
+        }
+        CompletableFuture<String> result = new CompletableFuture<>();
+        AtomicInteger pending = new AtomicInteger(1);
+        CompletableFuture<String> primary = attempt(delegate(), send, result, pending);
+        AtomicReference<CompletableFuture<String>> hedge = new AtomicReference<>();
+        result.whenComplete((value, failure) -> {
+            // The first answer wins; the other attempt is no longer needed
+            primary.cancel(true);
+            CompletableFuture<String> duplicate = hedge.get();
+            if (duplicate != null) {
+                duplicate.cancel(true);
+            }
+        });
+
+        CompletableFuture.runAsync(() -> {
+            if (result.isDone() || !withdrawHedge()) {
+                return;
+            }
+            hedges.incrementAndGet();
+            pending.incrementAndGet();
+            hedge.set(attempt(hedgeClient, send, result, pending));
+            if (result.isDone()) {
+                hedge.get().cancel(true);
+            }
+        }, CompletableFuture.delayedExecutor(hedgeDelayNanos(), TimeUnit.NANOSECONDS));
+        return result;
+    }
+
+    private CompletableFuture<String> attempt(LLM_Client client, Function<LLM_Client, CompletableFuture<String>> send,
+                                              CompletableFuture<String> result, AtomicInteger pending) {
+        long start = System.nanoTime();
+        CompletableFuture<String> future;
+        try {
+            future = send.apply(client);
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((value, failure) -> {
+            if (failure == null) {
+                if (result.complete(value)) {
+                    latencies.record(System.nanoTime() - start);
+                }
+            } else if (pending.decrementAndGet() == 0) {
+                // Only fail once no other attempt can still answer
+                result.completeExceptionally(unwrap(failure));
+            }
+        });
+        return future;
+    }
+
+    private long hedgeDelayNanos() {
+        long observed = latencies.sampleCount() >= MIN_SAMPLES ? latencies.percentileNanos() : initialDelayNanos;
+        return Math.max(minDelayNanos, observed);
+    }
+
+    private synchronized boolean withdrawHedge() {
+        if (budget < 1) {
+            return false;
+        }
+        budget -= 1;
+        return true;
+    }
+
+    /**
+     * Builder class for constructing HedgingLLMClient instances.
+     */
+    public static class Builder {
+        private final LLM_Client delegate;
+        private LLM_Client hedgeClient;
+        private double percentile = 95;
+        private int windowSize = 1000;
+        private Duration initialDelay = Duration.ofSeconds(5);
+        private Duration minDelay = Duration.ofMillis(50);
+        private double maxHedgeRatio = 0.1;
+
+        /**
+         * Creates a builder wrapping the given client.
+         * @param delegate The client that receives the first attempt. Must not be null.
+         */
+        public Builder(LLM_Client delegate) {
+            this.delegate = Objects.requireNonNull(delegate, "Delegate client cannot be null");
+        }
+
+        /**
+         * Sets the client that receives the duplicate requests; by default the delegate itself.
+         * @param value The hedge client.
+         * @return The Builder instance.
+         */
+        public Builder setHedgeClient(LLM_Client value) {
+            this.hedgeClient = value;
+            return this;
+        }
+
+        /**
+         * Sets the latency percentile after which a request is hedged.
+         * @param value The percentile, greater than 0 and less than 100 (95 by default).
+         * @return The Builder instance.
+         */
+        public Builder setPercentile(double value) {
+            if (value <= 0 || value >= 100) {
+                throw new IllegalArgumentException("Percentile must be greater than 0 and less than 100.");
+            }
+            this.percentile = value;
+            return this;
+        }
+
+        /**
+         * Sets how many recent latencies the percentile is computed over.
+         * @param value The window size, at least 20.
+         * @return The Builder instance.
+         */
+        public Builder setWindowSize(int value) {
+            if (value < MIN_SAMPLES) {
+                throw new IllegalArgumentException("Window size must be at least " + MIN_SAMPLES + ".");
+            }
+            this.windowSize = value;
+            return this;
+        }
+
+        /**
+         * Sets the hedge delay used until enough latencies have been observed.
+         * @param value The initial delay.
+         * @return The Builder instance.
+         */
+        public Builder setInitialDelay(Duration value) {
+            this.initialDelay = Objects.requireNonNull(value, "Initial delay cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets the shortest hedge delay, so that very fast backends are not hedged on noise.
+         * @param value The minimum delay.
+         * @return The Builder instance.
+         */
+        public Builder setMinDelay(Duration value) {
+            this.minDelay = Objects.requireNonNull(value, "Min delay cannot be null");
+            return this;
+        }
+
+        /**
+         * Caps hedges as a fraction of traffic: each request adds this much to the hedge budget and each hedge costs 1.
+         * @param value The fraction, between 0 and 1 (0.1 by default).
+         * @return The Builder instance.
+         */
+        public Builder setMaxHedgeRatio(double value) {
+            if (value < 0 || value > 1) {
+                throw new IllegalArgumentException("Max hedge ratio must be between 0 and 1.");
+            }
+            this.maxHedgeRatio = value;
+            return this;
+        }
+
+        /**
+         * Builds and returns a new HedgingLLMClient instance.
+         * @return A new HedgingLLMClient instance.
+         */
+        public HedgingLLMClient build() {
+            return new HedgingLLMClient(this);
+        }
+    }
+}
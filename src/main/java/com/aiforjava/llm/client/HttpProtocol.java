@@ -0,0 +1,24 @@
+package com.aiforjava.llm.client;
+
+/**
+ * Selects the HTTP protocol version an LLM client uses to talk to its backend.
+ */
+public enum HttpProtocol {
+    /**
+     * Plain HTTP/1.1. Every concurrent request or stream needs its own TCP connection. This is the default.
+     */
+    HTTP_1_1,
+    /**
+     * HTTP/2 negotiated with the server: via ALPN for https URLs and via an "Upgrade: h2c" request for
+     * plaintext http URLs. If the server refuses, the client falls back to HTTP/1.1 for that origin.
+     */
+    HTTP_2,
+    /**
+     * HTTP/2 over plaintext for local servers known to speak h2c. Concurrent requests are multiplexed over a
+     * single connection from the very first call. {@link PooledAsyncHttpClient} uses true prior knowledge;
+     * {@link DefaultHttpClient} (java.net.http has no prior-knowledge mode) establishes the h2c connection
+     * once with a bodyless upgrade request before any chat request is sent, and falls back to HTTP/1.1 if
+     * the server refuses the upgrade.
+     */
+    H2C_PRIOR_KNOWLEDGE
+}
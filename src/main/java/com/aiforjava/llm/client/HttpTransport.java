@@ -0,0 +1,134 @@
+package com.aiforjava.llm.client;
+
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * The runtime behind {@link DefaultHttpClient}: a java.net.http HttpClient, with its connection pool and selector
+ * thread, plus the scheduler used to pace streams. Creating one per client multiplies threads and connections, so
+ * clients with the same transport configuration (protocol, connect timeout, thread kind) share a single instance.
+ * The instance is reference counted and shut down when the last client using it is closed.
+ */
+final class HttpTransport {
+    private static final Map<Key, HttpTransport> SHARED = new HashMap<>(); // Guarded by the class
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    private final Key key;
+    private final boolean shared;
+    private final HttpClient httpClient;
+    private final ScheduledExecutorService scheduler;
+    private final ExecutorService executor; // Null when the HttpClient uses its default executor
+    private int references; // Guarded by the class
+
+    private HttpTransport(Key key, boolean shared) {
+        this.key = key;
+        this.shared = shared;
+        this.executor = key.virtualThreads ? Executors.newVirtualThreadPerTaskExecutor() : null;
+        this.scheduler = Executors.newSingleThreadScheduledExecutor(daemonThreads("llm-stream-scheduler-"));
+        HttpClient.Builder builder = HttpClient.newBuilder().version(key.version);
+        if (!key.connectTimeout.isZero()) {
+            builder.connectTimeout(key.connectTimeout);
+        }
+        if (executor != null) {
+            builder.executor(executor);
+        }
+        this.httpClient = builder.build();
+    }
+
+    /**
+     * Returns the shared transport for the given configuration, creating it if no client uses one yet.
+     * Every call must be paired with a {@link #release()}.
+     *
+     * @param version The HTTP version requests are sent with.
+     * @param connectTimeout The connect timeout, or zero for none.
+     * @param virtualThreads Whether response handling runs on virtual threads instead of the default pool.
+     * @return The shared transport.
+     */
+    static HttpTransport acquire(HttpClient.Version version, Duration connectTimeout, boolean virtualThreads) {
+        Key key = new Key(version, connectTimeout, virtualThreads);
+        synchronized (HttpTransport.class) {
+            HttpTransport transport = SHARED.computeIfAbsent(key, k -> new HttpTransport(k, true));
+            transport.references++;
+            return transport;
+        }
+    }
+
+    /**
+     * Creates a transport used by a single client, e.g. one that must not share connections with others.
+     */
+    static HttpTransport createPrivate(HttpClient.Version version, Duration connectTimeout, boolean virtualThreads) {
+        HttpTransport transport = new HttpTransport(new Key(version, connectTimeout, virtualThreads), false);
+        synchronized (HttpTransport.class) {
+            transport.references = 1;
+        }
+        return transport;
+    }
+
+    HttpClient httpClient() {
+        return httpClient;
+    }
+
+    ScheduledExecutorService scheduler() {
+        return scheduler;
+    }
+
+    /**
+     * Drops one reference. The last one shuts the transport down; exchanges still in flight are allowed to finish.
+     */
+    void release() {
+        synchronized (HttpTransport.class) {
+            if (references == 0 || --references > 0) {
+                return;
+            }
+            if (shared) {
+                SHARED.remove(key);
+            }
+        }
+        scheduler.shutdown();
+        httpClient.shutdown();
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    private static ThreadFactory daemonThreads(String prefix) {
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    private static final class Key {
+        final HttpClient.Version version;
+        final Duration connectTimeout;
+        final boolean virtualThreads;
+
+        Key(HttpClient.Version version, Duration connectTimeout, boolean virtualThreads) {
+            this.version = version;
+            this.connectTimeout = connectTimeout;
+            this.virtualThreads = virtualThreads;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (!(o instanceof Key)) return false;
+            Key other = (Key) o;
+            return version == other.version && virtualThreads == other.virtualThreads && connectTimeout.equals(other.connectTimeout);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(version, connectTimeout, virtualThreads);
+        }
+    }
+}
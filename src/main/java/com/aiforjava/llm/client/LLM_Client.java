@@ -2,6 +2,8 @@ package com.aiforjava.llm.client;
 
 import com.aiforjava.llm.streams.StreamHandler;
 
+import java.util.concurrent.CompletableFuture;
+
 /**
  * The LLM_Client interface defines the contract for interacting with Large Language Models (LLMs).
  * Implementations of this interface are responsible for sending requests to the LLM API
@@ -30,6 +32,121 @@ public interface LLM_Client {
      * @throws com.aiforjava.exception.LLMServiceException If any error occurs during the request or response processing.
      */
     void sendStreamRequest(String endpoint, String json, StreamHandler handler) throws com.aiforjava.exception.LLMServiceException;
-}
 
+    /**
+     * Sends a non-streaming request to the LLM endpoint without blocking the calling thread.
+     * The default implementation runs {@link #sendRequest(String, String)} on a virtual thread, so it never
+     * parks a platform thread; implementations with a native asynchronous transport should override it.
+     *
+     * @param endpoint The specific API endpoint to send the request to (e.g., "v1/chat/completions").
+     * @param json The JSON request payload as a string.
+     * @return A CompletableFuture completed with the raw JSON response body, or exceptionally with a
+     *         {@link com.aiforjava.exception.LLMServiceException} (or a runtime exception) if the request fails.
+     *         Cancelling the future aborts the request where the implementation supports it.
+     */
+    default CompletableFuture<String> sendRequestAsync(String endpoint, String json) {
+        return BlockingCallAdapter.supplyAsync(() -> sendRequest(endpoint, json));
+    }
+
+    /**
+     * Sends a streaming request to the LLM endpoint without blocking the calling thread.
+     * The default implementation runs {@link #sendStreamRequest(String, String, StreamHandler)} on a virtual thread;
+     * implementations with a native asynchronous transport should override it.
+     *
+     * @param endpoint The specific API endpoint to send the request to (e.g., "v1/chat/completions").
+     * @param json The JSON request payload as a string.
+     * @param handler A StreamHandler to process the incoming stream of content.
+     * @return A CompletableFuture that completes when the stream has ended, or exceptionally if it fails.
+     *         Cancelling the future aborts the stream where the implementation supports it.
+     */
+    default CompletableFuture<Void> sendStreamRequestAsync(String endpoint, String json, StreamHandler handler) {
+        return BlockingCallAdapter.supplyAsync(() -> {
+            sendStreamRequest(endpoint, json, handler);
+            return null;
+        });
+    }
+
+    /**
+     * Sends a non-streaming request whose payload is held in a {@link RequestBody}.
+     * The default implementation decodes the body to a string and calls {@link #sendRequest(String, String)};
+     * HTTP clients override it to send the body's chunks without that copy. The caller keeps ownership of the body.
+     *
+     * @param endpoint The specific API endpoint to send the request to (e.g., "v1/chat/completions").
+     * @param body The JSON request payload.
+     * @return The raw JSON response body as a string.
+     * @throws com.aiforjava.exception.LLMServiceException If any error occurs during the request or response processing.
+     */
+    default String sendRequest(String endpoint, RequestBody body) throws com.aiforjava.exception.LLMServiceException {
+        return sendRequest(endpoint, body.asString());
+    }
+
+    /**
+     * Sends a streaming request whose payload is held in a {@link RequestBody}.
+     * The default implementation decodes the body to a string and calls
+     * {@link #sendStreamRequest(String, String, StreamHandler)}; HTTP clients override it.
+     *
+     * @param endpoint The specific API endpoint to send the request to (e.g., "v1/chat/completions").
+     * @param body The JSON request payload.
+     * @param handler A StreamHandler to process the incoming stream of content.
+     * @throws com.aiforjava.exception.LLMServiceException If any error occurs during the request or response processing.
+     */
+    default void sendStreamRequest(String endpoint, RequestBody body, StreamHandler handler) throws com.aiforjava.exception.LLMServiceException {
+        sendStreamRequest(endpoint, body.asString(), handler);
+    }
+
+    /**
+     * Asynchronous variant of {@link #sendRequest(String, RequestBody)}. The body must stay open until the
+     * returned future has completed.
+     *
+     * @param endpoint The specific API endpoint to send the request to (e.g., "v1/chat/completions").
+     * @param body The JSON request payload.
+     * @return A CompletableFuture completed with the raw JSON response body.
+     */
+    default CompletableFuture<String> sendRequestAsync(String endpoint, RequestBody body) {
+        return sendRequestAsync(endpoint, body.asString());
+    }
 
+    /**
+     * Asynchronous variant of {@link #sendStreamRequest(String, RequestBody, StreamHandler)}. The body must stay
+     * open until the returned future has completed.
+     *
+     * @param endpoint The specific API endpoint to send the request to (e.g., "v1/chat/completions").
+     * @param body The JSON request payload.
+     * @param handler A StreamHandler to process the incoming stream of content.
+     * @return A CompletableFuture that completes when the stream has ended, or exceptionally if it fails.
+     */
+    default CompletableFuture<Void> sendStreamRequestAsync(String endpoint, RequestBody body, StreamHandler handler) {
+        return sendStreamRequestAsync(endpoint, body.asString(), handler);
+    }
+
+    /**
+     * Variant of {@link #sendRequestAsync(String, RequestBody)} bound by a deadline shared with the other calls of
+     * the same operation. The request is not sent if the deadline has already passed, and is aborted if it is still
+     * running when it passes. The default implementation enforces the deadline around the call; HTTP clients
+     * override it to also cap their own timeouts to the remaining budget.
+     *
+     * @param endpoint The specific API endpoint to send the request to (e.g., "v1/chat/completions").
+     * @param body The JSON request payload.
+     * @param deadline The deadline of the operation this call belongs to.
+     * @return A CompletableFuture completed with the raw JSON response body, or exceptionally with
+     *         {@link com.aiforjava.exception.Exception_Timeout} once the deadline has passed.
+     */
+    default CompletableFuture<String> sendRequestAsync(String endpoint, RequestBody body, Deadline deadline) {
+        return deadline.bound(() -> sendRequestAsync(endpoint, body));
+    }
+
+    /**
+     * Variant of {@link #sendStreamRequestAsync(String, RequestBody, StreamHandler)} bound by a deadline, see
+     * {@link #sendRequestAsync(String, RequestBody, Deadline)}. The deadline covers the whole stream.
+     *
+     * @param endpoint The specific API endpoint to send the request to (e.g., "v1/chat/completions").
+     * @param body The JSON request payload.
+     * @param handler A StreamHandler to process the incoming stream of content.
+     * @param deadline The deadline of the operation this call belongs to.
+     * @return A CompletableFuture that completes when the stream has ended, or exceptionally if it fails or
+     *         the deadline passes.
+     */
+    default CompletableFuture<Void> sendStreamRequestAsync(String endpoint, RequestBody body, StreamHandler handler, Deadline deadline) {
+        return deadline.bound(() -> sendStreamRequestAsync(endpoint, body, handler));
+    }
+}
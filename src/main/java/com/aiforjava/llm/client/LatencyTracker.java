@@ -0,0 +1,57 @@
+package com.aiforjava.llm.client;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the most recent latency samples in a ring buffer and answers percentile queries over them.
+ * Percentiles are recomputed by sorting a copy of the window, but only every {@code recomputeInterval}
+ * new samples, so querying on every call stays cheap.
+ */
+final class LatencyTracker {
+    private final long[] samples;
+    private final int recomputeInterval;
+    private final double percentile;
+    private int count;
+    private int next;
+    private int sinceRecompute;
+    private long cached = -1;
+
+    /**
+     * @param windowSize The number of most recent samples considered.
+     * @param percentile The percentile to report, between 0 and 100.
+     */
+    LatencyTracker(int windowSize, double percentile) {
+        this.samples = new long[windowSize];
+        this.percentile = percentile;
+        this.recomputeInterval = Math.max(1, windowSize / 20);
+    }
+
+    synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        if (count < samples.length) {
+            count++;
+        }
+        if (++sinceRecompute >= recomputeInterval || cached < 0) {
+            sinceRecompute = 0;
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(percentile / 100d * count) - 1;
+            cached = sorted[Math.max(0, Math.min(count - 1, index))];
+        }
+    }
+
+    /**
+     * @return The number of samples in the window.
+     */
+    synchronized int sampleCount() {
+        return count;
+    }
+
+    /**
+     * @return The configured percentile of the window in nanoseconds, or -1 if no sample was recorded.
+     */
+    synchronized long percentileNanos() {
+        return cached;
+    }
+}
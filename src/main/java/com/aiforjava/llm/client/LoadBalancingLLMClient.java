@@ -0,0 +1,540 @@
+package com.aiforjava.llm.client;
+
+import com.aiforjava.exception.LLMServiceException;
+import com.aiforjava.llm.streams.StreamHandler;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * An {@link LLM_Client} that spreads calls over several model servers (e.g. multiple LM Studio or llama.cpp
+ * instances serving the same model), so that aggregate throughput grows with the number of servers.
+ * <p>
+ * Each backend is an ordinary LLM_Client plus the base URL used to probe it. A backend is picked per call
+ * according to the {@link LoadBalancingPolicy}. Backends are health-checked actively, by periodically
+ * sending a GET to "/v1/models", and passively, by watching the outcome of real calls. A backend is ejected
+ * after a number of consecutive failures and readmitted after a number of consecutive successful probes.
+ * If every backend is ejected, calls are spread over all of them rather than failing outright, and a backend whose
+ * call succeeds there is readmitted at once. When active health checks are disabled, an ejected backend is tried
+ * again after the ejection duration, on probation: a single further failure ejects it again.
+ * <p>
+ * A failed call is not repeated on another backend; wrap this client in a {@link RetryingLLMClient} for that,
+ * since each retry picks a backend afresh.
+ */
+public class LoadBalancingLLMClient implements LLM_Client, AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(LoadBalancingLLMClient.class);
+
+    private final List<Backend> backends;
+    private final LoadBalancingPolicy policy;
+    private final int unhealthyThreshold;
+    private final int healthyThreshold;
+    private final String healthCheckPath;
+    private final Duration healthCheckTimeout;
+    private final String apiKey;
+    private final long ejectionNanos;
+    private final HttpClient probeClient; // Null when active health checks are disabled
+    private final ScheduledExecutorService healthChecker; // Null when active health checks are disabled
+    private final AtomicInteger roundRobin = new AtomicInteger();
+    private volatile Backend[] healthy;
+
+    private LoadBalancingLLMClient(Builder builder) {
+        List<Backend> added = new ArrayList<>();
+        for (Supplier<Backend> backend : builder.backends) {
+            added.add(backend.get());
+        }
+        this.backends = Collections.unmodifiableList(added);
+        this.policy = builder.policy;
+        this.unhealthyThreshold = builder.unhealthyThreshold;
+        this.healthyThreshold = builder.healthyThreshold;
+        this.healthCheckPath = builder.healthCheckPath;
+        this.healthCheckTimeout = builder.healthCheckTimeout;
+        this.apiKey = builder.apiKey;
+        this.ejectionNanos = builder.ejectionDuration.toNanos();
+        this.healthy = backends.toArray(new Backend[0]);
+        if (builder.healthCheckInterval.isZero()) {
+            this.probeClient = null;
+            this.healthChecker = null;
+        } else {
+            this.probeClient = HttpClient.newBuilder()
+                    .connectTimeout(healthCheckTimeout)
+                    .version(HttpClient.Version.HTTP_1_1)
+                    .build();
+            this.healthChecker = Executors.newSingleThreadScheduledExecutor(r -> {
+                Thread thread = new Thread(r, "ai4j-health-check");
+                thread.setDaemon(true);
+                return thread;
+            });
+            long interval = builder.healthCheckInterval.toMillis();
+            healthChecker.scheduleWithFixedDelay(this::checkHealth, 0, interval, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    @Override
+    public String sendRequest(String endpoint, String json) throws LLMServiceException {
+        Backend backend = choose();
+        return track(backend, () -> backend.client.sendRequest(endpoint, json));
+    }
+
+    @Override
+    public void sendStreamRequest(String endpoint, String json, StreamHandler handler) throws LLMServiceException {
+        Backend backend = choose();
+        track(backend, () -> {
+            backend.client.sendStreamRequest(endpoint, json, handler);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, String json) {
+        Backend backend = choose();
+        return trackAsync(backend, () -> backend.client.sendRequestAsync(endpoint, json));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, String json, StreamHandler handler) {
+        Backend backend = choose();
+        return trackAsync(backend, () -> backend.client.sendStreamRequestAsync(endpoint, json, handler));
+    }
+
+    @Override
+    public String sendRequest(String endpoint, RequestBody body) throws LLMServiceException {
+        Backend backend = choose();
+        return track(backend, () -> backend.client.sendRequest(endpoint, body));
+    }
+
+    @Override
+    public void sendStreamRequest(String endpoint, RequestBody body, StreamHandler handler) throws LLMServiceException {
+        Backend backend = choose();
+        track(backend, () -> {
+            backend.client.sendStreamRequest(endpoint, body, handler);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, RequestBody body) {
+        Backend backend = choose();
+        return trackAsync(backend, () -> backend.client.sendRequestAsync(endpoint, body));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, RequestBody body, StreamHandler handler) {
+        Backend backend = choose();
+        return trackAsync(backend, () -> backend.client.sendStreamRequestAsync(endpoint, body, handler));
+    }
+
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, RequestBody body, Deadline deadline) {
+        Backend backend = choose();
+        return trackAsync(backend, () -> backend.client.sendRequestAsync(endpoint, body, deadline));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, RequestBody body, StreamHandler handler, Deadline deadline) {
+        Backend backend = choose();
+        return trackAsync(backend, () -> backend.client.sendStreamRequestAsync(endpoint, body, handler, deadline));
+    }
+
+    /**
+     * Returns the base URLs of the backends currently receiving traffic.
+     *
+     * @return The healthy backends' base URLs.
+     */
+    public List<String> getHealthyBackends() {
+        List<String> urls = new ArrayList<>();
+        for (Backend backend : healthy) {
+            urls.add(backend.baseUrl);
+        }
+        return urls;
+    }
+
+    /**
+     * Stops the health checks and closes every backend client that is {@link AutoCloseable}.
+     */
+    @Override
+    public void close() {
+        if (healthChecker != null) {
+            healthChecker.shutdownNow();
+            probeClient.shutdownNow(); // Probes in flight are abandoned rather than awaited
+            probeClient.close();
+        }
+        for (Backend backend : backends) {
+            if (backend.client instanceof AutoCloseable) {
+                try {
+                    ((AutoCloseable) backend.client).close();
+                } catch (Exception e) {
+                    logger.warn("Failed to close LLM client for {}: {}", backend.baseUrl, e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    private <T> T track(Backend backend, ForwardingLLMClient.RequestCall<T> call) throws LLMServiceException {
+        backend.outstanding.incrementAndGet();
+        try {
+            T result = call.send();
+            onCallSucceeded(backend);
+            return result;
+        } catch (LLMServiceException | RuntimeException e) {
+            onCallFailed(backend, e);
+            throw e;
+        } finally {
+            backend.outstanding.decrementAndGet();
+        }
+    }
+
+    private <T> CompletableFuture<T> trackAsync(Backend backend, Supplier<CompletableFuture<T>> call) {
+        backend.outstanding.incrementAndGet();
+        CompletableFuture<T> future;
+        try {
+            future = call.get();
+        } catch (RuntimeException e) {
+            future = CompletableFuture.failedFuture(e);
+        }
+        future.whenComplete((value, failure) -> {
+            backend.outstanding.decrementAndGet();
+            if (failure == null) {
+                onCallSucceeded(backend);
+            } else {
+                onCallFailed(backend, ForwardingLLMClient.unwrap(failure));
+            }
+        });
+        return future;
+    }
+
+    private Backend choose() {
+        if (healthChecker == null && healthy.length < backends.size()) {
+            readmitOnProbation();
+        }
+        Backend[] candidates = healthy;
+        if (candidates.length == 0) {
+            candidates = backends.toArray(new Backend[0]); // Everything is ejected: better to try than to fail
+        }
+        if (candidates.length == 1) {
+            return candidates[0];
+        }
+        switch (policy) {
+            case ROUND_ROBIN:
+                return candidates[Math.floorMod(roundRobin.getAndIncrement(), candidates.length)];
+            case LEAST_OUTSTANDING: {
+                // Start the scan at a rotating offset so ties do not always go to the first backend
+                int start = Math.floorMod(roundRobin.getAndIncrement(), candidates.length);
+                Backend best = candidates[start];
+                for (int i = 1; i < candidates.length; i++) {
+                    Backend candidate = candidates[(start + i) % candidates.length];
+                    if (candidate.outstanding.get() < best.outstanding.get()) {
+                        best = candidate;
+                    }
+                }
+                return best;
+            }
+            default: {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                int first = random.nextInt(candidates.length);
+                int second = random.nextInt(candidates.length - 1);
+                if (second >= first) {
+                    second++;
+                }
+                Backend a = candidates[first];
+                Backend b = candidates[second];
+                return a.outstanding.get() <= b.outstanding.get() ? a : b;
+            }
+        }
+    }
+
+    private void onCallSucceeded(Backend backend) {
+        backend.consecutiveFailures.set(0);
+        if (!backend.healthy) {
+            readmit(backend); // Only reached when every backend is ejected; a real call is the best health check
+        }
+    }
+
+    private void onCallFailed(Backend backend, Throwable failure) {
+        if (CircuitBreaker.countsAsFailure(failure) && backend.consecutiveFailures.incrementAndGet() >= unhealthyThreshold) {
+            eject(backend, failure.getMessage());
+        }
+    }
+
+    private void checkHealth() {
+        for (Backend backend : backends) {
+            // A probe that cannot even be sent counts as failed, and must not end the checks of the other backends
+            try {
+                HttpRequest.Builder probe = HttpRequest.newBuilder()
+                        .uri(URI.create(backend.baseUrl).resolve(healthCheckPath))
+                        .timeout(healthCheckTimeout)
+                        .GET();
+                if (apiKey != null && !apiKey.isEmpty())
+                    probe.header("Authorization", "Bearer " + apiKey);
+                probeClient.sendAsync(probe.build(), HttpResponse.BodyHandlers.discarding())
+                        .whenComplete((response, failure) -> {
+                            if (failure == null && response.statusCode() < 400) {
+                                onProbeSucceeded(backend);
+                            } else {
+                                onProbeFailed(backend, failure != null ? failure.toString() : "HTTP " + response.statusCode());
+                            }
+                        });
+            } catch (RuntimeException e) {
+                onProbeFailed(backend, e.toString());
+            }
+        }
+    }
+
+    private void onProbeSucceeded(Backend backend) {
+        backend.consecutiveFailures.set(0);
+        if (!backend.healthy && backend.consecutiveProbeSuccesses.incrementAndGet() >= healthyThreshold) {
+            readmit(backend);
+        }
+    }
+
+    private void onProbeFailed(Backend backend, String reason) {
+        backend.consecutiveProbeSuccesses.set(0);
+        if (backend.consecutiveFailures.incrementAndGet() >= unhealthyThreshold) {
+            eject(backend, reason);
+        }
+    }
+
+    private synchronized void eject(Backend backend, String reason) {
+        if (!backend.healthy) {
+            return;
+        }
+        backend.healthy = false;
+        backend.ejectedAtNanos = System.nanoTime();
+        backend.consecutiveProbeSuccesses.set(0);
+        logger.warn("Ejecting LLM backend {} after {} consecutive failures: {}", backend.baseUrl, unhealthyThreshold, reason);
+        refreshHealthy();
+    }
+
+    private synchronized void readmit(Backend backend) {
+        if (backend.healthy) {
+            return;
+        }
+        backend.healthy = true;
+        backend.consecutiveFailures.set(0);
+        logger.info("Readmitting LLM backend {}", backend.baseUrl);
+        refreshHealthy();
+    }
+
+    /**
+     * Without active health checks nothing else would readmit a backend, so one that has been ejected for the
+     * ejection duration is given traffic again, one failure away from being ejected anew.
+     */
+    private synchronized void readmitOnProbation() {
+        long now = System.nanoTime();
+        boolean changed = false;
+        for (Backend backend : backends) {
+            if (!backend.healthy && now - backend.ejectedAtNanos >= ejectionNanos) {
+                backend.healthy = true;
+                backend.consecutiveFailures.set(unhealthyThreshold - 1);
+                logger.info("Readmitting LLM backend {} on probation", backend.baseUrl);
+                changed = true;
+            }
+        }
+        if (changed) {
+            refreshHealthy();
+        }
+    }
+
+    private void refreshHealthy() {
+        List<Backend> current = new ArrayList<>();
+        for (Backend backend : backends) {
+            if (backend.healthy) {
+                current.add(backend);
+            }
+        }
+        healthy = current.toArray(new Backend[0]);
+    }
+
+    private static final class Backend {
+        final String baseUrl;
+        final LLM_Client client;
+        final AtomicInteger outstanding = new AtomicInteger();
+        final AtomicInteger consecutiveFailures = new AtomicInteger();
+        final AtomicInteger consecutiveProbeSuccesses = new AtomicInteger();
+        volatile boolean healthy = true;
+        volatile long ejectedAtNanos;
+
+        Backend(String baseUrl, LLM_Client client) {
+            this.baseUrl = baseUrl;
+            this.client = client;
+        }
+    }
+
+    /**
+     * Builder class for constructing LoadBalancingLLMClient instances.
+     */
+    public static class Builder {
+        private final List<Supplier<Backend>> backends = new ArrayList<>(); // Created in build(), with its API key
+        private LoadBalancingPolicy policy = LoadBalancingPolicy.POWER_OF_TWO_CHOICES;
+        private int unhealthyThreshold = 3;
+        private int healthyThreshold = 2;
+        private Duration healthCheckInterval = Duration.ofSeconds(10);
+        private Duration healthCheckTimeout = Duration.ofSeconds(5);
+        private String healthCheckPath = "/v1/models";
+        private Duration ejectionDuration = Duration.ofSeconds(30);
+        private String apiKey;
+
+        /**
+         * Adds a backend.
+         * @param baseUrl The base URL of the model server, used for health checks (e.g., "http://localhost:1234"). Must be an absolute http or https URL.
+         * @param client The client that sends calls to this server. Must not be null.
+         * @return The Builder instance.
+         */
+        public Builder addBackend(String baseUrl, LLM_Client client) {
+            checkBaseUrl(baseUrl);
+            Objects.requireNonNull(client, "Client cannot be null");
+            backends.add(() -> new Backend(baseUrl, client));
+            return this;
+        }
+
+        /**
+         * Adds a backend served by a {@link DefaultHttpClient} with the given timeout. The client is created by
+         * {@link #build()}, with the API key set by then.
+         * @param baseUrl The base URL of the model server (e.g., "http://localhost:1234"). Must be an absolute http or https URL.
+         * @param timeout The request timeout.
+         * @return The Builder instance.
+         */
+        public Builder addBackend(String baseUrl, Duration timeout) {
+            checkBaseUrl(baseUrl);
+            Objects.requireNonNull(timeout, "Timeout cannot be null");
+            backends.add(() -> new Backend(baseUrl, new DefaultHttpClient.Builder(baseUrl).setTimeout(timeout).setApiKey(apiKey).build()));
+            return this;
+        }
+
+        /**
+         * Sets the policy used to pick a backend per call.
+         * @param value The load balancing policy.
+         * @return The Builder instance.
+         */
+        public Builder setPolicy(LoadBalancingPolicy value) {
+            this.policy = Objects.requireNonNull(value, "Policy cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets how many consecutive failed calls or probes eject a backend.
+         * @param value The threshold, at least 1.
+         * @return The Builder instance.
+         */
+        public Builder setUnhealthyThreshold(int value) {
+            if (value < 1) {
+                throw new IllegalArgumentException("Unhealthy threshold must be at least 1.");
+            }
+            this.unhealthyThreshold = value;
+            return this;
+        }
+
+        /**
+         * Sets how many consecutive successful probes readmit an ejected backend.
+         * @param value The threshold, at least 1.
+         * @return The Builder instance.
+         */
+        public Builder setHealthyThreshold(int value) {
+            if (value < 1) {
+                throw new IllegalArgumentException("Healthy threshold must be at least 1.");
+            }
+            this.healthyThreshold = value;
+            return this;
+        }
+
+        /**
+         * Sets how often backends are probed.
+         * @param value The probe interval, or {@link Duration#ZERO} to disable active health checks; ejected
+         *              backends are then readmitted after {@link #setEjectionDuration(Duration)}.
+         * @return The Builder instance.
+         */
+        public Builder setHealthCheckInterval(Duration value) {
+            Objects.requireNonNull(value, "Health check interval cannot be null");
+            if (value.isNegative()) {
+                throw new IllegalArgumentException("Health check interval cannot be negative.");
+            }
+            this.healthCheckInterval = value;
+            return this;
+        }
+
+        /**
+         * Sets how long a backend stays ejected before it is tried again when active health checks are disabled.
+         * With health checks enabled, probes readmit backends instead.
+         * @param value The ejection duration, 30 seconds by default.
+         * @return The Builder instance.
+         */
+        public Builder setEjectionDuration(Duration value) {
+            Objects.requireNonNull(value, "Ejection duration cannot be null");
+            if (value.isNegative()) {
+                throw new IllegalArgumentException("Ejection duration cannot be negative.");
+            }
+            this.ejectionDuration = value;
+            return this;
+        }
+
+        /**
+         * Sets the connect and response timeout of a single probe.
+         * @param value The probe timeout.
+         * @return The Builder instance.
+         */
+        public Builder setHealthCheckTimeout(Duration value) {
+            this.healthCheckTimeout = Objects.requireNonNull(value, "Health check timeout cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets the path probed on each backend.
+         * @param value The path, "/v1/models" by default.
+         * @return The Builder instance.
+         */
+        public Builder setHealthCheckPath(String value) {
+            this.healthCheckPath = Objects.requireNonNull(value, "Health check path cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets the API key sent with health probes and used by backends added with {@link #addBackend(String, Duration)}.
+         * @param value The API key.
+         * @return The Builder instance.
+         */
+        public Builder setApiKey(String value) {
+            this.apiKey = value;
+            return this;
+        }
+
+        private static void checkBaseUrl(String baseUrl) {
+            Objects.requireNonNull(baseUrl, "URL cannot be null");
+            URI uri;
+            try {
+                uri = new URI(baseUrl);
+            } catch (URISyntaxException e) {
+                throw new IllegalArgumentException("Invalid backend URL: " + baseUrl, e);
+            }
+            if (!("http".equalsIgnoreCase(uri.getScheme()) || "https".equalsIgnoreCase(uri.getScheme())) || uri.getHost() == null) {
+                throw new IllegalArgumentException("Backend URL must be an absolute http or https URL: " + baseUrl);
+            }
+        }
+
+        /**
+         * Builds and returns a new LoadBalancingLLMClient instance. Active health checks start immediately.
+         * @return A new LoadBalancingLLMClient instance.
+         */
+        public LoadBalancingLLMClient build() {
+            if (backends.isEmpty()) {
+                throw new IllegalArgumentException("At least one backend must be added.");
+            }
+            return new LoadBalancingLLMClient(this);
+        }
+    }
+}
@@ -0,0 +1,21 @@
+package com.aiforjava.llm.client;
+
+/**
+ * Selects how {@link LoadBalancingLLMClient} picks a backend for each call.
+ */
+public enum LoadBalancingPolicy {
+    /**
+     * Cycles through the healthy backends in order. Best when all backends have similar speed.
+     */
+    ROUND_ROBIN,
+    /**
+     * Picks the healthy backend with the fewest calls in flight. Adapts to backends of different speed
+     * and to long-running streams, at the cost of scanning all backends per call.
+     */
+    LEAST_OUTSTANDING,
+    /**
+     * Picks two healthy backends at random and uses the one with fewer calls in flight. Nearly as good as
+     * least-outstanding while avoiding herding onto a single backend that just became idle. This is the default.
+     */
+    POWER_OF_TWO_CHOICES
+}
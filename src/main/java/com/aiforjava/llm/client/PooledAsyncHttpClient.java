@@ -0,0 +1,1052 @@
+package com.aiforjava.llm.client;
+
+import com.aiforjava.exception.Exception_Timeout;
+import com.aiforjava.exception.LLMHttpException;
+import com.aiforjava.exception.LLMNetworkException;
+import com.aiforjava.exception.LLMParseException;
+import com.aiforjava.exception.LLMServiceException;
+import com.aiforjava.exception.LLMStreamProcessingException;
+import com.aiforjava.llm.streams.DefaultStreamResponseParser;
+import com.aiforjava.llm.streams.SseEventDecoder;
+import com.aiforjava.llm.streams.StreamHandler;
+import com.aiforjava.llm.streams.StreamResponse;
+import com.aiforjava.llm.streams.StreamResponseParser;
+import org.apache.hc.client5.http.HttpRoute;
+import org.apache.hc.client5.http.async.methods.SimpleHttpResponse;
+import org.apache.hc.client5.http.async.methods.SimpleResponseConsumer;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.config.TlsConfig;
+import org.apache.hc.client5.http.impl.async.CloseableHttpAsyncClient;
+import org.apache.hc.client5.http.impl.async.HttpAsyncClients;
+import org.apache.hc.client5.http.protocol.HttpClientContext;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManager;
+import org.apache.hc.client5.http.impl.nio.PoolingAsyncClientConnectionManagerBuilder;
+import org.apache.hc.core5.concurrent.FutureCallback;
+import org.apache.hc.core5.http.ContentType;
+import org.apache.hc.core5.http.EntityDetails;
+import org.apache.hc.core5.http.Header;
+import org.apache.hc.core5.http.HeaderElement;
+import org.apache.hc.core5.http.HeaderElements;
+import org.apache.hc.core5.http.HttpException;
+import org.apache.hc.core5.http.HttpHost;
+import org.apache.hc.core5.http.HttpResponse;
+import org.apache.hc.core5.http.Method;
+import org.apache.hc.core5.http.message.BasicHttpRequest;
+import org.apache.hc.core5.http.message.MessageSupport;
+import org.apache.hc.core5.http.nio.AsyncEntityProducer;
+import org.apache.hc.core5.http.nio.AsyncResponseConsumer;
+import org.apache.hc.core5.http.nio.CapacityChannel;
+import org.apache.hc.core5.http.nio.DataStreamChannel;
+import org.apache.hc.core5.http.nio.entity.AsyncEntityProducers;
+import org.apache.hc.core5.http.nio.support.BasicRequestProducer;
+import org.apache.hc.core5.http.protocol.HttpContext;
+import org.apache.hc.core5.http2.HttpVersionPolicy;
+import org.apache.hc.core5.io.CloseMode;
+import org.apache.hc.core5.pool.PoolConcurrencyPolicy;
+import org.apache.hc.core5.pool.PoolReusePolicy;
+import org.apache.hc.core5.pool.PoolStats;
+import org.apache.hc.core5.reactor.IOReactorConfig;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * PooledAsyncHttpClient is an implementation of the LLM_Client interface built on the
+ * Apache HttpClient 5 asynchronous client. Unlike {@link DefaultHttpClient}, it keeps an explicit,
+ * configurable connection pool with per-route limits, keep-alive reuse and idle eviction, so many
+ * concurrent chat sessions against the same LM Studio / llama.cpp backend share warm connections
+ * instead of opening and tearing down one per request.
+ * Instances are created through {@link Builder} and should be closed when no longer needed.
+ * {@link Builder#setCompression(Compression)} compresses large request bodies and lets the server compress
+ * non-streaming responses.
+ * Streams have their own timeouts for the first chunk, the gap between chunks and the whole stream, so a stalled
+ * generation is detected quickly without cutting off long healthy ones; see {@link Builder#setIdleTimeout(Duration)}.
+ */
+public class PooledAsyncHttpClient implements LLM_Client, AutoCloseable {
+    private final CloseableHttpAsyncClient httpClient;
+    private final PoolingAsyncClientConnectionManager connectionManager;
+    private final String baseUrl;
+    private final Duration timeout;
+    private final Duration firstTokenTimeout;
+    private final Duration idleTimeout;
+    private final Duration totalTimeout;
+    private final RequestConfig streamRequestConfig;
+    private final String apiKey;
+    private final boolean useBaseUrlAsEndpoint;
+    private final StreamResponseParser streamResponseParser;
+    private final Duration keepAlive;
+    private final Compression compression; // Null when request bodies are sent uncompressed
+    private final int compressionThreshold;
+    private final CompressionStats compressionStats = new CompressionStats();
+
+    private PooledAsyncHttpClient(Builder builder) {
+        this.baseUrl = builder.baseUrl;
+        this.timeout = builder.timeout;
+        this.firstTokenTimeout = builder.firstTokenTimeout != null ? builder.firstTokenTimeout : builder.timeout;
+        this.idleTimeout = builder.idleTimeout != null ? builder.idleTimeout : builder.timeout;
+        this.totalTimeout = builder.totalTimeout;
+        this.apiKey = builder.apiKey;
+        this.useBaseUrlAsEndpoint = builder.useBaseUrlAsEndpoint;
+        this.streamResponseParser = builder.streamResponseParser;
+        this.keepAlive = builder.keepAlive;
+        this.compression = builder.compression;
+        this.compressionThreshold = builder.compressionThreshold;
+
+        this.connectionManager = PoolingAsyncClientConnectionManagerBuilder.create()
+                .setMaxConnTotal(builder.maxConnections)
+                .setMaxConnPerRoute(builder.maxConnectionsPerRoute)
+                // LIFO keeps the most recently used (hottest) connections busy and lets the rest idle out
+                .setConnPoolPolicy(PoolReusePolicy.LIFO)
+                .setPoolConcurrencyPolicy(PoolConcurrencyPolicy.STRICT)
+                .setDefaultConnectionConfig(ConnectionConfig.custom()
+                        .setConnectTimeout(toTimeout(builder.connectTimeout != null ? builder.connectTimeout : builder.timeout))
+                        .setTimeToLive(toTimeValue(builder.connectionTimeToLive))
+                        .setValidateAfterInactivity(TimeValue.ofSeconds(2))
+                        .build())
+                // Applies to plain connections as well, so H2C_PRIOR_KNOWLEDGE is honoured without TLS
+                .setDefaultTlsConfig(TlsConfig.custom()
+                        .setVersionPolicy(toVersionPolicy(builder.httpProtocol))
+                        .build())
+                .build();
+        for (Map.Entry<String, Integer> routeLimit : builder.routeLimits.entrySet()) {
+            connectionManager.setMaxPerRoute(new HttpRoute(HttpHost.create(URI.create(routeLimit.getKey()))), routeLimit.getValue());
+        }
+
+        this.httpClient = HttpAsyncClients.custom()
+                .setConnectionManager(connectionManager)
+                .setIOReactorConfig(IOReactorConfig.custom()
+                        .setIoThreadCount(builder.ioThreads)
+                        .setSoKeepAlive(true)
+                        .setTcpNoDelay(true)
+                        .build())
+                .setDefaultRequestConfig(RequestConfig.custom()
+                        .setConnectionRequestTimeout(toTimeout(builder.timeout))
+                        .setResponseTimeout(toTimeout(builder.timeout))
+                        .build())
+                .setKeepAliveStrategy((response, context) -> keepAliveDuration(response))
+                .evictExpiredConnections()
+                .evictIdleConnections(toTimeValue(builder.idleEviction))
+                .disableCookieManagement()
+                .disableAutomaticRetries()
+                .build();
+        this.httpClient.start();
+        // Streams are guarded by their watchdog instead of the socket inactivity timeout
+        this.streamRequestConfig = RequestConfig.custom()
+                .setConnectionRequestTimeout(toTimeout(builder.timeout))
+                .setResponseTimeout(Timeout.DISABLED)
+                .build();
+    }
+
+    /**
+     * Sends a non-streaming HTTP POST request to the LLM endpoint using a pooled connection.
+     *
+     * @param endpoint The specific API endpoint (e.g., "v1/chat/completions").
+     * @param json The JSON request payload as a string.
+     * @return The raw JSON response body as a string.
+     * @throws LLMHttpException If an HTTP error occurs (e.g., status code >= 400).
+     * @throws Exception_Timeout If the request times out.
+     * @throws LLMNetworkException If a network error occurs or the request is interrupted.
+     */
+    @Override
+    public String sendRequest(String endpoint, String json) throws LLMServiceException {
+        try (RequestBody body = RequestBody.of(json)) {
+            return sendRequest(endpoint, body);
+        }
+    }
+
+    /**
+     * Sends a non-streaming HTTP POST request using a pooled connection, writing the body's chunks to the
+     * connection without copying them.
+     *
+     * @param endpoint The specific API endpoint (e.g., "v1/chat/completions").
+     * @param body The JSON request payload.
+     * @return The raw JSON response body as a string.
+     * @throws LLMServiceException If the request fails, see {@link #sendRequest(String, String)}.
+     */
+    @Override
+    public String sendRequest(String endpoint, RequestBody body) throws LLMServiceException {
+        return await(sendRequestAsync(endpoint, body));
+    }
+
+    /**
+     * Sends a streaming HTTP POST request to the LLM endpoint using a pooled connection.
+     * Each event of the response is parsed as it arrives and delivered to the StreamHandler on a thread of the stream.
+     *
+     * @param endpoint The specific API endpoint (e.g., "v1/chat/completions").
+     * @param json The JSON request payload as a string.
+     * @param handler A StreamHandler to process each chunk of the streaming response.
+     * @throws LLMHttpException If an HTTP error occurs.
+     * @throws Exception_Timeout If the request times out.
+     * @throws LLMNetworkException If a network error occurs or the request is interrupted.
+     * @throws LLMStreamProcessingException If parsing or handling a chunk of the stream fails.
+     */
+    @Override
+    public void sendStreamRequest(String endpoint, String json, StreamHandler handler) throws LLMServiceException {
+        await(sendStreamRequestAsync(endpoint, json, handler));
+    }
+
+    /**
+     * Sends a streaming HTTP POST request using a pooled connection, writing the body's chunks to the
+     * connection without copying them.
+     *
+     * @param endpoint The specific API endpoint (e.g., "v1/chat/completions").
+     * @param body The JSON request payload.
+     * @param handler A StreamHandler to process each chunk of the streaming response.
+     * @throws LLMServiceException If the request fails, see {@link #sendStreamRequest(String, String, StreamHandler)}.
+     */
+    @Override
+    public void sendStreamRequest(String endpoint, RequestBody body, StreamHandler handler) throws LLMServiceException {
+        await(sendStreamRequestAsync(endpoint, body, handler));
+    }
+
+    /**
+     * Sends a non-streaming HTTP POST request to the LLM endpoint without blocking the calling thread.
+     *
+     * @param endpoint The specific API endpoint (e.g., "v1/chat/completions").
+     * @param json The JSON request payload as a string.
+     * @return A CompletableFuture completed with the raw JSON response body, or exceptionally with an
+     *         {@link LLMServiceException} (or {@link Exception_Timeout}) if the request fails.
+     */
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, String json) {
+        RequestBody body = RequestBody.of(json);
+        CompletableFuture<String> response = sendRequestAsync(endpoint, body);
+        response.whenComplete((value, failure) -> body.close());
+        return response;
+    }
+
+    /**
+     * Sends a non-streaming HTTP POST request without blocking the calling thread, writing the body's chunks
+     * to the connection without copying them.
+     *
+     * @param endpoint The specific API endpoint (e.g., "v1/chat/completions").
+     * @param body The JSON request payload. Must stay open until the returned future has completed.
+     * @return A CompletableFuture completed with the raw JSON response body, see {@link #sendRequestAsync(String, String)}.
+     */
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, RequestBody body) {
+        BasicHttpRequest request = new BasicHttpRequest(Method.POST, URI.create(resolveUri(endpoint)));
+        if (compression != null)
+            request.setHeader("Accept-Encoding", ContentCoding.ACCEPT_ENCODING);
+        if (apiKey != null && !apiKey.isEmpty())
+            request.setHeader("Authorization", "Bearer " + apiKey);
+        BasicRequestProducer requestProducer = new BasicRequestProducer(request, entityProducer(request, body));
+
+        CompletableFuture<String> future = new CompletableFuture<>();
+        Future<SimpleHttpResponse> exchange = httpClient.execute(
+                requestProducer,
+                SimpleResponseConsumer.create(),
+                new FutureCallback<>() {
+                    @Override
+                    public void completed(SimpleHttpResponse response) {
+                        String responseBody;
+                        try {
+                            responseBody = decodeBody(response);
+                        } catch (IOException e) {
+                            future.completeExceptionally(translate(e));
+                            return;
+                        }
+                        if (response.getCode() >= 400) {
+                            future.completeExceptionally(httpError(response, responseBody));
+                        } else {
+                            future.complete(responseBody);
+                        }
+                    }
+
+                    @Override
+                    public void failed(Exception ex) {
+                        future.completeExceptionally(translate(ex));
+                    }
+
+                    @Override
+                    public void cancelled() {
+                        future.cancel(false);
+                    }
+                });
+        cancelExchangeWith(future, exchange);
+        return future;
+    }
+
+    /**
+     * Sends a streaming HTTP POST request to the LLM endpoint without blocking the calling thread.
+     * Chunks are parsed on the I/O reactor thread and handed to the StreamHandler on a virtual thread of the
+     * stream, so a slow handler never holds up the other connections of the reactor; while it lags behind, the
+     * connection is not read.
+     *
+     * @param endpoint The specific API endpoint (e.g., "v1/chat/completions").
+     * @param json The JSON request payload as a string.
+     * @param handler A StreamHandler to process each chunk of the streaming response.
+     * @return A CompletableFuture that completes when the stream ends, or exceptionally if it fails.
+     *         Cancelling the future aborts the underlying HTTP exchange.
+     */
+    @Override
+    public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, String json, StreamHandler handler) {
+        RequestBody body = RequestBody.of(json);
+        CompletableFuture<Void> stream = sendStreamRequestAsync(endpoint, body, handler);
+        stream.whenComplete((value, failure) -> body.close());
+        return stream;
+    }
+
+    /**
+     * Sends a streaming HTTP POST request without blocking the calling thread, writing the body's chunks to the
+     * connection without copying them.
+     *
+     * @param endpoint The specific API endpoint (e.g., "v1/chat/completions").
+     * @param body The JSON request payload. Must stay open until the returned future has completed.
+     * @param handler A StreamHandler to process each chunk of the streaming response.
+     * @return A CompletableFuture that completes when the stream ends, see
+     *         {@link #sendStreamRequestAsync(String, String, StreamHandler)}.
+     */
+    @Override
+    public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, RequestBody body, StreamHandler handler) {
+        BasicHttpRequest request = new BasicHttpRequest(Method.POST, URI.create(resolveUri(endpoint)));
+        request.setHeader("Accept", "text/event-stream");
+        if (apiKey != null && !apiKey.isEmpty())
+            request.setHeader("Authorization", "Bearer " + apiKey);
+        BasicRequestProducer requestProducer = new BasicRequestProducer(request, entityProducer(request, body));
+
+        CompletableFuture<Void> future = new CompletableFuture<>();
+        StreamWatchdog watchdog = new StreamWatchdog(TimerWheel.shared(), firstTokenTimeout, idleTimeout, totalTimeout,
+                future::completeExceptionally);
+        SseEventConsumer consumer = new SseEventConsumer(watchdog.watch(handler), future);
+        HttpClientContext context = HttpClientContext.create();
+        context.setRequestConfig(streamRequestConfig);
+        Future<Void> exchange = httpClient.execute(requestProducer, consumer, context, new FutureCallback<>() {
+            @Override
+            public void completed(Void result) {
+                if (consumer.errorResponse != null) {
+                    future.completeExceptionally(httpError(consumer.errorResponse, null));
+                } else {
+                    consumer.endOfInput(); // The future completes once the handler has received everything
+                }
+            }
+
+            @Override
+            public void failed(Exception ex) {
+                future.completeExceptionally(consumer.failure != null ? consumer.failure : translate(ex));
+            }
+
+            @Override
+            public void cancelled() {
+                future.cancel(false);
+            }
+        });
+        watchdog.start();
+        // Cancelling the returned future, or a timeout, aborts the exchange
+        future.whenComplete((result, ex) -> {
+            watchdog.stop();
+            if (ex != null) {
+                consumer.close();
+                exchange.cancel(true);
+            }
+        });
+        return future;
+    }
+
+    /**
+     * Returns a snapshot of the connection pool, useful for monitoring how many connections are
+     * leased, idle (available) or pending across all routes.
+     *
+     * @return The current total pool statistics.
+     */
+    public PoolStats getPoolStats() {
+        return connectionManager.getTotalStats();
+    }
+
+    /**
+     * Returns the body bytes saved by request and response compression so far.
+     *
+     * @return The compression statistics of this client.
+     */
+    public CompressionStats getCompressionStats() {
+        return compressionStats;
+    }
+
+    /**
+     * Gracefully shuts down the I/O reactor and closes all pooled connections.
+     */
+    @Override
+    public void close() {
+        httpClient.close(CloseMode.GRACEFUL);
+    }
+
+    private String resolveUri(String endpoint) {
+        return useBaseUrlAsEndpoint ? baseUrl : baseUrl + "/" + endpoint;
+    }
+
+    private TimeValue keepAliveDuration(HttpResponse response) {
+        // Honor a shorter server-advertised "Keep-Alive: timeout=N", otherwise keep connections for the configured duration
+        Iterator<HeaderElement> elements = MessageSupport.iterate(response, HeaderElements.KEEP_ALIVE);
+        while (elements.hasNext()) {
+            HeaderElement element = elements.next();
+            if ("timeout".equalsIgnoreCase(element.getName()) && element.getValue() != null) {
+                try {
+                    return TimeValue.ofSeconds(Math.min(Long.parseLong(element.getValue()), keepAlive.toSeconds()));
+                } catch (NumberFormatException ignored) {
+                    // Fall through to the configured keep-alive
+                }
+            }
+        }
+        return toTimeValue(keepAlive);
+    }
+
+    /**
+     * Returns the producer for a request body: the compressed bytes if the body is large enough to be compressed,
+     * otherwise the body's own chunks.
+     */
+    private AsyncEntityProducer entityProducer(BasicHttpRequest request, RequestBody body) {
+        byte[] compressed = ContentCoding.encode(body, compression, compressionThreshold, compressionStats);
+        if (compressed != null) {
+            request.setHeader("Content-Encoding", compression.getToken());
+            return AsyncEntityProducers.create(compressed, ContentType.APPLICATION_JSON);
+        }
+        return new ChunkedEntityProducer(body);
+    }
+
+    private String decodeBody(SimpleHttpResponse response) throws IOException {
+        byte[] bytes = response.getBodyBytes();
+        Header contentEncoding = response.getFirstHeader("Content-Encoding");
+        if (bytes == null) {
+            return null;
+        } else if (contentEncoding == null) {
+            return response.getBodyText(); // Honors the charset of the Content-Type
+        }
+        return ContentCoding.decode(bytes, contentEncoding.getValue(), compressionStats);
+    }
+
+    private static void cancelExchangeWith(CompletableFuture<?> future, Future<?> exchange) {
+        future.whenComplete((result, ex) -> {
+            if (future.isCancelled()) {
+                exchange.cancel(true);
+            }
+        });
+    }
+
+    private static LLMHttpException httpError(HttpResponse response, String body) {
+        String message = "HTTP error: " + response.getCode() + (body != null ? " : " + body : "");
+        Header retryAfter = response.getFirstHeader("Retry-After");
+        return new LLMHttpException(message, response.getCode(), RetryAfter.parse(retryAfter != null ? retryAfter.getValue() : null));
+    }
+
+    private <T> T await(CompletableFuture<T> future) throws LLMServiceException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            future.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new LLMNetworkException("Request was Interrupted", e);
+        } catch (CancellationException e) {
+            throw new LLMNetworkException("Request was cancelled", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof LLMServiceException) {
+                throw (LLMServiceException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new LLMServiceException("Unexpected error communicating with " + baseUrl, cause);
+        }
+    }
+
+    private Throwable translate(Exception ex) {
+        if (ex instanceof InterruptedIOException) {
+            return new Exception_Timeout("Request timed out after " + timeout.toSeconds() + " seconds", ex);
+        } else if (ex instanceof IOException) {
+            return new LLMNetworkException("Network error communicating with " + baseUrl, ex);
+        } else if (ex instanceof HttpException) {
+            return new LLMServiceException("HTTP protocol error: " + ex.getMessage(), ex);
+        } else if (ex instanceof CompletionException && ex.getCause() != null) {
+            return ex.getCause();
+        }
+        return ex;
+    }
+
+    private static HttpVersionPolicy toVersionPolicy(HttpProtocol protocol) {
+        switch (protocol) {
+            case HTTP_2:
+                return HttpVersionPolicy.NEGOTIATE;
+            case H2C_PRIOR_KNOWLEDGE:
+                return HttpVersionPolicy.FORCE_HTTP_2;
+            default:
+                return HttpVersionPolicy.FORCE_HTTP_1;
+        }
+    }
+
+    private static Timeout toTimeout(Duration duration) {
+        return Timeout.ofMilliseconds(duration.toMillis());
+    }
+
+    private static TimeValue toTimeValue(Duration duration) {
+        return TimeValue.ofMilliseconds(duration.toMillis());
+    }
+
+    /**
+     * Response consumer that frames Server-Sent-Events straight from the raw response buffers with a
+     * {@link SseEventDecoder} and feeds each event's bytes to the {@link StreamResponseParser} as soon as it is
+     * complete. For error responses the body is discarded and only the status code is kept.
+     * <p>
+     * The I/O reactor thread serves many connections, so it only decodes and parses: the parsed chunks are queued
+     * and handed to the {@link StreamHandler} on a virtual thread of the stream. A handler that takes its time, or
+     * blocks to apply backpressure, therefore holds up only its own stream. While more than
+     * {@link #MAX_QUEUED_CHUNKS} chunks wait, no further capacity is granted to the connection, so the transport
+     * stops reading it (and, for HTTP/2, stops the peer through flow control) until the handler has caught up.
+     * The stream's future completes after the handler has received every chunk and {@link StreamHandler#onComplete()}.
+     */
+    private class SseEventConsumer implements AsyncResponseConsumer<Void> {
+        private static final int MAX_QUEUED_CHUNKS = 64;
+        private static final int CAPACITY_INCREMENT = 64 * 1024;
+
+        private final StreamHandler handler;
+        private final CompletableFuture<Void> result;
+        private final StreamResponseParser parser = streamResponseParser.newSession(); // State of this stream only
+        private final SseEventDecoder decoder = new SseEventDecoder(this::dispatch);
+        private volatile int statusCode;
+        private volatile HttpResponse errorResponse;
+        private volatile Throwable failure;
+        private volatile FutureCallback<Void> resultCallback; // Of the exchange; null for a response without a body
+
+        // All fields below are guarded by "queue"
+        private final ArrayDeque<StreamResponse> queue = new ArrayDeque<>();
+        private CapacityChannel capacityChannel; // Set when the transport asks for capacity that was withheld
+        private boolean inputEnded;
+        private boolean draining;
+        private boolean closed;
+
+        SseEventConsumer(StreamHandler handler, CompletableFuture<Void> result) {
+            this.handler = handler;
+            this.result = result;
+        }
+
+        @Override
+        public void consumeResponse(HttpResponse response, EntityDetails entityDetails, HttpContext context, FutureCallback<Void> resultCallback) {
+            this.statusCode = response.getCode();
+            if (statusCode >= 400) {
+                this.errorResponse = response;
+            }
+            if (entityDetails == null) {
+                resultCallback.completed(null);
+            } else {
+                this.resultCallback = resultCallback;
+            }
+        }
+
+        @Override
+        public void informationResponse(HttpResponse response, HttpContext context) {
+        }
+
+        @Override
+        public void updateCapacity(CapacityChannel channel) throws IOException {
+            synchronized (queue) {
+                if (queue.size() >= MAX_QUEUED_CHUNKS && !closed) {
+                    capacityChannel = channel; // Granted by the delivery thread once the handler has caught up
+                    return;
+                }
+            }
+            channel.update(CAPACITY_INCREMENT);
+        }
+
+        @Override
+        public void consume(ByteBuffer src) throws IOException {
+            if (statusCode >= 400) {
+                return; // Error bodies are not part of the stream
+            }
+            try {
+                while (src.hasRemaining()) {
+                    decoder.decode(src);
+                }
+            } catch (RuntimeException e) {
+                throw abort(e);
+            }
+        }
+
+        @Override
+        public void streamEnd(List<? extends Header> trailers) throws IOException {
+            if (statusCode < 400) {
+                try {
+                    decoder.finish();
+                } catch (RuntimeException e) {
+                    throw abort(e);
+                }
+            }
+            FutureCallback<Void> callback = resultCallback;
+            if (callback != null) {
+                callback.completed(null);
+            }
+        }
+
+        @Override
+        public void failed(Exception cause) {
+            // The exchange reports the failure to its callback, which fails the stream
+        }
+
+        @Override
+        public void releaseResources() {
+            parser.endSession(); // Runs on the reactor thread after the last event, however the exchange ended
+        }
+
+        private IOException abort(RuntimeException e) {
+            failure = e instanceof LLMStreamProcessingException ? e : new LLMStreamProcessingException("Error during stream processing", e);
+            return new IOException("Aborting stream after processing failure", e);
+        }
+
+        private void dispatch(String eventType, byte[] data, int offset, int length) {
+            StreamResponse content;
+            try {
+                content = parser.parseEvent(eventType, data, offset, length);
+            } catch (LLMParseException e) {
+                throw new LLMStreamProcessingException("Error parsing LLM stream response", e);
+            }
+            if (content != null) {
+                synchronized (queue) {
+                    if (closed) {
+                        return;
+                    }
+                    queue.add(content);
+                    if (draining) {
+                        return;
+                    }
+                    draining = true;
+                }
+                startDelivery();
+            }
+        }
+
+        /**
+         * Called once the response has been read completely: the handler is completed after the queued chunks.
+         */
+        void endOfInput() {
+            synchronized (queue) {
+                inputEnded = true;
+                if (draining || closed) {
+                    return;
+                }
+                draining = true;
+            }
+            startDelivery();
+        }
+
+        /**
+         * Stops delivery once the stream has failed or was cancelled; queued chunks are discarded.
+         */
+        void close() {
+            synchronized (queue) {
+                closed = true;
+                queue.clear();
+                capacityChannel = null;
+            }
+        }
+
+        private void startDelivery() {
+            Thread.ofVirtual().name("ai4j-stream-delivery").start(this::deliver);
+        }
+
+        /**
+         * Hands the queued chunks to the handler until the queue is empty, then completes the stream if the
+         * response has ended. At most one delivery thread runs per stream, so the handler is never called concurrently.
+         */
+        private void deliver() {
+            try {
+                while (true) {
+                    StreamResponse next;
+                    boolean complete = false;
+                    CapacityChannel resume = null;
+                    synchronized (queue) {
+                        if (closed) {
+                            draining = false;
+                            return;
+                        }
+                        next = queue.poll();
+                        if (capacityChannel != null && queue.size() <= MAX_QUEUED_CHUNKS / 2) {
+                            resume = capacityChannel;
+                            capacityChannel = null;
+                        }
+                        if (next == null) {
+                            complete = inputEnded;
+                            if (complete) {
+                                closed = true;
+                            }
+                            draining = false;
+                        }
+                    }
+                    if (resume != null) {
+                        resume.update(CAPACITY_INCREMENT);
+                    }
+                    if (next != null) {
+                        handler.onStream(next);
+                    } else {
+                        if (complete) {
+                            handler.onComplete();
+                            result.complete(null);
+                        }
+                        return;
+                    }
+                }
+            } catch (IOException e) {
+                close();
+                result.completeExceptionally(translate(e));
+            } catch (RuntimeException e) {
+                close();
+                failure = e instanceof LLMStreamProcessingException ? e : new LLMStreamProcessingException("Error during stream processing", e);
+                result.completeExceptionally(failure);
+            }
+        }
+    }
+
+    /**
+     * Writes a {@link RequestBody}'s chunks to the connection as the channel accepts them, so the body is never
+     * copied into one contiguous array. Repeatable: the producer starts over from the first chunk after
+     * its resources are released.
+     */
+    private static final class ChunkedEntityProducer implements AsyncEntityProducer {
+        private final RequestBody body;
+        private int next;
+        private ByteBuffer current;
+        private boolean started;
+
+        ChunkedEntityProducer(RequestBody body) {
+            this.body = body;
+        }
+
+        @Override
+        public boolean isRepeatable() {
+            return true;
+        }
+
+        @Override
+        public String getContentType() {
+            return ContentType.APPLICATION_JSON.toString();
+        }
+
+        @Override
+        public long getContentLength() {
+            return body.contentLength();
+        }
+
+        @Override
+        public String getContentEncoding() {
+            return null;
+        }
+
+        @Override
+        public boolean isChunked() {
+            return false;
+        }
+
+        @Override
+        public Set<String> getTrailerNames() {
+            return null;
+        }
+
+        @Override
+        public synchronized int available() {
+            return current != null || next < body.chunkCount() ? Integer.MAX_VALUE : 0;
+        }
+
+        @Override
+        public synchronized void produce(DataStreamChannel channel) throws IOException {
+            if (!started) {
+                started = true;
+                body.publicationStarted();
+            }
+            while (true) {
+                if (current == null) {
+                    if (next == body.chunkCount()) {
+                        channel.endStream();
+                        body.publicationFinished();
+                        return;
+                    }
+                    current = body.chunk(next++);
+                }
+                channel.write(current);
+                if (current.hasRemaining()) {
+                    return; // The channel is full; produce is called again once it can take more
+                }
+                current = null;
+            }
+        }
+
+        @Override
+        public void failed(Exception cause) {
+            // The exchange reports the failure; the body's chunks are left unreleased since writes may be pending
+        }
+
+        @Override
+        public synchronized void releaseResources() {
+            next = 0;
+            current = null;
+            started = false;
+        }
+    }
+
+    /**
+     * Builder class for constructing PooledAsyncHttpClient instances.
+     * Provides a fluent API for the endpoint, timeouts and connection pool settings.
+     */
+    public static class Builder {
+        private final String baseUrl;
+        private Duration timeout = Duration.ofSeconds(90);
+        private Duration connectTimeout;
+        private Duration firstTokenTimeout;
+        private Duration idleTimeout;
+        private Duration totalTimeout = Duration.ZERO;
+        private String apiKey;
+        private boolean useBaseUrlAsEndpoint = false;
+        private StreamResponseParser streamResponseParser = new DefaultStreamResponseParser();
+        private int maxConnections = 64;
+        private int maxConnectionsPerRoute = 16;
+        private final Map<String, Integer> routeLimits = new HashMap<>();
+        private Duration keepAlive = Duration.ofMinutes(2);
+        private Duration idleEviction = Duration.ofSeconds(30);
+        private Duration connectionTimeToLive = Duration.ofMinutes(10);
+        private int ioThreads = Math.max(1, Math.min(4, Runtime.getRuntime().availableProcessors()));
+        private HttpProtocol httpProtocol = HttpProtocol.HTTP_1_1;
+        private Compression compression;
+        private int compressionThreshold = 8192;
+
+        /**
+         * Creates a builder for the given base URL.
+         * @param baseUrl The base URL of the LLM API (e.g., "http://localhost:1234"). Must not be null.
+         */
+        public Builder(String baseUrl) {
+            this.baseUrl = Objects.requireNonNull(baseUrl, "URL cannot be null");
+        }
+
+        /**
+         * Sets the pool-lease timeout and the response (socket inactivity) timeout of non-streaming requests.
+         * It is also the default for the connect, first-token and idle timeouts that are not set explicitly.
+         * @param value The timeout duration.
+         * @return The Builder instance.
+         */
+        public Builder setTimeout(Duration value) {
+            this.timeout = Objects.requireNonNull(value, "Timeout cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets the maximum duration to wait for a connection to be established.
+         * @param value The timeout, or {@link Duration#ZERO} to wait as long as the operating system does.
+         * @return The Builder instance.
+         */
+        public Builder setConnectTimeout(Duration value) {
+            this.connectTimeout = checkTimeout(value, "Connect timeout");
+            return this;
+        }
+
+        /**
+         * Sets how long a stream may take to deliver its first chunk, counted from when the request is sent.
+         * This covers queueing and prompt processing on the server, which can legitimately take much longer
+         * than the gap between two tokens.
+         * @param value The timeout, or {@link Duration#ZERO} to disable it.
+         * @return The Builder instance.
+         */
+        public Builder setFirstTokenTimeout(Duration value) {
+            this.firstTokenTimeout = checkTimeout(value, "First token timeout");
+            return this;
+        }
+
+        /**
+         * Sets how long a stream may go without delivering a chunk once the first one has arrived. A few seconds
+         * are enough to detect a stuck generation, since a healthy one produces tokens continuously.
+         * @param value The timeout, or {@link Duration#ZERO} to disable it.
+         * @return The Builder instance.
+         */
+        public Builder setIdleTimeout(Duration value) {
+            this.idleTimeout = checkTimeout(value, "Idle timeout");
+            return this;
+        }
+
+        /**
+         * Sets the maximum duration of a whole stream, however steadily it produces chunks. Disabled by default.
+         * @param value The timeout, or {@link Duration#ZERO} to disable it.
+         * @return The Builder instance.
+         */
+        public Builder setTotalTimeout(Duration value) {
+            this.totalTimeout = checkTimeout(value, "Total timeout");
+            return this;
+        }
+
+        private static Duration checkTimeout(Duration value, String name) {
+            Objects.requireNonNull(value, name + " cannot be null");
+            if (value.isNegative()) {
+                throw new IllegalArgumentException(name + " must not be negative");
+            }
+            return value;
+        }
+
+        /**
+         * Sets the API key sent as a Bearer token, needed for online models.
+         * @param value The API key, or null for local servers.
+         * @return The Builder instance.
+         */
+        public Builder setApiKey(String value) {
+            this.apiKey = value;
+            return this;
+        }
+
+        /**
+         * Sets whether the base URL is used as the full endpoint URI.
+         * @param value True to ignore the 'endpoint' parameter for path concatenation.
+         * @return The Builder instance.
+         */
+        public Builder setUseBaseUrlAsEndpoint(boolean value) {
+            this.useBaseUrlAsEndpoint = value;
+            return this;
+        }
+
+        /**
+         * Sets the parser used for streaming responses.
+         * @param value The stream response parser.
+         * @return The Builder instance.
+         */
+        public Builder setStreamResponseParser(StreamResponseParser value) {
+            this.streamResponseParser = Objects.requireNonNull(value, "StreamResponseParser cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets the maximum number of pooled connections across all routes.
+         * @param value The total connection limit.
+         * @return The Builder instance.
+         */
+        public Builder setMaxConnections(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("Max connections must be greater than 0");
+            }
+            this.maxConnections = value;
+            return this;
+        }
+
+        /**
+         * Sets the default maximum number of pooled connections per route (host and port).
+         * @param value The per-route connection limit.
+         * @return The Builder instance.
+         */
+        public Builder setMaxConnectionsPerRoute(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("Max connections per route must be greater than 0");
+            }
+            this.maxConnectionsPerRoute = value;
+            return this;
+        }
+
+        /**
+         * Overrides the connection limit for one specific route.
+         * @param url A URL identifying the route (scheme, host and port), e.g. "http://localhost:1234".
+         * @param value The connection limit for that route.
+         * @return The Builder instance.
+         */
+        public Builder setMaxConnectionsForRoute(String url, int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("Max connections for a route must be greater than 0");
+            }
+            this.routeLimits.put(Objects.requireNonNull(url, "Route URL cannot be null"), value);
+            return this;
+        }
+
+        /**
+         * Sets how long an idle connection may be kept alive for reuse when the server does not advertise a shorter value.
+         * @param value The keep-alive duration.
+         * @return The Builder instance.
+         */
+        public Builder setKeepAlive(Duration value) {
+            this.keepAlive = Objects.requireNonNull(value, "Keep-alive cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets how long a connection may sit idle in the pool before it is evicted by the background evictor.
+         * @param value The idle eviction threshold.
+         * @return The Builder instance.
+         */
+        public Builder setIdleEviction(Duration value) {
+            this.idleEviction = Objects.requireNonNull(value, "Idle eviction cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets the maximum lifetime of a pooled connection, regardless of activity.
+         * @param value The connection time-to-live.
+         * @return The Builder instance.
+         */
+        public Builder setConnectionTimeToLive(Duration value) {
+            this.connectionTimeToLive = Objects.requireNonNull(value, "Connection time-to-live cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets the number of I/O reactor threads that service all connections of the client.
+         * @param value The I/O thread count.
+         * @return The Builder instance.
+         */
+        public Builder setIoThreads(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("I/O threads must be greater than 0");
+            }
+            this.ioThreads = value;
+            return this;
+        }
+
+        /**
+         * Sets the HTTP protocol version. With {@link HttpProtocol#H2C_PRIOR_KNOWLEDGE} the client speaks HTTP/2
+         * over plaintext from the first byte, multiplexing requests over pooled connections. Defaults to HTTP/1.1.
+         * @param value The protocol to use.
+         * @return The Builder instance.
+         */
+        public Builder setHttpProtocol(HttpProtocol value) {
+            this.httpProtocol = Objects.requireNonNull(value, "HttpProtocol cannot be null");
+            return this;
+        }
+
+        /**
+         * Enables compression of request bodies with the given coding, and lets the server compress non-streaming
+         * responses, which are then decompressed transparently. Only worth it when the backend is remote and
+         * requests are large, e.g. conversations carrying base64 images. Disabled by default.
+         * @param value The coding for request bodies, or null to disable compression.
+         * @return The Builder instance.
+         */
+        public Builder setCompression(Compression value) {
+            this.compression = value;
+            return this;
+        }
+
+        /**
+         * Sets the body size below which requests are sent uncompressed even if compression is enabled,
+         * since compressing small bodies costs more time than it saves. Defaults to 8192 bytes.
+         * @param value The threshold in bytes.
+         * @return The Builder instance.
+         */
+        public Builder setCompressionThreshold(int value) {
+            if (value < 0) {
+                throw new IllegalArgumentException("Compression threshold must not be negative");
+            }
+            this.compressionThreshold = value;
+            return this;
+        }
+
+        /**
+         * Builds and starts a new PooledAsyncHttpClient with the configured settings.
+         * @return A new, started PooledAsyncHttpClient.
+         */
+        public PooledAsyncHttpClient build() {
+            return new PooledAsyncHttpClient(this);
+        }
+    }
+}
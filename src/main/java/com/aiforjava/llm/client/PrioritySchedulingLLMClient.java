@@ -0,0 +1,544 @@
+package com.aiforjava.llm.client;
+
+import com.aiforjava.exception.LLMNetworkException;
+import com.aiforjava.exception.LLMServiceException;
+import com.aiforjava.llm.streams.StreamHandler;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Supplier;
+
+/**
+ * An {@link LLM_Client} decorator that caps the calls in flight to the wrapped backend and decides, whenever a slot
+ * frees up, which waiting call goes next.
+ * <p>
+ * Every call belongs to a session in a {@link RequestPriority} lane; {@link #forSession(String, RequestPriority)}
+ * returns a client bound to one, while calls made on this client directly go to the default session of the
+ * configured lane. Waiting calls are ordered by start-time fair queuing on two levels: first the lane is chosen,
+ * with lanes weighted by their priority, then the session within it, with the sessions of a lane weighted equally.
+ * Lanes therefore share the backend in proportion to their weights however many sessions each one holds, and
+ * sessions in a lane share it equally however many calls each one queues. An interactive turn arriving behind a
+ * thousand queued batch calls from a hundred batch sessions is served next, while batch work keeps a small share.
+ * As a hard bound against starvation, a call that has waited longer than the aging threshold is served before any
+ * other.
+ * <p>
+ * A stream holds its slot until it ends. Queue depth and recent wait times are exposed per lane.
+ */
+public class PrioritySchedulingLLMClient extends ForwardingLLMClient {
+    private static final String DEFAULT_SESSION = "";
+    private static final int MAX_IDLE_FLOWS = 1024;
+
+    private final int maxConcurrentRequests;
+    private final RequestPriority defaultPriority;
+    private final long agingThresholdNanos;
+    private final Map<RequestPriority, LatencyTracker> waitTimes = new EnumMap<>(RequestPriority.class);
+
+    // All fields below are guarded by "this"
+    private final Map<RequestPriority, Lane> lanes = new EnumMap<>(RequestPriority.class);
+    private final Queue<Waiter> arrivals = new ArrayDeque<>();
+    private double virtualTime; // Of the lane level
+    private long sequence;
+    private int inFlight;
+    private int waiting; // Waiters neither served nor cancelled; a slot is only free while this is 0
+
+    private PrioritySchedulingLLMClient(Builder builder) {
+        super(builder.delegate);
+        this.maxConcurrentRequests = builder.maxConcurrentRequests;
+        this.defaultPriority = builder.defaultPriority;
+        this.agingThresholdNanos = builder.agingThreshold.toNanos();
+        for (RequestPriority priority : RequestPriority.values()) {
+            waitTimes.put(priority, new LatencyTracker(200, 95));
+            lanes.put(priority, new Lane(builder.weights.get(priority)));
+        }
+    }
+
+    /**
+     * Returns a client whose calls are scheduled as the given session in the given lane. The returned client is
+     * a lightweight view and is not closeable; close this client instead.
+     *
+     * @param sessionId Identifies the session, e.g. a chat or job ID. Must not be null.
+     * @param priority The lane of the session. Must not be null.
+     * @return The session client.
+     */
+    public LLM_Client forSession(String sessionId, RequestPriority priority) {
+        Objects.requireNonNull(sessionId, "Session ID cannot be null");
+        Objects.requireNonNull(priority, "Priority cannot be null");
+        return new LLM_Client() {
+            @Override
+            public String sendRequest(String endpoint, String json) throws LLMServiceException {
+                return schedule(priority, sessionId, () -> delegate().sendRequest(endpoint, json));
+            }
+
+            @Override
+            public void sendStreamRequest(String endpoint, String json, StreamHandler handler) throws LLMServiceException {
+                schedule(priority, sessionId, () -> {
+                    delegate().sendStreamRequest(endpoint, json, handler);
+                    return null;
+                });
+            }
+
+            @Override
+            public CompletableFuture<String> sendRequestAsync(String endpoint, String json) {
+                return scheduleAsync(priority, sessionId, () -> delegate().sendRequestAsync(endpoint, json));
+            }
+
+            @Override
+            public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, String json, StreamHandler handler) {
+                return scheduleAsync(priority, sessionId, () -> delegate().sendStreamRequestAsync(endpoint, json, handler));
+            }
+
+            @Override
+            public String sendRequest(String endpoint, RequestBody body) throws LLMServiceException {
+                return schedule(priority, sessionId, () -> delegate().sendRequest(endpoint, body));
+            }
+
+            @Override
+            public void sendStreamRequest(String endpoint, RequestBody body, StreamHandler handler) throws LLMServiceException {
+                schedule(priority, sessionId, () -> {
+                    delegate().sendStreamRequest(endpoint, body, handler);
+                    return null;
+                });
+            }
+
+            @Override
+            public CompletableFuture<String> sendRequestAsync(String endpoint, RequestBody body) {
+                return scheduleAsync(priority, sessionId, () -> delegate().sendRequestAsync(endpoint, body));
+            }
+
+            @Override
+            public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, RequestBody body, StreamHandler handler) {
+                return scheduleAsync(priority, sessionId, () -> delegate().sendStreamRequestAsync(endpoint, body, handler));
+            }
+
+            @Override
+            public CompletableFuture<String> sendRequestAsync(String endpoint, RequestBody body, Deadline deadline) {
+                return deadline.bound(() -> scheduleAsync(priority, sessionId, () -> delegate().sendRequestAsync(endpoint, body, deadline)));
+            }
+
+            @Override
+            public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, RequestBody body, StreamHandler handler, Deadline deadline) {
+                return deadline.bound(() -> scheduleAsync(priority, sessionId,
+                        () -> delegate().sendStreamRequestAsync(endpoint, body, handler, deadline)));
+            }
+        };
+    }
+
+    @Override
+    public String sendRequest(String endpoint, String json) throws LLMServiceException {
+        return schedule(defaultPriority, DEFAULT_SESSION, () -> delegate().sendRequest(endpoint, json));
+    }
+
+    @Override
+    public void sendStreamRequest(String endpoint, String json, StreamHandler handler) throws LLMServiceException {
+        schedule(defaultPriority, DEFAULT_SESSION, () -> {
+            delegate().sendStreamRequest(endpoint, json, handler);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, String json) {
+        return scheduleAsync(defaultPriority, DEFAULT_SESSION, () -> delegate().sendRequestAsync(endpoint, json));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, String json, StreamHandler handler) {
+        return scheduleAsync(defaultPriority, DEFAULT_SESSION, () -> delegate().sendStreamRequestAsync(endpoint, json, handler));
+    }
+
+    @Override
+    public String sendRequest(String endpoint, RequestBody body) throws LLMServiceException {
+        return schedule(defaultPriority, DEFAULT_SESSION, () -> delegate().sendRequest(endpoint, body));
+    }
+
+    @Override
+    public void sendStreamRequest(String endpoint, RequestBody body, StreamHandler handler) throws LLMServiceException {
+        schedule(defaultPriority, DEFAULT_SESSION, () -> {
+            delegate().sendStreamRequest(endpoint, body, handler);
+            return null;
+        });
+    }
+
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, RequestBody body) {
+        return scheduleAsync(defaultPriority, DEFAULT_SESSION, () -> delegate().sendRequestAsync(endpoint, body));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, RequestBody body, StreamHandler handler) {
+        return scheduleAsync(defaultPriority, DEFAULT_SESSION, () -> delegate().sendStreamRequestAsync(endpoint, body, handler));
+    }
+
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, RequestBody body, Deadline deadline) {
+        return deadline.bound(() -> scheduleAsync(defaultPriority, DEFAULT_SESSION, () -> delegate().sendRequestAsync(endpoint, body, deadline)));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, RequestBody body, StreamHandler handler, Deadline deadline) {
+        return deadline.bound(() -> scheduleAsync(defaultPriority, DEFAULT_SESSION,
+                () -> delegate().sendStreamRequestAsync(endpoint, body, handler, deadline)));
+    }
+
+    /**
+     * Returns the number of calls waiting for a slot, across all lanes.
+     *
+     * @return The queue depth.
+     */
+    public synchronized int getQueueDepth() {
+        return waiting;
+    }
+
+    /**
+     * Returns the number of calls waiting for a slot in one lane.
+     *
+     * @param priority The lane.
+     * @return The queue depth of the lane.
+     */
+    public synchronized int getQueueDepth(RequestPriority priority) {
+        return lanes.get(priority).queued;
+    }
+
+    /**
+     * Returns the number of calls currently holding a slot.
+     *
+     * @return The calls in flight.
+     */
+    public synchronized int getInFlight() {
+        return inFlight;
+    }
+
+    /**
+     * Returns the 95th percentile of the time recent calls of a lane waited for a slot.
+     *
+     * @param priority The lane.
+     * @return The p95 wait time, or zero if no call of the lane has been scheduled yet.
+     */
+    public Duration getWaitTime(RequestPriority priority) {
+        return Duration.ofNanos(Math.max(0, waitTimes.get(priority).percentileNanos()));
+    }
+
+    private <T> T schedule(RequestPriority priority, String session, RequestCall<T> call) throws LLMServiceException {
+        awaitSlot(enqueue(priority, session));
+        try {
+            return call.send();
+        } finally {
+            release();
+        }
+    }
+
+    private void awaitSlot(CompletableFuture<Void> slot) throws LLMServiceException {
+        try {
+            slot.get();
+        } catch (InterruptedException e) {
+            if (!slot.cancel(false)) {
+                release(); // Granted concurrently with the interrupt
+            }
+            Thread.currentThread().interrupt();
+            throw new LLMNetworkException("Request was Interrupted while waiting for a free call slot", e);
+        } catch (CancellationException | ExecutionException e) {
+            throw new LLMServiceException("Failed to acquire a call slot", e);
+        }
+    }
+
+    private <T> CompletableFuture<T> scheduleAsync(RequestPriority priority, String session, Supplier<CompletableFuture<T>> call) {
+        CompletableFuture<Void> slot = enqueue(priority, session);
+        CompletableFuture<T> result = new CompletableFuture<>();
+        slot.whenComplete((granted, waitFailure) -> {
+            if (waitFailure != null) {
+                return; // Cancelled while waiting, no slot was granted
+            }
+            if (result.isDone()) {
+                release(); // Cancelled while the slot was being granted
+                return;
+            }
+            CompletableFuture<T> inFlightCall;
+            try {
+                inFlightCall = call.get();
+            } catch (RuntimeException e) {
+                inFlightCall = CompletableFuture.failedFuture(e);
+            }
+            CompletableFuture<T> started = inFlightCall;
+            started.whenComplete((value, failure) -> {
+                release();
+                if (failure != null) {
+                    result.completeExceptionally(unwrap(failure));
+                } else {
+                    result.complete(value);
+                }
+            });
+            result.whenComplete((value, failure) -> {
+                if (result.isCancelled()) {
+                    started.cancel(true);
+                }
+            });
+        });
+        result.whenComplete((value, failure) -> {
+            if (result.isCancelled()) {
+                slot.cancel(false);
+            }
+        });
+        return result;
+    }
+
+    /**
+     * Grants a slot at once if one is free and nobody is waiting, otherwise queues the call as the next request
+     * of its session's flow within its lane.
+     */
+    private CompletableFuture<Void> enqueue(RequestPriority priority, String session) {
+        Waiter waiter;
+        synchronized (this) {
+            if (inFlight < maxConcurrentRequests && waiting == 0) {
+                inFlight++;
+                waitTimes.get(priority).record(0);
+                return CompletableFuture.completedFuture(null);
+            }
+            Lane lane = lanes.get(priority);
+            if (lane.flows.size() > MAX_IDLE_FLOWS) {
+                lane.flows.values().removeIf(flow -> flow.queued == 0 && flow.lastFinishTag <= lane.virtualTime);
+            }
+            Flow flow = lane.flows.computeIfAbsent(session, key -> new Flow());
+            double startTag = Math.max(lane.virtualTime, flow.lastFinishTag);
+            flow.lastFinishTag = startTag + 1;
+            flow.queued++;
+            waiter = new Waiter(priority, lane, flow, startTag, sequence++);
+            lane.queue.add(waiter);
+            arrivals.add(waiter);
+            if (lane.queued++ == 0) {
+                lane.startTag = Math.max(virtualTime, lane.finishTag); // The lane rejoins the lane-level schedule
+            }
+            waiting++;
+        }
+        waiter.slot.whenComplete((granted, failure) -> {
+            if (waiter.slot.isCancelled()) {
+                synchronized (this) {
+                    take(waiter);
+                }
+            }
+        });
+        return waiter.slot;
+    }
+
+    /**
+     * Hands the caller's slot to the next waiting call, or frees it if no call is waiting.
+     */
+    private void release() {
+        while (true) {
+            Waiter next;
+            synchronized (this) {
+                next = pollNext();
+                if (next == null) {
+                    inFlight--;
+                    return;
+                }
+            }
+            if (next.slot.complete(null)) {
+                waitTimes.get(next.priority).record(System.nanoTime() - next.enqueuedNanos);
+                return;
+            }
+            // The waiter was cancelled in the meantime; the slot goes to the one after it
+        }
+    }
+
+    private Waiter pollNext() {
+        Waiter oldest = peekLive(arrivals.iterator());
+        if (oldest != null && System.nanoTime() - oldest.enqueuedNanos >= agingThresholdNanos) {
+            serve(oldest); // Aged: served ahead of its fair-queuing turn
+            return oldest;
+        }
+        Lane lane = null;
+        for (Lane candidate : lanes.values()) { // In priority order, so a tie goes to the more urgent lane
+            if (candidate.queued > 0 && (lane == null || candidate.startTag < lane.startTag)) {
+                lane = candidate;
+            }
+        }
+        if (lane == null) {
+            return null;
+        }
+        Waiter next;
+        do {
+            next = lane.queue.poll(); // A queued lane holds at least one live waiter
+        } while (next.taken);
+        lane.virtualTime = Math.max(lane.virtualTime, next.startTag);
+        serve(next);
+        return next;
+    }
+
+    /**
+     * Takes a waiter that is being granted a slot and charges the slot to its lane.
+     */
+    private void serve(Waiter waiter) {
+        Lane lane = waiter.lane;
+        virtualTime = Math.max(virtualTime, lane.startTag);
+        lane.finishTag = lane.startTag + 1.0 / lane.weight;
+        take(waiter);
+        if (lane.queued > 0) {
+            lane.startTag = Math.max(virtualTime, lane.finishTag);
+        }
+    }
+
+    /**
+     * Drops served or cancelled waiters from the head of the arrival queue and returns the oldest live one.
+     */
+    private static Waiter peekLive(Iterator<Waiter> arrivals) {
+        while (arrivals.hasNext()) {
+            Waiter waiter = arrivals.next();
+            if (!waiter.taken) {
+                return waiter;
+            }
+            arrivals.remove();
+        }
+        return null;
+    }
+
+    private void take(Waiter waiter) {
+        if (waiter.taken) {
+            return;
+        }
+        waiter.taken = true; // Left in the other queue and skipped when reached
+        waiter.flow.queued--;
+        waiter.lane.queued--;
+        waiting--;
+    }
+
+    /**
+     * The queueing state of one lane: its place among the lanes, and the sessions queued in it.
+     */
+    private static final class Lane {
+        final int weight;
+        final PriorityQueue<Waiter> queue = new PriorityQueue<>(
+                Comparator.comparingDouble((Waiter waiter) -> waiter.startTag).thenComparingLong(waiter -> waiter.sequence));
+        final Map<String, Flow> flows = new HashMap<>();
+        double virtualTime; // Of the session level within this lane
+        double startTag; // Among the lanes, valid while calls are queued
+        double finishTag;
+        int queued;
+
+        Lane(int weight) {
+            this.weight = weight;
+        }
+    }
+
+    /**
+     * The queueing state of one session in one lane.
+     */
+    private static final class Flow {
+        double lastFinishTag;
+        int queued;
+    }
+
+    private static final class Waiter {
+        final RequestPriority priority;
+        final Lane lane;
+        final Flow flow;
+        final double startTag;
+        final long sequence;
+        final long enqueuedNanos = System.nanoTime();
+        final CompletableFuture<Void> slot = new CompletableFuture<>();
+        boolean taken;
+
+        Waiter(RequestPriority priority, Lane lane, Flow flow, double startTag, long sequence) {
+            this.priority = priority;
+            this.lane = lane;
+            this.flow = flow;
+            this.startTag = startTag;
+            this.sequence = sequence;
+        }
+    }
+
+    /**
+     * Builder class for constructing PrioritySchedulingLLMClient instances.
+     */
+    public static class Builder {
+        private final LLM_Client delegate;
+        private int maxConcurrentRequests = 8;
+        private final Map<RequestPriority, Integer> weights = new EnumMap<>(RequestPriority.class);
+        private RequestPriority defaultPriority = RequestPriority.DEFAULT;
+        private Duration agingThreshold = Duration.ofSeconds(60);
+
+        /**
+         * Creates a builder wrapping the given client.
+         * @param delegate The client calls are scheduled onto. Must not be null.
+         */
+        public Builder(LLM_Client delegate) {
+            this.delegate = Objects.requireNonNull(delegate, "Delegate client cannot be null");
+            weights.put(RequestPriority.INTERACTIVE, 16);
+            weights.put(RequestPriority.DEFAULT, 4);
+            weights.put(RequestPriority.BATCH, 1);
+        }
+
+        /**
+         * Sets how many calls may be in flight to the backend at once; further calls wait in their lane.
+         * Match it to the number of requests the backend processes in parallel. Defaults to 8.
+         * @param value The maximum number of concurrent calls.
+         * @return The Builder instance.
+         */
+        public Builder setMaxConcurrentRequests(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("Max concurrent requests must be greater than 0");
+            }
+            this.maxConcurrentRequests = value;
+            return this;
+        }
+
+        /**
+         * Sets the share of a lane: when every lane has calls waiting, each lane gets slots in proportion to its
+         * weight, however many sessions it holds.
+         * @param priority The lane.
+         * @param weight The weight, at least 1.
+         * @return The Builder instance.
+         */
+        public Builder setWeight(RequestPriority priority, int weight) {
+            Objects.requireNonNull(priority, "Priority cannot be null");
+            if (weight < 1) {
+                throw new IllegalArgumentException("Weight must be at least 1");
+            }
+            this.weights.put(priority, weight);
+            return this;
+        }
+
+        /**
+         * Sets the lane of calls made on the client itself rather than through
+         * {@link PrioritySchedulingLLMClient#forSession(String, RequestPriority)}. Defaults to {@link RequestPriority#DEFAULT}.
+         * @param value The lane.
+         * @return The Builder instance.
+         */
+        public Builder setDefaultPriority(RequestPriority value) {
+            this.defaultPriority = Objects.requireNonNull(value, "Priority cannot be null");
+            return this;
+        }
+
+        /**
+         * Sets how long a call may wait before it is served ahead of all others, whatever its lane. Defaults to 60 seconds.
+         * @param value The aging threshold.
+         * @return The Builder instance.
+         */
+        public Builder setAgingThreshold(Duration value) {
+            Objects.requireNonNull(value, "Aging threshold cannot be null");
+            if (value.isNegative()) {
+                throw new IllegalArgumentException("Aging threshold must not be negative");
+            }
+            this.agingThreshold = value;
+            return this;
+        }
+
+        /**
+         * Builds and returns a new PrioritySchedulingLLMClient instance.
+         * @return A new PrioritySchedulingLLMClient instance.
+         */
+        public PrioritySchedulingLLMClient build() {
+            return new PrioritySchedulingLLMClient(this);
+        }
+    }
+}
@@ -0,0 +1,571 @@
+package com.aiforjava.llm.client;
+
+import com.aiforjava.exception.Exception_Timeout;
+import com.aiforjava.exception.LLMCallRejectedException;
+import com.aiforjava.exception.LLMHttpException;
+import com.aiforjava.exception.LLMNetworkException;
+import com.aiforjava.exception.LLMServiceException;
+import com.aiforjava.llm.streams.StreamHandler;
+import com.aiforjava.llm.streams.StreamResponse;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+
+/**
+ * An {@link LLM_Client} decorator that throttles calls on the client side so that a backend's
+ * requests-per-second and tokens-per-minute ceilings are respected before the server has to answer with 429.
+ * <p>
+ * Both limits are token buckets. Before a call is sent, one request and an estimated token cost are reserved:
+ * the "max_tokens" of the request (sent when set through
+ * {@link com.aiforjava.llm.models.ModelParams.Builder#setMaxTokens(int)}), or the configured default if the request
+ * has none, plus an estimate of the prompt size. When the call completes, the reservation is reconciled with the actual
+ * cost: the "usage.total_tokens" reported in the response for non-streaming calls, or the prompt estimate plus
+ * the size of the streamed output for streams. A call rejected by the server with an HTTP error gets its token
+ * reservation back.
+ * <p>
+ * If the buckets are exhausted, blocking calls sleep until capacity is available and asynchronous calls are
+ * scheduled for later without holding a thread. A call that would have to wait longer than the configured
+ * maximum fails immediately with an {@link LLMCallRejectedException}, and one bound by a {@link Deadline} that would
+ * pass during the wait fails immediately with an {@link Exception_Timeout}, without using up capacity.
+ */
+public class RateLimitedLLMClient extends ForwardingLLMClient {
+    private static final int CHARS_PER_TOKEN = 4; // Rough average for English text with common tokenizers
+    private static final int IMAGE_TOKEN_COST = 100; // Same heuristic as TokenCalculator
+    private static final byte[] IMAGE_MARKER = "data:image".getBytes(StandardCharsets.US_ASCII);
+    private static final byte[] MAX_TOKENS_NAME = "\"max_tokens\"".getBytes(StandardCharsets.US_ASCII);
+    private static final int VALUE_NOT_FOUND = 0;
+    private static final int VALUE_SEPARATOR = 1;
+    private static final int VALUE_DIGITS = 2;
+    private static final int VALUE_DONE = 3;
+
+    private final TokenBucket requestBucket; // Null when requests per second are not limited
+    private final TokenBucket tokenBucket; // Null when tokens per minute are not limited
+    private final int defaultMaxTokens;
+    private final long maxWaitNanos;
+
+    private RateLimitedLLMClient(Builder builder) {
+        super(builder.delegate);
+        this.requestBucket = builder.requestsPerSecond > 0
+                ? new TokenBucket(Math.max(1, builder.requestsPerSecond), builder.requestsPerSecond) : null;
+        this.tokenBucket = builder.tokensPerMinute > 0
+                ? new TokenBucket(builder.tokensPerMinute, builder.tokensPerMinute / 60d) : null;
+        this.defaultMaxTokens = builder.defaultMaxTokens;
+        this.maxWaitNanos = builder.maxWait.toNanos();
+    }
+
+    @Override
+    public String sendRequest(String endpoint, String json) throws LLMServiceException {
+        return limit(estimate(json), () -> delegate().sendRequest(endpoint, json));
+    }
+
+    @Override
+    public void sendStreamRequest(String endpoint, String json, StreamHandler handler) throws LLMServiceException {
+        limitStream(estimate(json), handler, counter -> delegate().sendStreamRequest(endpoint, json, counter));
+    }
+
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, String json) {
+        return limitRequestAsync(estimate(json), () -> delegate().sendRequestAsync(endpoint, json));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, String json, StreamHandler handler) {
+        return limitStreamAsync(estimate(json), handler, counter -> delegate().sendStreamRequestAsync(endpoint, json, counter));
+    }
+
+    @Override
+    public String sendRequest(String endpoint, RequestBody body) throws LLMServiceException {
+        return limit(estimate(body), () -> delegate().sendRequest(endpoint, body));
+    }
+
+    @Override
+    public void sendStreamRequest(String endpoint, RequestBody body, StreamHandler handler) throws LLMServiceException {
+        limitStream(estimate(body), handler, counter -> delegate().sendStreamRequest(endpoint, body, counter));
+    }
+
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, RequestBody body) {
+        return limitRequestAsync(estimate(body), () -> delegate().sendRequestAsync(endpoint, body));
+    }
+
+    @Override
+    public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, RequestBody body, StreamHandler handler) {
+        return limitStreamAsync(estimate(body), handler, counter -> delegate().sendStreamRequestAsync(endpoint, body, counter));
+    }
+
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, RequestBody body, Deadline deadline) {
+        return limitRequestAsync(estimate(body), () -> delegate().sendRequestAsync(endpoint, body, deadline), deadline);
+    }
+
+    @Override
+    public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, RequestBody body, StreamHandler handler, Deadline deadline) {
+        return limitStreamAsync(estimate(body), handler, counter -> delegate().sendStreamRequestAsync(endpoint, body, counter, deadline), deadline);
+    }
+
+    /**
+     * Returns the tokens that can currently be reserved without waiting.
+     *
+     * @return The token balance (negative while calls are waiting), or -1 if tokens per minute are not limited.
+     */
+    public double getAvailableTokens() {
+        return tokenBucket == null ? -1 : tokenBucket.available(System.nanoTime());
+    }
+
+    private long reserve(int tokens) throws LLMCallRejectedException {
+        return reserve(tokens, Deadline.none());
+    }
+
+    /**
+     * Reserves one request and the estimated tokens atomically across both buckets.
+     *
+     * @return The nanoseconds to wait before the call may be sent.
+     * @throws Exception_Timeout If the deadline would pass during the wait; nothing is reserved then.
+     */
+    private synchronized long reserve(int tokens, Deadline deadline) throws LLMCallRejectedException {
+        long now = System.nanoTime();
+        long wait = Math.max(requestBucket == null ? 0 : requestBucket.waitNanos(1, now),
+                tokenBucket == null ? 0 : tokenBucket.waitNanos(tokens, now));
+        if (wait > maxWaitNanos) {
+            throw new LLMCallRejectedException("Rate limit exceeded: the call would have to wait "
+                    + TimeUnit.NANOSECONDS.toMillis(wait) + " ms for capacity");
+        }
+        if (wait > 0 && !deadline.outlasts(wait)) {
+            throw deadline.passesDuring("rate limit capacity");
+        }
+        if (requestBucket != null) {
+            requestBucket.reserve(1, now);
+        }
+        if (tokenBucket != null) {
+            tokenBucket.reserve(tokens, now);
+        }
+        return wait;
+    }
+
+    /**
+     * Gives back a reservation whose call was never sent.
+     */
+    private void cancelReservation(int tokens) {
+        long now = System.nanoTime();
+        if (requestBucket != null) {
+            requestBucket.refund(1, now);
+        }
+        if (tokenBucket != null) {
+            tokenBucket.refund(tokens, now);
+        }
+    }
+
+    /**
+     * Corrects the token reservation with the actual cost; an unknown cost (negative) keeps the reservation.
+     */
+    private void settle(int reserved, int actual) {
+        if (tokenBucket != null && actual >= 0 && actual != reserved) {
+            tokenBucket.refund(reserved - actual, System.nanoTime());
+        }
+    }
+
+    private void settleFailure(int reserved, Throwable failure, int actual) {
+        // The server rejected the call, so no tokens were generated; otherwise charge what is known to be used
+        settle(reserved, failure instanceof LLMHttpException ? 0 : actual);
+    }
+
+    private void sleep(long nanos, int reserved) throws LLMNetworkException {
+        if (nanos <= 0) {
+            return;
+        }
+        try {
+            TimeUnit.NANOSECONDS.sleep(nanos);
+        } catch (InterruptedException e) {
+            cancelReservation(reserved);
+            Thread.currentThread().interrupt();
+            throw new LLMNetworkException("Request was Interrupted while waiting for rate limit capacity", e);
+        }
+    }
+
+    private String limit(Estimate estimate, RequestCall<String> call) throws LLMServiceException {
+        int reserved = estimate.reservation(defaultMaxTokens);
+        sleep(reserve(reserved), reserved);
+        try {
+            String response = call.send();
+            settle(reserved, reportedTotalTokens(response));
+            return response;
+        } catch (LLMServiceException | RuntimeException e) {
+            settleFailure(reserved, e, -1);
+            throw e;
+        }
+    }
+
+    private void limitStream(Estimate estimate, StreamHandler handler, StreamCall call) throws LLMServiceException {
+        int reserved = estimate.reservation(defaultMaxTokens);
+        sleep(reserve(reserved), reserved);
+        OutputCounter counter = new OutputCounter(handler, estimate.promptTokens);
+        try {
+            call.send(counter);
+            settle(reserved, counter.estimatedTotalTokens());
+        } catch (LLMServiceException | RuntimeException e) {
+            settleFailure(reserved, e, counter.estimatedTotalTokens());
+            throw e;
+        }
+    }
+
+    private CompletableFuture<String> limitRequestAsync(Estimate estimate, Supplier<CompletableFuture<String>> call) {
+        return limitRequestAsync(estimate, call, Deadline.none());
+    }
+
+    private CompletableFuture<String> limitRequestAsync(Estimate estimate, Supplier<CompletableFuture<String>> call, Deadline deadline) {
+        int reserved = estimate.reservation(defaultMaxTokens);
+        return limitAsync(reserved, deadline, call, (response, failure) -> {
+            if (failure == null) {
+                settle(reserved, reportedTotalTokens(response));
+            } else {
+                settleFailure(reserved, failure, -1);
+            }
+        });
+    }
+
+    private CompletableFuture<Void> limitStreamAsync(Estimate estimate, StreamHandler handler,
+                                                     Function<StreamHandler, CompletableFuture<Void>> call) {
+        return limitStreamAsync(estimate, handler, call, Deadline.none());
+    }
+
+    private CompletableFuture<Void> limitStreamAsync(Estimate estimate, StreamHandler handler,
+                                                     Function<StreamHandler, CompletableFuture<Void>> call, Deadline deadline) {
+        int reserved = estimate.reservation(defaultMaxTokens);
+        OutputCounter counter = new OutputCounter(handler, estimate.promptTokens);
+        return limitAsync(reserved, deadline, () -> call.apply(counter), (ignored, failure) -> {
+            if (failure == null) {
+                settle(reserved, counter.estimatedTotalTokens());
+            } else {
+                settleFailure(reserved, failure, counter.estimatedTotalTokens());
+            }
+        });
+    }
+
+    private <T> CompletableFuture<T> limitAsync(int reserved, Deadline deadline, Supplier<CompletableFuture<T>> call,
+                                                BiConsumer<T, Throwable> onComplete) {
+        long wait;
+        try {
+            wait = reserve(reserved, deadline);
+        } catch (LLMCallRejectedException | Exception_Timeout e) {
+            return CompletableFuture.failedFuture(e);
+        }
+        CompletableFuture<T> result = new CompletableFuture<>();
+        Runnable start = () -> {
+            if (result.isDone()) {
+                cancelReservation(reserved); // Cancelled while waiting for capacity
+                return;
+            }
+            CompletableFuture<T> inFlight;
+            try {
+                inFlight = call.get();
+            } catch (RuntimeException e) {
+                inFlight = CompletableFuture.failedFuture(e);
+            }
+            inFlight.whenComplete((value, failure) -> {
+                Throwable cause = failure == null ? null : unwrap(failure);
+                onComplete.accept(value, cause);
+                if (cause == null) {
+                    result.complete(value);
+                } else {
+                    result.completeExceptionally(cause);
+                }
+            });
+            CompletableFuture<T> exchange = inFlight;
+            result.whenComplete((value, failure) -> {
+                if (result.isCancelled()) {
+                    exchange.cancel(true);
+                }
+            });
+        };
+        if (wait <= 0) {
+            start.run();
+        } else {
+            CompletableFuture.runAsync(start, CompletableFuture.delayedExecutor(wait, TimeUnit.NANOSECONDS));
+        }
+        return result;
+    }
+
+    private static Estimate estimate(String json) {
+        return new Estimate(requestedMaxTokens(json), estimatePromptTokens(json));
+    }
+
+    /**
+     * Estimates a request held in a {@link RequestBody} in one pass over its chunks, by the same rules as the
+     * String estimators, so that the body never has to be decoded to a string.
+     */
+    static Estimate estimate(RequestBody body) {
+        long chars = 0;
+        int images = 0;
+        int imageMatched = 0; // Bytes of IMAGE_MARKER matched so far
+        boolean inImage = false;
+        int nameMatched = 0; // Bytes of MAX_TOKENS_NAME matched so far
+        boolean nameEscaped = false;
+        int valueState = VALUE_NOT_FOUND;
+        long value = 0;
+        int digits = 0;
+        byte previous = 0;
+        for (int i = 0; i < body.chunkCount(); i++) {
+            ByteBuffer chunk = body.chunk(i);
+            while (chunk.hasRemaining()) {
+                byte b = chunk.get();
+                if (valueState == VALUE_NOT_FOUND) {
+                    if (b == MAX_TOKENS_NAME[nameMatched]) {
+                        if (nameMatched == 0) {
+                            nameEscaped = previous == '\\';
+                        }
+                        if (++nameMatched == MAX_TOKENS_NAME.length) {
+                            // Like the String form, only the first occurrence counts
+                            valueState = nameEscaped ? VALUE_DONE : VALUE_SEPARATOR;
+                        }
+                    } else if (b == MAX_TOKENS_NAME[0]) {
+                        nameMatched = 1;
+                        nameEscaped = previous == '\\';
+                    } else {
+                        nameMatched = 0;
+                    }
+                } else if (valueState == VALUE_SEPARATOR) {
+                    if (b >= '0' && b <= '9') {
+                        valueState = VALUE_DIGITS;
+                        value = b - '0';
+                        digits = 1;
+                    } else if (b != ' ' && b != ':') {
+                        valueState = VALUE_DONE;
+                    }
+                } else if (valueState == VALUE_DIGITS) {
+                    if (b >= '0' && b <= '9' && digits < 10) {
+                        value = value * 10 + (b - '0');
+                        digits++;
+                    } else {
+                        valueState = VALUE_DONE;
+                    }
+                }
+                if (inImage) {
+                    if (b == '"') {
+                        inImage = false;
+                        chars++;
+                    }
+                } else {
+                    if ((b & 0xC0) != 0x80) {
+                        chars++; // Counts characters, not UTF-8 continuation bytes
+                    }
+                    if (b == IMAGE_MARKER[imageMatched]) {
+                        if (++imageMatched == IMAGE_MARKER.length) {
+                            chars -= imageMatched;
+                            images++;
+                            inImage = true;
+                            imageMatched = 0;
+                        }
+                    } else {
+                        imageMatched = b == IMAGE_MARKER[0] ? 1 : 0;
+                    }
+                }
+                previous = b;
+            }
+        }
+        int maxTokens = digits == 0 || value > Integer.MAX_VALUE ? -1 : (int) value;
+        int promptTokens = (int) Math.min(Integer.MAX_VALUE, chars / CHARS_PER_TOKEN + (long) images * IMAGE_TOKEN_COST);
+        return new Estimate(maxTokens, promptTokens);
+    }
+
+    /**
+     * Estimates the prompt size from the request JSON by character count. Inline base64 images are
+     * skipped and charged a flat cost, since their encoded size says nothing about their token cost.
+     */
+    static int estimatePromptTokens(String json) {
+        int chars = json.length();
+        int images = 0;
+        int from = 0;
+        int start;
+        while ((start = json.indexOf("data:image", from)) >= 0) {
+            int end = json.indexOf('"', start);
+            if (end < 0) {
+                end = json.length();
+            }
+            chars -= end - start;
+            images++;
+            from = end;
+        }
+        return chars / CHARS_PER_TOKEN + images * IMAGE_TOKEN_COST;
+    }
+
+    /**
+     * Reads the top-level "max_tokens" of the request without parsing the whole JSON.
+     *
+     * @return The value, or -1 if the request does not set it.
+     */
+    static int requestedMaxTokens(String json) {
+        return readIntField(json, "\"max_tokens\"", false);
+    }
+
+    /**
+     * Reads "usage.total_tokens" from a completion response. The usage object normally comes last,
+     * so the response is searched from the end.
+     *
+     * @return The value, or -1 if the response does not report usage.
+     */
+    static int reportedTotalTokens(String response) {
+        return readIntField(response, "\"total_tokens\"", true);
+    }
+
+    private static int readIntField(String json, String quotedName, boolean fromEnd) {
+        int index = fromEnd ? json.lastIndexOf(quotedName) : json.indexOf(quotedName);
+        if (index <= 0 || json.charAt(index - 1) == '\\') {
+            return -1; // Missing, or only present inside an escaped string
+        }
+        int i = index + quotedName.length();
+        while (i < json.length() && (json.charAt(i) == ' ' || json.charAt(i) == ':')) {
+            i++;
+        }
+        long value = 0;
+        int digits = 0;
+        while (i < json.length() && Character.isDigit(json.charAt(i)) && digits < 10) {
+            value = value * 10 + (json.charAt(i++) - '0');
+            digits++;
+        }
+        return digits == 0 || value > Integer.MAX_VALUE ? -1 : (int) value;
+    }
+
+    /**
+     * The "max_tokens" and estimated prompt size of a request.
+     */
+    static final class Estimate {
+        final int maxTokens; // -1 if the request does not set it
+        final int promptTokens;
+
+        Estimate(int maxTokens, int promptTokens) {
+            this.maxTokens = maxTokens;
+            this.promptTokens = promptTokens;
+        }
+
+        /**
+         * Returns the tokens to reserve: the "max_tokens" of the request, or the given default, plus the prompt size.
+         */
+        int reservation(int defaultMaxTokens) {
+            return (maxTokens > 0 ? maxTokens : defaultMaxTokens) + promptTokens;
+        }
+    }
+
+    /**
+     * Forwards chunks to the caller's handler while counting the characters of the streamed output.
+     */
+    private static final class OutputCounter implements StreamHandler {
+        private final StreamHandler handler;
+        private final int promptTokens;
+        private final AtomicLong outputChars = new AtomicLong();
+
+        OutputCounter(StreamHandler handler, int promptTokens) {
+            this.handler = handler;
+            this.promptTokens = promptTokens;
+        }
+
+        @Override
+        public void onStream(StreamResponse response) {
+            long chars = 0;
+            if (response.getContent() != null) {
+                chars += response.getContent().length();
+            }
+            if (response.getReasoningContent() != null) {
+                chars += response.getReasoningContent().length();
+            }
+            outputChars.addAndGet(chars);
+            handler.onStream(response);
+        }
+
+        @Override
+        public void onComplete() {
+            handler.onComplete();
+        }
+
+        int estimatedTotalTokens() {
+            return (int) Math.min(Integer.MAX_VALUE, promptTokens + outputChars.get() / CHARS_PER_TOKEN);
+        }
+    }
+
+    /**
+     * Builder class for constructing RateLimitedLLMClient instances.
+     */
+    public static class Builder {
+        private final LLM_Client delegate;
+        private double requestsPerSecond = 0;
+        private long tokensPerMinute = 0;
+        private int defaultMaxTokens = 512;
+        private Duration maxWait = Duration.ofSeconds(60);
+
+        /**
+         * Creates a builder wrapping the given client.
+         * @param delegate The client to throttle. Must not be null.
+         */
+        public Builder(LLM_Client delegate) {
+            this.delegate = Objects.requireNonNull(delegate, "Delegate client cannot be null");
+        }
+
+        /**
+         * Sets the sustained request rate. Bursts of up to one second's worth of requests are allowed.
+         * @param value The requests per second, or 0 (the default) for no limit.
+         * @return The Builder instance.
+         */
+        public Builder setRequestsPerSecond(double value) {
+            if (value < 0) {
+                throw new IllegalArgumentException("Requests per second cannot be negative.");
+            }
+            this.requestsPerSecond = value;
+            return this;
+        }
+
+        /**
+         * Sets the token budget per minute (prompt plus completion tokens).
+         * @param value The tokens per minute, or 0 (the default) for no limit.
+         * @return The Builder instance.
+         */
+        public Builder setTokensPerMinute(long value) {
+            if (value < 0) {
+                throw new IllegalArgumentException("Tokens per minute cannot be negative.");
+            }
+            this.tokensPerMinute = value;
+            return this;
+        }
+
+        /**
+         * Sets the completion size reserved for requests that do not specify "max_tokens".
+         * @param value The default completion tokens, greater than 0.
+         * @return The Builder instance.
+         */
+        public Builder setDefaultMaxTokens(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("Default max tokens must be greater than 0");
+            }
+            this.defaultMaxTokens = value;
+            return this;
+        }
+
+        /**
+         * Sets the longest a call may wait for capacity; calls that would wait longer are rejected.
+         * @param value The maximum wait.
+         * @return The Builder instance.
+         */
+        public Builder setMaxWait(Duration value) {
+            Objects.requireNonNull(value, "Max wait cannot be null");
+            if (value.isNegative()) {
+                throw new IllegalArgumentException("Max wait cannot be negative.");
+            }
+            this.maxWait = value;
+            return this;
+        }
+
+        /**
+         * Builds and returns a new RateLimitedLLMClient instance.
+         * @return A new RateLimitedLLMClient instance.
+         */
+        public RateLimitedLLMClient build() {
+            return new RateLimitedLLMClient(this);
+        }
+    }
+}
@@ -0,0 +1,261 @@
+package com.aiforjava.llm.client;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A request payload held as a list of pooled byte chunks.
+ * <p>
+ * Callers serialize the request straight into {@link #getOutputStream()}, e.g. with a Jackson JsonGenerator,
+ * and the HTTP clients send the chunks as they are. Unlike a JSON String, which is built in full, converted and
+ * then copied once more into the request body, a multi-megabyte request (a long history with base64 images) is
+ * written exactly once, into chunks that are reused by later requests once this body is closed.
+ * <p>
+ * A body can be sent any number of times (e.g. retried) until it is closed. The caller owns it and must close it
+ * once the request that uses it has completed; chunks still referenced by an abandoned exchange are not reused.
+ * Instances are not thread-safe while being written.
+ */
+public final class RequestBody implements AutoCloseable {
+    private static final int CHUNK_SIZE = 16 * 1024;
+    private static final int MAX_POOLED_CHUNKS = 1024; // 16 MiB kept for reuse at most
+    private static final Queue<byte[]> POOL = new ConcurrentLinkedQueue<>();
+    private static final AtomicInteger POOLED = new AtomicInteger();
+
+    private final List<byte[]> chunks = new ArrayList<>();
+    private final AtomicInteger unfinishedPublications = new AtomicInteger();
+    private int lastChunkLength = CHUNK_SIZE; // Forces a new chunk on the first write
+    private long length;
+    private volatile boolean closed;
+
+    /**
+     * Creates an empty body, to be filled through {@link #getOutputStream()}.
+     */
+    public RequestBody() {
+    }
+
+    /**
+     * Creates a body holding the UTF-8 encoding of the given JSON string, for callers that already have one.
+     *
+     * @param json The JSON payload. Must not be null.
+     * @return A new RequestBody.
+     */
+    public static RequestBody of(String json) {
+        Objects.requireNonNull(json, "JSON cannot be null");
+        RequestBody body = new RequestBody();
+        try (Writer writer = new OutputStreamWriter(body.getOutputStream(), StandardCharsets.UTF_8)) {
+            writer.write(json);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e); // The chunk stream never throws
+        }
+        return body;
+    }
+
+    /**
+     * Returns a stream appending to this body. Closing the stream does not close the body.
+     *
+     * @return The output stream.
+     */
+    public OutputStream getOutputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) {
+                ensureWritable();
+                chunks.get(chunks.size() - 1)[lastChunkLength++] = (byte) b;
+                length++;
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) {
+                Objects.checkFromIndexSize(off, len, b.length);
+                while (len > 0) {
+                    ensureWritable();
+                    int n = Math.min(len, CHUNK_SIZE - lastChunkLength);
+                    System.arraycopy(b, off, chunks.get(chunks.size() - 1), lastChunkLength, n);
+                    lastChunkLength += n;
+                    length += n;
+                    off += n;
+                    len -= n;
+                }
+            }
+        };
+    }
+
+    /**
+     * Returns the size of the body in bytes.
+     *
+     * @return The content length.
+     */
+    public long contentLength() {
+        return length;
+    }
+
+    /**
+     * Decodes the body as a UTF-8 string, for clients and decorators that only work with strings.
+     * This makes the full copy the chunked body otherwise avoids.
+     *
+     * @return The body as a string.
+     */
+    public String asString() {
+        checkOpen();
+        byte[] all = new byte[Math.toIntExact(length)];
+        int offset = 0;
+        for (int i = 0; i < chunks.size(); i++) {
+            int n = chunkLength(i);
+            System.arraycopy(chunks.get(i), 0, all, offset, n);
+            offset += n;
+        }
+        return new String(all, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Writes the body to the given stream.
+     *
+     * @param out The stream to write to.
+     * @throws IOException If the stream fails.
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        checkOpen();
+        for (int i = 0; i < chunks.size(); i++) {
+            out.write(chunks.get(i), 0, chunkLength(i));
+        }
+    }
+
+    /**
+     * Returns a publisher emitting the chunks as read-only buffers, one per request of the subscriber.
+     * Every call returns a fresh publisher that starts from the first chunk, so a body can be re-sent.
+     *
+     * @return The publisher.
+     */
+    public Flow.Publisher<ByteBuffer> publisher() {
+        checkOpen();
+        return subscriber -> subscriber.onSubscribe(new ChunkSubscription(subscriber));
+    }
+
+    int chunkCount() {
+        return chunks.size();
+    }
+
+    /**
+     * Returns a read-only view of a chunk.
+     */
+    ByteBuffer chunk(int index) {
+        return ByteBuffer.wrap(chunks.get(index), 0, chunkLength(index)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Records that an exchange starts reading the chunks. They are only returned to the pool if every such
+     * exchange has called {@link #publicationFinished()} by the time the body is closed.
+     */
+    void publicationStarted() {
+        checkOpen();
+        unfinishedPublications.incrementAndGet();
+    }
+
+    void publicationFinished() {
+        unfinishedPublications.decrementAndGet();
+    }
+
+    /**
+     * Releases the chunks for reuse by later requests. Chunks that an exchange may still be reading from
+     * (e.g. one that was cancelled mid-upload) are left to the garbage collector instead.
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (unfinishedPublications.get() == 0) {
+            for (byte[] chunk : chunks) {
+                if (POOLED.incrementAndGet() > MAX_POOLED_CHUNKS) {
+                    POOLED.decrementAndGet();
+                    break;
+                }
+                POOL.offer(chunk);
+            }
+            chunks.clear();
+        }
+    }
+
+    private int chunkLength(int index) {
+        return index == chunks.size() - 1 ? lastChunkLength : CHUNK_SIZE;
+    }
+
+    private void ensureWritable() {
+        checkOpen();
+        if (lastChunkLength == CHUNK_SIZE) {
+            byte[] chunk = POOL.poll();
+            if (chunk != null) {
+                POOLED.decrementAndGet();
+            } else {
+                chunk = new byte[CHUNK_SIZE];
+            }
+            chunks.add(chunk);
+            lastChunkLength = 0;
+        }
+    }
+
+    private void checkOpen() {
+        if (closed) {
+            throw new IllegalStateException("RequestBody is closed");
+        }
+    }
+
+    private final class ChunkSubscription implements Flow.Subscription {
+        private final Flow.Subscriber<? super ByteBuffer> subscriber;
+        private final AtomicLong demand = new AtomicLong();
+        private int next; // Only the thread that raised the demand from 0 emits
+        private volatile boolean done;
+
+        ChunkSubscription(Flow.Subscriber<? super ByteBuffer> subscriber) {
+            this.subscriber = subscriber;
+            publicationStarted();
+        }
+
+        @Override
+        public void request(long n) {
+            if (n <= 0) {
+                cancel();
+                subscriber.onError(new IllegalArgumentException("Demand must be positive: " + n));
+                return;
+            }
+            if (demand.getAndAccumulate(n, (current, add) -> current + add < 0 ? Long.MAX_VALUE : current + add) > 0) {
+                return; // Another call is already emitting and will see the added demand
+            }
+            while (true) {
+                long requested = demand.get();
+                long emitted = 0;
+                while (emitted < requested && !done && next < chunks.size()) {
+                    subscriber.onNext(chunk(next++));
+                    emitted++;
+                }
+                if (!done && next == chunks.size()) {
+                    done = true;
+                    publicationFinished();
+                    subscriber.onComplete();
+                }
+                if (done || demand.addAndGet(-emitted) == 0) {
+                    return;
+                }
+            }
+        }
+
+        @Override
+        public void cancel() {
+            done = true; // The publication stays unfinished: the exchange may still hold buffers
+        }
+    }
+}
@@ -0,0 +1,20 @@
+package com.aiforjava.llm.client;
+
+/**
+ * The lane a call is queued in by {@link PrioritySchedulingLLMClient}. Lanes share the backend in proportion to
+ * their weights, so a burst in a low lane delays a higher lane only by a small fraction of the capacity.
+ */
+public enum RequestPriority {
+    /**
+     * Chat turns a user is waiting for. Weight 16 by default.
+     */
+    INTERACTIVE,
+    /**
+     * Calls that did not ask for a lane. Weight 4 by default.
+     */
+    DEFAULT,
+    /**
+     * Offline bulk jobs that only need throughput. Weight 1 by default.
+     */
+    BATCH
+}
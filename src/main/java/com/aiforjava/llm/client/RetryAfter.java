@@ -0,0 +1,40 @@
+package com.aiforjava.llm.client;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+
+/**
+ * Parses the value of an HTTP "Retry-After" header, which is either a number of seconds or an HTTP date.
+ */
+final class RetryAfter {
+
+    private RetryAfter() {
+    }
+
+    /**
+     * @param value The header value, may be null.
+     * @return The requested delay (zero if the date lies in the past), or null if the header is absent or malformed.
+     */
+    static Duration parse(String value) {
+        if (value == null || value.isBlank()) {
+            return null;
+        }
+        String trimmed = value.trim();
+        try {
+            long seconds = Long.parseLong(trimmed);
+            return seconds < 0 ? null : Duration.ofSeconds(seconds);
+        } catch (NumberFormatException e) {
+            // Not delta-seconds, try the HTTP-date form
+        }
+        try {
+            Instant at = ZonedDateTime.parse(trimmed, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant();
+            Duration delay = Duration.between(Instant.now(), at);
+            return delay.isNegative() ? Duration.ZERO : delay;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,183 @@
+package com.aiforjava.llm.client;
+
+import com.aiforjava.exception.Exception_Timeout;
+import com.aiforjava.exception.LLMHttpException;
+import com.aiforjava.exception.LLMNetworkException;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Decides whether a failed LLM call is retried and how long to wait before the next attempt.
+ * <p>
+ * Timeouts, network errors (connection refused or reset), 408, 429 and 5xx responses are treated as transient;
+ * everything else (4xx client errors, 501/505, parse errors, interruptions, cancellations) is fatal and
+ * surfaces immediately. The wait uses exponential backoff with full jitter, i.e. a uniformly random delay
+ * between zero and min(maxBackoff, initialBackoff * multiplier^(attempt - 1)), so that many clients failing at the
+ * same moment do not retry in lock-step. When a 429 or 503 response carries a "Retry-After" header, that delay
+ * is used instead; if it exceeds {@link Builder#setMaxRetryAfter(Duration)} the call is not retried.
+ * <p>
+ * Instances are immutable and can be shared between clients.
+ */
+public final class RetryPolicy {
+    private final int maxAttempts;
+    private final Duration initialBackoff;
+    private final Duration maxBackoff;
+    private final double multiplier;
+    private final Duration maxRetryAfter;
+
+    private RetryPolicy(Builder builder) {
+        this.maxAttempts = builder.maxAttempts;
+        this.initialBackoff = builder.initialBackoff;
+        this.maxBackoff = builder.maxBackoff;
+        this.multiplier = builder.multiplier;
+        this.maxRetryAfter = builder.maxRetryAfter;
+    }
+
+    /**
+     * @return A policy with the default settings (3 attempts, 500 ms initial backoff, 10 s maximum backoff).
+     */
+    public static RetryPolicy defaults() {
+        return new Builder().build();
+    }
+
+    /**
+     * @return The maximum number of attempts, including the first one.
+     */
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    /**
+     * Classifies a failure as transient (worth retrying) or fatal.
+     *
+     * @param error The exception thrown by the call.
+     * @return True if the failure is transient.
+     */
+    public boolean isRetryable(Throwable error) {
+        if (error instanceof Exception_Timeout) {
+            return true;
+        }
+        if (error instanceof LLMHttpException) {
+            int status = ((LLMHttpException) error).getStatusCode();
+            return status == 408 || status == 429 || (status >= 500 && status != 501 && status != 505);
+        }
+        if (error instanceof LLMNetworkException) {
+            Throwable cause = error.getCause();
+            return !(cause instanceof InterruptedException) && !(cause instanceof CancellationException);
+        }
+        return false;
+    }
+
+    /**
+     * Computes the delay before the next attempt.
+     *
+     * @param failedAttempts The number of attempts made so far (1 after the first failure).
+     * @param error The exception thrown by the last attempt.
+     * @return The delay before retrying, or null if the call must not be retried.
+     */
+    public Duration delayBeforeRetry(int failedAttempts, Throwable error) {
+        if (failedAttempts >= maxAttempts || !isRetryable(error)) {
+            return null;
+        }
+        if (error instanceof LLMHttpException) {
+            LLMHttpException httpError = (LLMHttpException) error;
+            int status = httpError.getStatusCode();
+            if ((status == 429 || status == 503) && httpError.getRetryAfter() != null) {
+                return httpError.getRetryAfter().compareTo(maxRetryAfter) > 0 ? null : httpError.getRetryAfter();
+            }
+        }
+        double exponential = initialBackoff.toMillis() * Math.pow(multiplier, failedAttempts - 1);
+        long cap = (long) Math.min(maxBackoff.toMillis(), exponential);
+        return Duration.ofMillis(ThreadLocalRandom.current().nextLong(cap + 1));
+    }
+
+    /**
+     * Builder class for constructing RetryPolicy instances.
+     */
+    public static class Builder {
+        private int maxAttempts = 3;
+        private Duration initialBackoff = Duration.ofMillis(500);
+        private Duration maxBackoff = Duration.ofSeconds(10);
+        private double multiplier = 2.0;
+        private Duration maxRetryAfter = Duration.ofSeconds(60);
+
+        /**
+         * Sets the maximum number of attempts, including the first one. 1 disables retries.
+         * @param value The number of attempts, at least 1.
+         * @return The Builder instance.
+         */
+        public Builder setMaxAttempts(int value) {
+            if (value < 1) {
+                throw new IllegalArgumentException("Max attempts must be at least 1.");
+            }
+            this.maxAttempts = value;
+            return this;
+        }
+
+        /**
+         * Sets the backoff cap for the first retry.
+         * @param value The initial backoff.
+         * @return The Builder instance.
+         */
+        public Builder setInitialBackoff(Duration value) {
+            Objects.requireNonNull(value, "Initial backoff cannot be null");
+            if (value.isNegative()) {
+                throw new IllegalArgumentException("Initial backoff cannot be negative.");
+            }
+            this.initialBackoff = value;
+            return this;
+        }
+
+        /**
+         * Sets the upper bound of the exponential backoff.
+         * @param value The maximum backoff.
+         * @return The Builder instance.
+         */
+        public Builder setMaxBackoff(Duration value) {
+            Objects.requireNonNull(value, "Max backoff cannot be null");
+            if (value.isNegative()) {
+                throw new IllegalArgumentException("Max backoff cannot be negative.");
+            }
+            this.maxBackoff = value;
+            return this;
+        }
+
+        /**
+         * Sets the factor by which the backoff cap grows with each attempt.
+         * @param value The multiplier, at least 1.0.
+         * @return The Builder instance.
+         */
+        public Builder setMultiplier(double value) {
+            if (value < 1.0) {
+                throw new IllegalArgumentException("Multiplier must be at least 1.0.");
+            }
+            this.multiplier = value;
+            return this;
+        }
+
+        /**
+         * Sets the longest "Retry-After" delay that is honored; longer requests make the call fail immediately.
+         * @param value The maximum Retry-After delay.
+         * @return The Builder instance.
+         */
+        public Builder setMaxRetryAfter(Duration value) {
+            Objects.requireNonNull(value, "Max Retry-After cannot be null");
+            if (value.isNegative()) {
+                throw new IllegalArgumentException("Max Retry-After cannot be negative.");
+            }
+            this.maxRetryAfter = value;
+            return this;
+        }
+
+        /**
+         * Builds and returns a new RetryPolicy instance.
+         * @return A new RetryPolicy instance.
+         */
+        public RetryPolicy build() {
+            return new RetryPolicy(this);
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package com.aiforjava.llm.client;
+
+import com.aiforjava.exception.LLMNetworkException;
+import com.aiforjava.exception.LLMServiceException;
+import com.aiforjava.llm.streams.StreamHandler;
+import com.aiforjava.llm.streams.StreamResponse;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/**
+ * An {@link LLM_Client} decorator that retries transient failures of the wrapped client according to a
+ * {@link RetryPolicy}. Non-streaming requests are retried freely. A stream is only retried while nothing has
+ * been delivered to its handler yet: once the first chunk has reached the caller, replaying the request would
+ * duplicate output, so later failures surface unchanged.
+ * <p>
+ * The blocking methods sleep between attempts on the calling thread. The asynchronous methods schedule the
+ * next attempt with a delayed executor and never block; cancelling the returned future cancels the attempt
+ * in flight and any pending retry. A call bound by a {@link Deadline} is not retried if the deadline would pass
+ * before the backoff ends; the last failure surfaces instead.
+ */
+public class RetryingLLMClient extends ForwardingLLMClient {
+    private static final Logger logger = LoggerFactory.getLogger(RetryingLLMClient.class);
+
+    private final RetryPolicy policy;
+
+    /**
+     * Wraps a client with the default {@link RetryPolicy}.
+     *
+     * @param delegate The client to retry. Must not be null.
+     */
+    public RetryingLLMClient(LLM_Client delegate) {
+        this(delegate, RetryPolicy.defaults());
+    }
+
+    /**
+     * Wraps a client with the given retry policy.
+     *
+     * @param delegate The client to retry. Must not be null.
+     * @param policy The policy deciding which failures are retried and how long to wait. Must not be null.
+     */
+    public RetryingLLMClient(LLM_Client delegate, RetryPolicy policy) {
+        super(delegate);
+        this.policy = Objects.requireNonNull(policy, "Retry policy cannot be null");
+    }
+
+    @Override
+    public String sendRequest(String endpoint, String json) throws LLMServiceException {
+        return retry(endpoint, () -> delegate().sendRequest(endpoint, json), () -> true);
+    }
+
+    @Override
+    public void sendStreamRequest(String endpoint, String json, StreamHandler handler) throws LLMServiceException {
+        DeliveryTracker tracker = new DeliveryTracker(handler);
+        retry(endpoint, () -> {
+            delegate().sendStreamRequest(endpoint, json, tracker);
+            return null;
+        }, () -> !tracker.delivered);
+    }
+
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, String json) {
+        return new AsyncRetry<>(endpoint, () -> delegate().sendRequestAsync(endpoint, json), () -> true).start();
+    }
+
+    @Override
+    public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, String json, StreamHandler handler) {
+        DeliveryTracker tracker = new DeliveryTracker(handler);
+        return new AsyncRetry<>(endpoint, () -> delegate().sendStreamRequestAsync(endpoint, json, tracker), () -> !tracker.delivered).start();
+    }
+
+    @Override
+    public String sendRequest(String endpoint, RequestBody body) throws LLMServiceException {
+        return retry(endpoint, () -> delegate().sendRequest(endpoint, body), () -> true);
+    }
+
+    @Override
+    public void sendStreamRequest(String endpoint, RequestBody body, StreamHandler handler) throws LLMServiceException {
+        DeliveryTracker tracker = new DeliveryTracker(handler);
+        retry(endpoint, () -> {
+            delegate().sendStreamRequest(endpoint, body, tracker);
+            return null;
+        }, () -> !tracker.delivered);
+    }
+
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, RequestBody body) {
+        return new AsyncRetry<>(endpoint, () -> delegate().sendRequestAsync(endpoint, body), () -> true).start();
+    }
+
+    @Override
+    public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, RequestBody body, StreamHandler handler) {
+        DeliveryTracker tracker = new DeliveryTracker(handler);
+        return new AsyncRetry<>(endpoint, () -> delegate().sendStreamRequestAsync(endpoint, body, tracker), () -> !tracker.delivered).start();
+    }
+
+    @Override
+    public CompletableFuture<String> sendRequestAsync(String endpoint, RequestBody body, Deadline deadline) {
+        return new AsyncRetry<>(endpoint, () -> delegate().sendRequestAsync(endpoint, body, deadline), () -> true, deadline).start();
+    }
+
+    @Override
+    public CompletableFuture<Void> sendStreamRequestAsync(String endpoint, RequestBody body, StreamHandler handler, Deadline deadline) {
+        DeliveryTracker tracker = new DeliveryTracker(handler);
+        return new AsyncRetry<>(endpoint, () -> delegate().sendStreamRequestAsync(endpoint, body, tracker, deadline),
+                () -> !tracker.delivered, deadline).start();
+    }
+
+    /**
+     * Runs the attempts of one blocking call, sleeping between them.
+     */
+    private <T> T retry(String endpoint, RequestCall<T> call, BooleanSupplier mayRetry) throws LLMServiceException {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return call.send();
+            } catch (LLMServiceException | RuntimeException e) {
+                Duration delay = mayRetry.getAsBoolean() ? policy.delayBeforeRetry(attempt, e) : null;
+                if (delay == null) {
+                    throw e;
+                }
+                pause(endpoint, attempt, delay, e);
+            }
+        }
+    }
+
+    private void pause(String endpoint, int attempt, Duration delay, Exception failure) throws LLMNetworkException {
+        logRetry(endpoint, attempt, delay, failure);
+        try {
+            Thread.sleep(delay.toMillis());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            LLMNetworkException interrupted = new LLMNetworkException("Request was Interrupted while waiting to retry", e);
+            interrupted.addSuppressed(failure);
+            throw interrupted;
+        }
+    }
+
+    private void logRetry(String endpoint, int attempt, Duration delay, Throwable failure) {
+        logger.warn("Attempt {}/{} for {} failed ({}), retrying in {} ms",
+                attempt, policy.getMaxAttempts(), endpoint, failure.getMessage(), delay.toMillis());
+    }
+
+    /**
+     * Forwards chunks to the caller's handler and remembers whether any chunk was delivered.
+     */
+    private static final class DeliveryTracker implements StreamHandler {
+        private final StreamHandler handler;
+        private volatile boolean delivered;
+
+        DeliveryTracker(StreamHandler handler) {
+            this.handler = handler;
+        }
+
+        @Override
+        public void onStream(StreamResponse response) {
+            delivered = true;
+            handler.onStream(response);
+        }
+
+        @Override
+        public void onComplete() {
+            handler.onComplete();
+        }
+    }
+
+    /**
+     * Drives the attempts of one asynchronous call.
+     */
+    private final class AsyncRetry<T> {
+        private final String endpoint;
+        private final Supplier<CompletableFuture<T>> call;
+        private final BooleanSupplier mayRetry;
+        private final Deadline deadline;
+        private final CompletableFuture<T> result = new CompletableFuture<>();
+        private volatile CompletableFuture<T> inFlight;
+
+        AsyncRetry(String endpoint, Supplier<CompletableFuture<T>> call, BooleanSupplier mayRetry) {
+            this(endpoint, call, mayRetry, Deadline.none());
+        }
+
+        AsyncRetry(String endpoint, Supplier<CompletableFuture<T>> call, BooleanSupplier mayRetry, Deadline deadline) {
+            this.endpoint = endpoint;
+            this.call = call;
+            this.mayRetry = mayRetry;
+            this.deadline = deadline;
+        }
+
+        CompletableFuture<T> start() {
+            result.whenComplete((value, failure) -> {
+                CompletableFuture<T> current = inFlight;
+                if (result.isCancelled() && current != null) {
+                    current.cancel(true);
+                }
+            });
+            attempt(1);
+            return result;
+        }
+
+        private void attempt(int attempt) {
+            if (result.isDone()) {
+                return; // Cancelled while waiting for the retry
+            }
+            CompletableFuture<T> current;
+            try {
+                current = call.get();
+            } catch (RuntimeException e) {
+                current = CompletableFuture.failedFuture(e);
+            }
+            inFlight = current;
+            if (result.isCancelled()) {
+                current.cancel(true);
+                return;
+            }
+            current.whenComplete((value, failure) -> {
+                if (failure == null) {
+                    result.complete(value);
+                    return;
+                }
+                Throwable cause = unwrap(failure);
+                Duration delay = !result.isDone() && mayRetry.getAsBoolean() ? policy.delayBeforeRetry(attempt, cause) : null;
+                if (delay != null && !deadline.outlasts(delay.toNanos())) {
+                    logger.debug("Not retrying {}: the deadline passes within the {} ms backoff", endpoint, delay.toMillis());
+                    delay = null;
+                }
+                if (delay == null) {
+                    result.completeExceptionally(cause);
+                    return;
+                }
+                logRetry(endpoint, attempt, delay, cause);
+                CompletableFuture.runAsync(() -> attempt(attempt + 1),
+                        CompletableFuture.delayedExecutor(delay.toMillis(), TimeUnit.MILLISECONDS));
+            });
+        }
+    }
+}
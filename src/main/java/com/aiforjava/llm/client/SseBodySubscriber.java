@@ -0,0 +1,166 @@
+package com.aiforjava.llm.client;
+
+import com.aiforjava.exception.LLMParseException;
+import com.aiforjava.exception.LLMStreamProcessingException;
+import com.aiforjava.llm.streams.SseEventDecoder;
+import com.aiforjava.llm.streams.StreamHandler;
+import com.aiforjava.llm.streams.StreamResponse;
+import com.aiforjava.llm.streams.StreamResponseParser;
+
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Flow;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link HttpResponse.BodySubscriber} that turns a streaming LLM response into {@link StreamResponse} chunks.
+ * Events are framed directly from the network buffers by a {@link SseEventDecoder}, parsed from their bytes
+ * and handed to the {@link StreamHandler} on the thread that delivers the data, so there is no executor hop
+ * and no intermediate line String per chunk. Demand is signalled one batch of
+ * buffers at a time: the next batch is only requested once the current one is fully dispatched, so a slow
+ * handler slows the connection down instead of piling data up in memory. When a stream delay is configured,
+ * the subscriber pauses between chunks by postponing its demand rather than by sleeping on a thread.
+ */
+final class SseBodySubscriber implements HttpResponse.BodySubscriber<Void> {
+    private final StreamResponseParser parser;
+    private final StreamHandler handler;
+    private final long streamDelayMillis;
+    private final ScheduledExecutorService scheduler;
+    private final CompletableFuture<Void> result = new CompletableFuture<>();
+
+    // All fields below are guarded by "this"
+    private final ArrayDeque<ByteBuffer> pending = new ArrayDeque<>();
+    private final SseEventDecoder decoder = new SseEventDecoder(this::dispatch);
+    private boolean delivered; // Set when the last dispatched event produced a chunk for the handler
+    private Flow.Subscription subscription;
+    private boolean upstreamDone;
+    private boolean paused;
+
+    SseBodySubscriber(StreamResponseParser parser, StreamHandler handler, long streamDelayMillis, ScheduledExecutorService scheduler) {
+        this.parser = parser;
+        this.handler = handler;
+        this.streamDelayMillis = streamDelayMillis;
+        this.scheduler = scheduler;
+    }
+
+    @Override
+    public CompletionStage<Void> getBody() {
+        return result;
+    }
+
+    @Override
+    public synchronized void onSubscribe(Flow.Subscription subscription) {
+        if (this.subscription != null || result.isDone()) {
+            subscription.cancel();
+            return;
+        }
+        this.subscription = subscription;
+        subscription.request(1);
+    }
+
+    @Override
+    public synchronized void onNext(List<ByteBuffer> buffers) {
+        if (result.isDone()) {
+            return;
+        }
+        for (ByteBuffer buffer : buffers) {
+            if (buffer.hasRemaining()) {
+                pending.add(buffer);
+            }
+        }
+        drain();
+    }
+
+    @Override
+    public synchronized void onError(Throwable throwable) {
+        pending.clear();
+        parser.endSession();
+        result.completeExceptionally(throwable);
+    }
+
+    @Override
+    public synchronized void onComplete() {
+        upstreamDone = true;
+        if (!paused) {
+            drain();
+        }
+    }
+
+    /**
+     * Aborts the stream: stops parsing and cancels the subscription, which closes the HTTP exchange.
+     */
+    synchronized void cancel() {
+        pending.clear();
+        parser.endSession();
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        result.cancel(false);
+    }
+
+    private synchronized void resume() {
+        paused = false;
+        drain();
+    }
+
+    /**
+     * Dispatches every complete event that is buffered, then either requests more data, finishes the stream
+     * or, if a delay is configured, schedules itself to continue after the delay.
+     */
+    private void drain() {
+        try {
+            while (!result.isDone() && !pending.isEmpty()) {
+                ByteBuffer buffer = pending.peek();
+                delivered = false;
+                decoder.decode(buffer);
+                if (!buffer.hasRemaining()) {
+                    pending.poll();
+                }
+                if (delivered && streamDelayMillis > 0) {
+                    paused = true;
+                    scheduler.schedule(this::resume, streamDelayMillis, TimeUnit.MILLISECONDS);
+                    return;
+                }
+            }
+            if (result.isDone()) {
+                return;
+            }
+            if (upstreamDone) {
+                decoder.finish(); // Last event without a trailing blank line
+                parser.endSession();
+                handler.onComplete();
+                result.complete(null);
+            } else {
+                subscription.request(1);
+            }
+        } catch (RuntimeException e) {
+            fail(e instanceof LLMStreamProcessingException ? e : new LLMStreamProcessingException("Error during stream processing", e));
+        }
+    }
+
+    private void dispatch(String eventType, byte[] data, int offset, int length) {
+        try {
+            StreamResponse content = parser.parseEvent(eventType, data, offset, length);
+            if (content != null) {
+                handler.onStream(content);
+                delivered = true;
+            }
+        } catch (LLMParseException e) {
+            throw new LLMStreamProcessingException("Error parsing LLM stream response", e);
+        }
+    }
+
+    private void fail(Throwable error) {
+        pending.clear();
+        parser.endSession();
+        if (subscription != null) {
+            subscription.cancel();
+        }
+        result.completeExceptionally(error);
+    }
+}
@@ -0,0 +1,137 @@
+package com.aiforjava.llm.client;
+
+import com.aiforjava.exception.Exception_Timeout;
+import com.aiforjava.llm.streams.StreamHandler;
+import com.aiforjava.llm.streams.StreamResponse;
+
+import java.time.Duration;
+import java.util.function.Consumer;
+
+/**
+ * Enforces the timeouts of one streaming request: the time until the first chunk arrives, the longest gap between
+ * two chunks and the overall duration of the stream. A stalled generation is thus detected after the short idle
+ * timeout, while a long but healthy one, which keeps producing chunks, can run for as long as the total timeout allows.
+ * <p>
+ * The watchdog keeps a single {@link TimerWheel} entry armed for the earliest deadline. Receiving a chunk only
+ * records its arrival time; when the entry fires, the deadlines are checked against that time and the entry is
+ * re-armed for whatever time is left, so the timer is not rescheduled on every chunk.
+ */
+final class StreamWatchdog implements Runnable {
+    private final TimerWheel wheel;
+    private final Duration firstTokenTimeout;
+    private final Duration idleTimeout;
+    private final Duration totalTimeout;
+    private final Consumer<Exception_Timeout> onTimeout;
+    private final long startNanos = System.nanoTime();
+    private volatile long lastChunkNanos;
+    private volatile boolean receivedChunk;
+    private volatile boolean stopped;
+    private volatile TimerWheel.Timeout armed;
+
+    /**
+     * @param firstTokenTimeout The longest wait for the first chunk, counted from the start; zero to disable.
+     * @param idleTimeout The longest gap between two chunks; zero to disable.
+     * @param totalTimeout The longest duration of the whole stream; zero to disable.
+     * @param onTimeout Receives the timeout when one expires, and must abort the stream.
+     */
+    StreamWatchdog(TimerWheel wheel, Duration firstTokenTimeout, Duration idleTimeout, Duration totalTimeout,
+                   Consumer<Exception_Timeout> onTimeout) {
+        this.wheel = wheel;
+        this.firstTokenTimeout = firstTokenTimeout;
+        this.idleTimeout = idleTimeout;
+        this.totalTimeout = totalTimeout;
+        this.onTimeout = onTimeout;
+    }
+
+    /**
+     * Arms the watchdog. Does nothing if every timeout is disabled.
+     */
+    void start() {
+        long delay = nextCheckNanos(System.nanoTime());
+        if (delay >= 0) {
+            armed = wheel.schedule(this, delay);
+        }
+    }
+
+    /**
+     * Wraps a handler so that every chunk it receives is recorded before it is handed on. Time spent in the
+     * handler counts towards the idle timeout, since no further chunk is read until the handler returns.
+     */
+    StreamHandler watch(StreamHandler handler) {
+        return new StreamHandler() {
+            @Override
+            public void onStream(StreamResponse chunk) {
+                lastChunkNanos = System.nanoTime();
+                receivedChunk = true;
+                handler.onStream(chunk);
+            }
+
+            @Override
+            public void onComplete() {
+                handler.onComplete();
+            }
+        };
+    }
+
+    /**
+     * Disarms the watchdog once the stream has ended.
+     */
+    void stop() {
+        stopped = true;
+        TimerWheel.Timeout timeout = armed;
+        if (timeout != null) {
+            timeout.cancel();
+        }
+    }
+
+    @Override
+    public void run() {
+        if (stopped) {
+            return;
+        }
+        long now = System.nanoTime();
+        if (expired(totalTimeout, startNanos, now)) {
+            fire("Stream did not finish within " + describe(totalTimeout));
+        } else if (!receivedChunk && expired(firstTokenTimeout, startNanos, now)) {
+            fire("No response received within " + describe(firstTokenTimeout));
+        } else if (receivedChunk && expired(idleTimeout, lastChunkNanos, now)) {
+            fire("Stream stalled: no data received for " + describe(idleTimeout));
+        } else {
+            long delay = nextCheckNanos(now);
+            if (delay >= 0 && !stopped) {
+                armed = wheel.schedule(this, delay);
+            }
+        }
+    }
+
+    private void fire(String message) {
+        stopped = true;
+        onTimeout.accept(new Exception_Timeout(message, null));
+    }
+
+    /**
+     * Returns the time until the earliest deadline that is still relevant, or -1 if none is.
+     */
+    private long nextCheckNanos(long now) {
+        long next = Long.MAX_VALUE;
+        if (!totalTimeout.isZero()) {
+            next = Math.min(next, startNanos + totalTimeout.toNanos() - now);
+        }
+        if (!receivedChunk && !firstTokenTimeout.isZero()) {
+            next = Math.min(next, startNanos + firstTokenTimeout.toNanos() - now);
+        }
+        if (!idleTimeout.isZero()) {
+            // Before the first chunk this only re-checks once the idle timeout has passed, which is cheap
+            next = Math.min(next, (receivedChunk ? lastChunkNanos : now) + idleTimeout.toNanos() - now);
+        }
+        return next == Long.MAX_VALUE ? -1 : Math.max(0, next);
+    }
+
+    private static boolean expired(Duration timeout, long since, long now) {
+        return !timeout.isZero() && now - since >= timeout.toNanos();
+    }
+
+    static String describe(Duration timeout) {
+        return timeout.toMillis() % 1000 == 0 ? timeout.toSeconds() + " seconds" : timeout.toMillis() + " ms";
+    }
+}
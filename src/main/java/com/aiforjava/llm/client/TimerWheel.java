@@ -0,0 +1,151 @@
+package com.aiforjava.llm.client;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A hashed timer wheel: one daemon thread advances a ring of buckets every tick and runs the tasks whose
+ * deadline has passed. Scheduling and cancelling are O(1) and allocate a single small object, so thousands of
+ * concurrent streams can each keep a timeout armed without a scheduler entry, or a thread, per timeout.
+ * Deadlines are only honoured to the tick, which is plenty for timeouts measured in seconds.
+ * <p>
+ * Tasks run on the wheel thread and must be short, e.g. failing a future or cancelling an exchange.
+ */
+final class TimerWheel {
+    private static final Logger logger = LoggerFactory.getLogger(TimerWheel.class);
+    private static final TimerWheel SHARED = new TimerWheel(TimeUnit.MILLISECONDS.toNanos(50), 512);
+
+    private final long tickNanos;
+    private final List<List<Entry>> buckets;
+    private final int mask;
+    private final Queue<Entry> added = new ConcurrentLinkedQueue<>();
+    private final long startNanos = System.nanoTime();
+    private volatile Thread worker;
+
+    TimerWheel(long tickNanos, int bucketCount) {
+        if (Integer.bitCount(bucketCount) != 1) {
+            throw new IllegalArgumentException("Bucket count must be a power of two");
+        }
+        this.tickNanos = tickNanos;
+        this.mask = bucketCount - 1;
+        this.buckets = new ArrayList<>(bucketCount);
+        for (int i = 0; i < bucketCount; i++) {
+            buckets.add(new ArrayList<>());
+        }
+    }
+
+    /**
+     * Returns the wheel shared by all clients of this process. Its thread is started on first use.
+     */
+    static TimerWheel shared() {
+        return SHARED;
+    }
+
+    /**
+     * Runs the task once the delay has elapsed, unless the returned timeout is cancelled first.
+     *
+     * @param task The task, run on the wheel thread.
+     * @param delayNanos The delay in nanoseconds.
+     * @return A handle to cancel the timeout.
+     */
+    Timeout schedule(Runnable task, long delayNanos) {
+        Entry entry = new Entry(task, System.nanoTime() + Math.max(0, delayNanos));
+        added.add(entry);
+        if (worker == null) {
+            startWorker();
+        }
+        return entry;
+    }
+
+    private synchronized void startWorker() {
+        if (worker == null) {
+            Thread thread = new Thread(this::run, "llm-timer-wheel");
+            thread.setDaemon(true);
+            thread.start();
+            worker = thread;
+        }
+    }
+
+    private void run() {
+        long tick = 0;
+        while (true) {
+            long tickDeadline = startNanos + (tick + 1) * tickNanos;
+            long sleep;
+            while ((sleep = tickDeadline - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, sleep);
+            }
+            transferAdded(tick);
+            expire(buckets.get((int) (tick & mask)));
+            tick++;
+        }
+    }
+
+    /**
+     * Moves newly scheduled timeouts into the bucket of the tick they expire on, counting how many full turns
+     * of the wheel they have to wait.
+     */
+    private void transferAdded(long currentTick) {
+        Entry entry;
+        while ((entry = added.poll()) != null) {
+            if (entry.cancelled) {
+                continue;
+            }
+            long expiryTick = Math.max(currentTick, (entry.deadlineNanos - startNanos + tickNanos - 1) / tickNanos);
+            entry.remainingRounds = (expiryTick - currentTick) / buckets.size();
+            buckets.get((int) (expiryTick & mask)).add(entry);
+        }
+    }
+
+    private void expire(List<Entry> bucket) {
+        for (Iterator<Entry> it = bucket.iterator(); it.hasNext(); ) {
+            Entry entry = it.next();
+            if (entry.cancelled) {
+                it.remove();
+            } else if (entry.remainingRounds > 0) {
+                entry.remainingRounds--;
+            } else {
+                it.remove();
+                try {
+                    entry.task.run();
+                } catch (RuntimeException e) {
+                    logger.warn("Timer task failed: {}", e.getMessage(), e);
+                }
+            }
+        }
+    }
+
+    /**
+     * A scheduled task that has not run yet.
+     */
+    interface Timeout {
+        /**
+         * Prevents the task from running. The entry is dropped from its bucket the next time the wheel passes it.
+         */
+        void cancel();
+    }
+
+    private static final class Entry implements Timeout {
+        final Runnable task;
+        final long deadlineNanos;
+        long remainingRounds; // Only touched by the wheel thread
+        volatile boolean cancelled;
+
+        Entry(Runnable task, long deadlineNanos) {
+            this.task = task;
+            this.deadlineNanos = deadlineNanos;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package com.aiforjava.llm.client;
+
+/**
+ * A token bucket that refills continuously and lets reservations run into debt.
+ * <p>
+ * Instead of refusing a reservation that exceeds the current balance, {@link #reserve(double, long)} takes
+ * the tokens anyway and reports how long the caller has to wait until the debt is paid off. This keeps callers
+ * in arrival order, allows single reservations larger than the capacity, and makes the same bucket usable
+ * from blocking code (sleep for the wait) and asynchronous code (schedule after the wait).
+ * Callers pass in the current {@link System#nanoTime()} so several buckets can be evaluated at the same instant.
+ */
+final class TokenBucket {
+    private final double capacity;
+    private final double refillPerNano;
+    private double available;
+    private long lastRefill;
+
+    /**
+     * @param capacity The maximum number of tokens the bucket holds (the burst size).
+     * @param refillPerSecond The number of tokens added per second.
+     */
+    TokenBucket(double capacity, double refillPerSecond) {
+        this.capacity = capacity;
+        this.refillPerNano = refillPerSecond / 1_000_000_000d;
+        this.available = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * Computes how long a reservation of the given size would have to wait, without taking anything.
+     */
+    synchronized long waitNanos(double amount, long now) {
+        refill(now);
+        double deficit = amount - available;
+        return deficit <= 0 ? 0 : (long) Math.ceil(deficit / refillPerNano);
+    }
+
+    /**
+     * Takes the tokens, going into debt if necessary.
+     *
+     * @return The nanoseconds until the reservation is covered.
+     */
+    synchronized long reserve(double amount, long now) {
+        long wait = waitNanos(amount, now);
+        available -= amount;
+        return wait;
+    }
+
+    /**
+     * Returns tokens, e.g. for a cancelled call or when the actual cost was lower than reserved.
+     * A negative amount charges additional tokens.
+     */
+    synchronized void refund(double amount, long now) {
+        refill(now);
+        available = Math.min(capacity, available + amount);
+    }
+
+    /**
+     * @return The current balance; negative while reservations are waiting for refill.
+     */
+    synchronized double available(long now) {
+        refill(now);
+        return available;
+    }
+
+    private void refill(long now) {
+        available = Math.min(capacity, available + (now - lastRefill) * refillPerNano);
+        lastRefill = now;
+    }
+}
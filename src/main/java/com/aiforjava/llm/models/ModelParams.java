@@ -12,6 +12,8 @@ public class ModelParams {
     private double temperature = 0.7;
     // The maximum number of tokens (words or sub-word units) the LLM should generate in its response.
     private int maxTokens = 512;
+    // Whether maxTokens was set explicitly; only then is it sent, so that the server's own limit applies otherwise.
+    private boolean maxTokensSet = false;
     // Controls diversity via nucleus sampling. The model considers tokens whose cumulative probability
     // exceeds `topP`. Lower values (e.g., 0.1) result in more focused output.
     private double topP = 0.9;
@@ -54,6 +56,7 @@ public class ModelParams {
                 throw new IllegalArgumentException("Max tokens must be greater than 0");
             }
             params.maxTokens = value;
+            params.maxTokensSet = true;
             return this;
         }
 
@@ -131,6 +134,14 @@ public class ModelParams {
         return maxTokens;
     }
 
+    /**
+     * Returns whether the maximum tokens were set explicitly through the builder.
+     * @return True if set, false if {@link #getMaxTokens()} returns the default.
+     */
+    public boolean isMaxTokensSet() {
+        return maxTokensSet;
+    }
+
     /**
      * Returns the top-p setting.
      * @return The top-p value.
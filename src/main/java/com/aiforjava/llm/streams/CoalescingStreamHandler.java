@@ -0,0 +1,182 @@
+package com.aiforjava.llm.streams;
+
+import java.time.Duration;
+import java.util.Objects;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A {@link StreamHandler} that merges the many small chunks of a stream into fewer, larger ones before handing them
+ * to another handler. A fast model produces a delta per token, and repainting a UI, sending a websocket frame or
+ * writing a log line for each of them costs far more than the token itself. This handler passes a chunk on at once
+ * if nothing was passed on during the last flush interval, and otherwise buffers content and reasoning until the
+ * interval has elapsed or the buffer reaches its size limit. A 16 ms interval thus delivers at most one chunk per
+ * frame of a 60 Hz display, whatever the token rate. What is still buffered is passed on when the stream completes.
+ * <p>
+ * The wrapped handler is never called concurrently and receives the text in order. Buffered content that is due
+ * while no chunk arrives is passed on from a scheduler thread; if the wrapped handler throws there, the exception
+ * is rethrown to the stream with the next chunk or on completion.
+ */
+public final class CoalescingStreamHandler implements StreamHandler {
+    private static final ScheduledExecutorService SHARED_SCHEDULER = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "llm-stream-coalescer");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private final StreamHandler delegate;
+    private final long flushIntervalNanos;
+    private final int maxBufferedChars;
+    private final ScheduledExecutorService scheduler;
+
+    // All fields below are guarded by "this"
+    private final StringBuilder content = new StringBuilder();
+    private final StringBuilder reasoning = new StringBuilder();
+    private boolean hasContent;
+    private boolean hasReasoning;
+    private long lastFlushNanos;
+    private ScheduledFuture<?> scheduledFlush;
+    private RuntimeException failure; // Thrown by the wrapped handler during a scheduled flush
+
+    private CoalescingStreamHandler(Builder builder) {
+        this.delegate = builder.delegate;
+        this.flushIntervalNanos = builder.flushInterval.toNanos();
+        this.maxBufferedChars = builder.maxBufferedChars;
+        this.scheduler = builder.scheduler != null ? builder.scheduler : SHARED_SCHEDULER;
+        this.lastFlushNanos = System.nanoTime() - flushIntervalNanos; // The first chunk is passed on at once
+    }
+
+    @Override
+    public synchronized void onStream(StreamResponse response) {
+        throwPendingFailure();
+        if (response.getContent() != null) {
+            content.append(response.getContent());
+            hasContent = true;
+        }
+        if (response.getReasoningContent() != null) {
+            reasoning.append(response.getReasoningContent());
+            hasReasoning = true;
+        }
+        long now = System.nanoTime();
+        long sinceLastFlush = now - lastFlushNanos;
+        if (sinceLastFlush >= flushIntervalNanos || content.length() + reasoning.length() >= maxBufferedChars) {
+            flush();
+        } else if (scheduledFlush == null) {
+            scheduledFlush = scheduler.schedule(this::scheduledFlush, flushIntervalNanos - sinceLastFlush, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Passes on what is still buffered, then completes the wrapped handler.
+     */
+    @Override
+    public synchronized void onComplete() {
+        throwPendingFailure();
+        flush();
+        delegate.onComplete();
+    }
+
+    /**
+     * Passes on the buffered content and reasoning, if any, as one chunk. Called automatically; callers only need
+     * it to show the partial output of a stream that failed or was cancelled.
+     */
+    public synchronized void flush() {
+        if (scheduledFlush != null) {
+            scheduledFlush.cancel(false);
+            scheduledFlush = null;
+        }
+        lastFlushNanos = System.nanoTime();
+        if (!hasContent && !hasReasoning) {
+            return;
+        }
+        StreamResponse merged = new StreamResponse(hasContent ? content.toString() : null, hasReasoning ? reasoning.toString() : null);
+        content.setLength(0);
+        reasoning.setLength(0);
+        hasContent = false;
+        hasReasoning = false;
+        delegate.onStream(merged);
+    }
+
+    private synchronized void scheduledFlush() {
+        if (scheduledFlush == null) {
+            return; // Already flushed by a chunk
+        }
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            failure = e;
+        }
+    }
+
+    private void throwPendingFailure() {
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Provides a fluent API for the flush interval and buffer size.
+     */
+    public static class Builder {
+        private final StreamHandler delegate;
+        private Duration flushInterval = Duration.ofMillis(16);
+        private int maxBufferedChars = 4096;
+        private ScheduledExecutorService scheduler;
+
+        /**
+         * @param delegate The handler that receives the merged chunks. Must not be null.
+         */
+        public Builder(StreamHandler delegate) {
+            this.delegate = Objects.requireNonNull(delegate, "Delegate handler cannot be null");
+        }
+
+        /**
+         * Sets the longest time a chunk is held back. Defaults to 16 ms, one frame at 60 Hz.
+         * @param value The interval. Must be greater than 0.
+         * @return The builder instance.
+         */
+        public Builder setFlushInterval(Duration value) {
+            Objects.requireNonNull(value, "Flush interval cannot be null");
+            if (value.isNegative() || value.isZero()) {
+                throw new IllegalArgumentException("Flush interval must be greater than 0");
+            }
+            this.flushInterval = value;
+            return this;
+        }
+
+        /**
+         * Sets the number of buffered characters, content and reasoning together, at which the buffer is passed on
+         * without waiting for the interval. Defaults to 4096.
+         * @param value The size limit. Must be greater than 0.
+         * @return The builder instance.
+         */
+        public Builder setMaxBufferedChars(int value) {
+            if (value <= 0) {
+                throw new IllegalArgumentException("Max buffered chars must be greater than 0");
+            }
+            this.maxBufferedChars = value;
+            return this;
+        }
+
+        /**
+         * Sets the scheduler that passes on buffered chunks when no further chunk arrives. Defaults to a daemon
+         * thread shared by all coalescing handlers. The scheduler is not shut down by the handler.
+         * @param value The scheduler.
+         * @return The builder instance.
+         */
+        public Builder setScheduler(ScheduledExecutorService value) {
+            this.scheduler = Objects.requireNonNull(value, "Scheduler cannot be null");
+            return this;
+        }
+
+        /**
+         * Builds and returns a new CoalescingStreamHandler instance.
+         * @return A new CoalescingStreamHandler instance.
+         */
+        public CoalescingStreamHandler build() {
+            return new CoalescingStreamHandler(this);
+        }
+    }
+}
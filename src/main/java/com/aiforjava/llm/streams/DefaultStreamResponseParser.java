@@ -1,54 +1,206 @@
 package com.aiforjava.llm.streams;
 
 import com.aiforjava.exception.LLMParseException;
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteArrayFeeder;
 import java.io.IOException;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.nio.charset.StandardCharsets;
 
 /**
  * Default implementation of {@link StreamResponseParser} for parsing common LLM streaming JSON responses.
  * This parser expects a format similar to OpenAI's streaming API, where each line starts with "data: "
  * and contains a JSON object with a "choices" array, and a "delta" object with "content".
+ * Events framed by {@link SseEventDecoder} are read by Jackson straight from their bytes.
+ * <p>
+ * Rather than building a tree of the whole chunk, the parser walks its tokens and stops at the first choice's
+ * delta: the other fields (id, model, created, usage, further choices) are skipped without creating Strings or
+ * nodes for them, so a chunk costs little more than the content it carries.
+ * <p>
+ * An instance holds the state of a single stream: whether its first content chunk has been seen, whose leading
+ * whitespace is stripped, and one non-blocking Jackson parser that every event of the stream is fed into, so no
+ * parser is created per chunk. Clients call {@link #newSession()} for each stream, so the instance passed to a
+ * client can be shared by any number of concurrent streams. An instance itself is not thread-safe. The Jackson
+ * parser is closed, returning its buffers to the factory's recycler, when the stream sends [DONE] or ends.
  */
 public class DefaultStreamResponseParser implements StreamResponseParser {
 
-    private final ObjectMapper mapper = new ObjectMapper();
-    private final AtomicBoolean isFirstChunk = new AtomicBoolean(true);
+    // Thread-safe; its parsers share the interned field-name table and, once closed, recycle their buffers
+    private static final JsonFactory JSON_FACTORY = new JsonFactory();
+
+    private static final byte[] DONE = {'[', 'D', 'O', 'N', 'E', ']'};
+
+    private boolean firstChunk = true;
+    private JsonParser parser; // Created on the first event; replaced after malformed input
+
+    /**
+     * Returns a new parser for one stream, with none of this parser's state.
+     */
+    @Override
+    public StreamResponseParser newSession() {
+        return new DefaultStreamResponseParser();
+    }
 
     @Override
     public StreamResponse parse(String line) throws LLMParseException {
         if (line.startsWith("data: ")) {
-            String jsonData = line.substring(6).trim();
-            if (jsonData.equals("[DONE]")) {
-                return null; // Signal end of stream
-            }
-            try {
-                JsonNode rootNode = mapper.readTree(jsonData);
-                JsonNode choices = rootNode.path("choices");
-                if (choices.isArray() && !choices.isEmpty()) {
-                    JsonNode deltaNode = choices.get(0).path("delta");
-                    JsonNode contentNode = deltaNode.path("content");
-                    JsonNode reasoningNode = deltaNode.path("reasoning_content");
-
-                    String content = null;
-                    if (!contentNode.isMissingNode()) {
-                        content = contentNode.asText();
-                        if (isFirstChunk.getAndSet(false) && content != null) {
-                            content = content.stripLeading();
-                        }
-                    }
-
-                    String reasoningContent = reasoningNode.isMissingNode() ? null : reasoningNode.asText();
-
-                    if (content != null || reasoningContent != null) {
-                        return new StreamResponse(content, reasoningContent);
-                    }
+            byte[] data = line.substring(6).getBytes(StandardCharsets.UTF_8);
+            return parseEvent(null, data, 0, data.length);
+        }
+        return null; // Ignore lines that don't start with "data: "
+    }
+
+    /**
+     * Parses the event data directly from the decoder's bytes, without building a String for the line or the JSON.
+     */
+    @Override
+    public StreamResponse parseEvent(String eventType, byte[] data, int offset, int length) throws LLMParseException {
+        int start = offset;
+        int end = offset + length;
+        while (start < end && isWhitespace(data[start])) {
+            start++;
+        }
+        while (end > start && isWhitespace(data[end - 1])) {
+            end--;
+        }
+        if (end == start) {
+            return null; // Empty event
+        }
+        if (isDone(data, start, end)) {
+            closeParser(); // End of stream signal, no further events are expected
+            return null;
+        }
+        try {
+            if (parser == null) {
+                parser = JSON_FACTORY.createNonBlockingByteArrayParser();
+            }
+            ByteArrayFeeder feeder = (ByteArrayFeeder) parser.getNonBlockingInputFeeder();
+            feeder.feedInput(data, start, end);
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                closeParser(); // Not an object, possibly incomplete: start the next event on a clean parser
+                return null;
+            }
+            StreamResponse response = null;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String field = parser.currentName();
+                JsonToken value = parser.nextToken();
+                if ("choices".equals(field) && value == JsonToken.START_ARRAY) {
+                    response = parseFirstChoice();
+                    break;
+                }
+                parser.skipChildren(); // id, model, created, usage, ... are skipped without being materialized
+            }
+            skipToEndOfEvent();
+            if (!feeder.needMoreInput()) {
+                closeParser(); // Trailing content after the object is ignored
+            }
+            return response;
+        } catch (IOException e) {
+            closeParser();
+            throw new LLMParseException("Failed to parse streaming LLM response JSON: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Closes the Jackson parser of the stream, if one is open.
+     */
+    @Override
+    public void endSession() {
+        closeParser();
+    }
+
+    /**
+     * Reads the delta of the first choice, with the parser positioned on the start of the choices array.
+     */
+    private StreamResponse parseFirstChoice() throws IOException {
+        if (parser.nextToken() != JsonToken.START_OBJECT) {
+            return null;
+        }
+        String content = null;
+        String reasoningContent = null;
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String field = parser.currentName();
+            JsonToken value = parser.nextToken();
+            if (!"delta".equals(field) || value != JsonToken.START_OBJECT) {
+                parser.skipChildren();
+                continue;
+            }
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String deltaField = parser.currentName();
+                JsonToken deltaValue = parser.nextToken();
+                if ("content".equals(deltaField)) {
+                    content = scalarText(deltaValue);
+                } else if ("reasoning_content".equals(deltaField)) {
+                    reasoningContent = scalarText(deltaValue);
+                } else {
+                    parser.skipChildren();
                 }
-            } catch (IOException e) {
-                throw new LLMParseException("Failed to parse streaming LLM response JSON: " + e.getMessage(), e);
+            }
+            break;
+        }
+
+        if (content != null && firstChunk) {
+            firstChunk = false;
+            content = content.stripLeading();
+        }
+        if (content != null || reasoningContent != null) {
+            return new StreamResponse(content, reasoningContent);
+        }
+        return null;
+    }
+
+    /**
+     * Reads the rest of the event's object, so that the parser is ready for the next event of the stream.
+     */
+    private void skipToEndOfEvent() throws IOException {
+        while (!parser.getParsingContext().inRoot()) {
+            JsonToken token = parser.nextToken();
+            if (token == null || token == JsonToken.NOT_AVAILABLE) {
+                throw new IOException("Unexpected end of event data");
+            }
+        }
+    }
+
+    /**
+     * Returns the text of a scalar value; null for a JSON null, which some servers send for an absent content.
+     */
+    private String scalarText(JsonToken value) throws IOException {
+        if (value == JsonToken.VALUE_NULL) {
+            return null;
+        }
+        if (value.isStructStart()) {
+            parser.skipChildren();
+            return null;
+        }
+        return parser.getText();
+    }
+
+    private void closeParser() {
+        if (parser == null) {
+            return;
+        }
+        try {
+            parser.close();
+        } catch (IOException e) {
+            // Nothing to release beyond the recycled buffers; the parser is dropped either way
+        }
+        parser = null;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t' || b == '\r' || b == '\n';
+    }
+
+    private static boolean isDone(byte[] data, int start, int end) {
+        if (end - start != DONE.length) {
+            return false;
+        }
+        for (int i = 0; i < DONE.length; i++) {
+            if (data[start + i] != DONE[i]) {
+                return false;
             }
         }
-        return null; // Ignore lines that don't start with "data: " or don't contain content
+        return true;
     }
-}
\ No newline at end of file
+}
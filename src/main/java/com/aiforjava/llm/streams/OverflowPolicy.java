@@ -0,0 +1,24 @@
+package com.aiforjava.llm.streams;
+
+/**
+ * What a {@link StreamPublisher} does with a new chunk when its buffer is full because the subscriber has not
+ * requested more.
+ */
+public enum OverflowPolicy {
+    /**
+     * Holds up the stream until the subscriber makes room: the thread delivering the stream's chunks waits. The
+     * connection then stops being read, so the backend is slowed down to the pace of the subscriber and no chunk is
+     * lost. This is the default. It requires a client that delivers each stream on its own thread, as the bundled
+     * clients do; see {@link StreamPublisher}.
+     */
+    BLOCK,
+    /**
+     * Discards the oldest buffered chunk to make room. The stream keeps its pace, but the text the subscriber
+     * receives has gaps; suited to consumers that only sample the output, such as progress displays.
+     */
+    DROP_OLDEST,
+    /**
+     * Keeps only the newest chunk, whatever the buffer size: every new chunk replaces the one still waiting.
+     */
+    LATEST_ONLY
+}
@@ -0,0 +1,274 @@
+package com.aiforjava.llm.streams;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * An incremental Server-Sent-Events decoder that frames events directly from network {@link ByteBuffer}s.
+ * It follows the text/event-stream format: lines end with LF, CRLF or CR, lines starting with ':' are comments,
+ * consecutive "data:" fields are joined with a newline, and a blank line dispatches the event. The "event:",
+ * "id:" and "retry:" fields are tracked as well.
+ * <p>
+ * Event payloads are handed to the {@link EventListener} as a slice of a reused byte array, so decoding an
+ * event allocates nothing; only the rarely used "event:" and "id:" values are turned into Strings.
+ * Lines that lie entirely inside one heap buffer are read in place without being copied first.
+ * <p>
+ * A decoder holds the state of a single stream and is not thread-safe.
+ */
+public final class SseEventDecoder {
+
+    /**
+     * Receives every dispatched event.
+     */
+    @FunctionalInterface
+    public interface EventListener {
+        /**
+         * Called for each complete event that carries data.
+         *
+         * @param eventType The value of the "event:" field, or null for the default "message" type.
+         * @param data The array holding the event data. It is reused after this call returns and must not be retained.
+         * @param offset The start of the data within the array.
+         * @param length The number of data bytes (multiple data lines are joined with '\n').
+         */
+        void onEvent(String eventType, byte[] data, int offset, int length);
+    }
+
+    private static final byte[] FIELD_DATA = {'d', 'a', 't', 'a'};
+    private static final byte[] FIELD_EVENT = {'e', 'v', 'e', 'n', 't'};
+    private static final byte[] FIELD_ID = {'i', 'd'};
+    private static final byte[] FIELD_RETRY = {'r', 'e', 't', 'r', 'y'};
+
+    private final EventListener listener;
+
+    private byte[] line = new byte[256];
+    private int lineLength;
+    private byte[] data = new byte[1024];
+    private int dataLength;
+    private boolean hasData;
+    private String eventType;
+    private String lastEventId;
+    private long retryMillis = -1;
+    private boolean skipNextLineFeed; // The previous line ended with CR, so a directly following LF belongs to it
+    private boolean started;
+
+    /**
+     * Creates a decoder for one stream.
+     *
+     * @param listener The listener receiving the dispatched events.
+     */
+    public SseEventDecoder(EventListener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Consumes bytes from the buffer until one event has been dispatched or the buffer is exhausted.
+     * Bytes of an incomplete line are retained until the next call.
+     *
+     * @param buffer The network buffer; its position is advanced past the consumed bytes.
+     * @return True if an event was dispatched (the buffer may still have remaining bytes).
+     */
+    public boolean decode(ByteBuffer buffer) {
+        if (!started && buffer.hasRemaining()) {
+            started = true;
+            skipByteOrderMark(buffer);
+        }
+        while (buffer.hasRemaining()) {
+            if (skipNextLineFeed) {
+                skipNextLineFeed = false;
+                if (buffer.get(buffer.position()) == '\n') {
+                    buffer.position(buffer.position() + 1);
+                    continue;
+                }
+            }
+            if (lineLength == 0 && buffer.hasArray()) {
+                // Fast path: look for the whole line inside the backing array and process it in place
+                byte[] array = buffer.array();
+                int start = buffer.arrayOffset() + buffer.position();
+                int limit = buffer.arrayOffset() + buffer.limit();
+                int end = indexOfLineEnd(array, start, limit);
+                if (end < 0) {
+                    appendToLine(array, start, limit - start);
+                    buffer.position(buffer.limit());
+                    return false;
+                }
+                skipNextLineFeed = array[end] == '\r';
+                buffer.position(end + 1 - buffer.arrayOffset());
+                if (processLine(array, start, end)) {
+                    return true;
+                }
+            } else {
+                byte b = buffer.get();
+                if (b == '\n' || b == '\r') {
+                    skipNextLineFeed = b == '\r';
+                    int length = lineLength;
+                    lineLength = 0;
+                    if (processLine(line, 0, length)) {
+                        return true;
+                    }
+                } else {
+                    if (lineLength == line.length) {
+                        line = Arrays.copyOf(line, line.length * 2);
+                    }
+                    line[lineLength++] = b;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Signals the end of the stream. A trailing line without a terminator is processed and pending data is
+     * dispatched, since some servers close the connection without the final blank line.
+     *
+     * @return True if an event was dispatched.
+     */
+    public boolean finish() {
+        boolean dispatched = false;
+        if (lineLength > 0) {
+            int length = lineLength;
+            lineLength = 0;
+            dispatched = processLine(line, 0, length);
+        }
+        return dispatchEvent() || dispatched;
+    }
+
+    /**
+     * Returns the last event ID received on this stream.
+     *
+     * @return The last "id:" value, or null if none was sent.
+     */
+    public String getLastEventId() {
+        return lastEventId;
+    }
+
+    /**
+     * Returns the reconnection time requested by the server.
+     *
+     * @return The last valid "retry:" value in milliseconds, or -1 if none was sent.
+     */
+    public long getRetryMillis() {
+        return retryMillis;
+    }
+
+    private void skipByteOrderMark(ByteBuffer buffer) {
+        int p = buffer.position();
+        if (buffer.remaining() >= 3 && (buffer.get(p) & 0xFF) == 0xEF && (buffer.get(p + 1) & 0xFF) == 0xBB && (buffer.get(p + 2) & 0xFF) == 0xBF) {
+            buffer.position(p + 3);
+        }
+    }
+
+    private static int indexOfLineEnd(byte[] array, int from, int to) {
+        for (int i = from; i < to; i++) {
+            byte b = array[i];
+            if (b == '\n' || b == '\r') {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private void appendToLine(byte[] source, int offset, int length) {
+        if (lineLength + length > line.length) {
+            line = Arrays.copyOf(line, Math.max(line.length * 2, lineLength + length));
+        }
+        System.arraycopy(source, offset, line, lineLength, length);
+        lineLength += length;
+    }
+
+    /**
+     * Interprets one line (without its terminator).
+     *
+     * @return True if the line was blank and an event was dispatched.
+     */
+    private boolean processLine(byte[] bytes, int start, int end) {
+        if (start == end) {
+            return dispatchEvent();
+        }
+        if (bytes[start] == ':') {
+            return false; // Comment, used by some servers as a keep-alive
+        }
+        int colon = start;
+        while (colon < end && bytes[colon] != ':') {
+            colon++;
+        }
+        int valueStart = colon < end ? colon + 1 : end;
+        if (valueStart < end && bytes[valueStart] == ' ') {
+            valueStart++;
+        }
+
+        if (fieldEquals(bytes, start, colon, FIELD_DATA)) {
+            appendData(bytes, valueStart, end - valueStart);
+        } else if (fieldEquals(bytes, start, colon, FIELD_EVENT)) {
+            eventType = new String(bytes, valueStart, end - valueStart, StandardCharsets.UTF_8);
+        } else if (fieldEquals(bytes, start, colon, FIELD_ID)) {
+            if (indexOf(bytes, valueStart, end, (byte) 0) < 0) {
+                lastEventId = new String(bytes, valueStart, end - valueStart, StandardCharsets.UTF_8);
+            }
+        } else if (fieldEquals(bytes, start, colon, FIELD_RETRY)) {
+            parseRetry(bytes, valueStart, end);
+        }
+        return false; // Unknown fields are ignored
+    }
+
+    private void appendData(byte[] bytes, int offset, int length) {
+        int needed = dataLength + length + (hasData ? 1 : 0);
+        if (needed > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, needed));
+        }
+        if (hasData) {
+            data[dataLength++] = '\n';
+        }
+        System.arraycopy(bytes, offset, data, dataLength, length);
+        dataLength += length;
+        hasData = true;
+    }
+
+    private boolean dispatchEvent() {
+        String type = eventType;
+        eventType = null;
+        if (!hasData) {
+            return false;
+        }
+        int length = dataLength;
+        hasData = false;
+        dataLength = 0;
+        listener.onEvent(type, data, 0, length);
+        return true;
+    }
+
+    private void parseRetry(byte[] bytes, int start, int end) {
+        if (start == end) {
+            return;
+        }
+        long value = 0;
+        for (int i = start; i < end; i++) {
+            if (bytes[i] < '0' || bytes[i] > '9') {
+                return; // Not an integer, ignored per the specification
+            }
+            value = value * 10 + (bytes[i] - '0');
+        }
+        retryMillis = value;
+    }
+
+    private static boolean fieldEquals(byte[] bytes, int start, int end, byte[] field) {
+        if (end - start != field.length) {
+            return false;
+        }
+        for (int i = 0; i < field.length; i++) {
+            if (bytes[start + i] != field[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static int indexOf(byte[] bytes, int start, int end, byte value) {
+        for (int i = start; i < end; i++) {
+            if (bytes[i] == value) {
+                return i;
+            }
+        }
+        return -1;
+    }
+}
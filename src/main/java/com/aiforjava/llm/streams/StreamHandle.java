@@ -0,0 +1,110 @@
+package com.aiforjava.llm.streams;
+
+import com.aiforjava.exception.LLMNetworkException;
+import com.aiforjava.exception.LLMServiceException;
+
+import java.util.Objects;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A handle to a generation that is streaming in the background, returned by the {@code start...Stream} methods
+ * of the chat services. {@link #cancel()} aborts the generation: the HTTP exchange is closed at once, so the
+ * backend stops generating, and no further chunks are handed to the StreamHandler (a chunk that is being delivered
+ * at that moment may still finish).
+ */
+public final class StreamHandle {
+    private final CompletableFuture<Void> completion;
+    private volatile boolean keepPartialResponse;
+
+    /**
+     * Creates a handle for the given stream. Cancelling the future must abort the stream.
+     *
+     * @param completion The future that completes when the stream has ended.
+     */
+    public StreamHandle(CompletableFuture<Void> completion) {
+        this.completion = Objects.requireNonNull(completion, "Completion cannot be null");
+    }
+
+    /**
+     * Aborts the generation and discards the partial response.
+     *
+     * @return True if the stream was still running and is now cancelled.
+     */
+    public boolean cancel() {
+        return cancel(false);
+    }
+
+    /**
+     * Aborts the generation.
+     *
+     * @param keepPartialResponse Whether the part of the response received so far should be kept, e.g. committed
+     *                            to the conversation memory as the assistant's reply. Otherwise the exchange is
+     *                            discarded as if it had never been sent.
+     * @return True if the stream was still running and is now cancelled.
+     */
+    public boolean cancel(boolean keepPartialResponse) {
+        this.keepPartialResponse = keepPartialResponse;
+        return completion.cancel(true);
+    }
+
+    /**
+     * @return True if the stream was cancelled before it ended.
+     */
+    public boolean isCancelled() {
+        return completion.isCancelled();
+    }
+
+    /**
+     * @return True if the stream has ended, normally, with an error or by cancellation.
+     */
+    public boolean isDone() {
+        return completion.isDone();
+    }
+
+    /**
+     * @return True if the stream was cancelled with {@code keepPartialResponse} set.
+     */
+    public boolean isPartialResponseKept() {
+        return completion.isCancelled() && keepPartialResponse;
+    }
+
+    /**
+     * Returns the future that completes when the stream has ended. Cancelling it is equivalent to {@link #cancel()}.
+     *
+     * @return The completion future.
+     */
+    public CompletableFuture<Void> getCompletion() {
+        return completion;
+    }
+
+    /**
+     * Blocks until the stream has ended. If the waiting thread is interrupted, the stream is cancelled.
+     *
+     * @throws LLMServiceException If the stream failed, or {@link LLMNetworkException} if it was cancelled.
+     */
+    public void await() throws LLMServiceException {
+        try {
+            completion.get();
+        } catch (InterruptedException e) {
+            completion.cancel(true);
+            Thread.currentThread().interrupt();
+            throw new LLMNetworkException("Request was Interrupted", e);
+        } catch (CancellationException e) {
+            throw new LLMNetworkException("Request was cancelled", e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            while (cause instanceof CompletionException && cause.getCause() != null) {
+                cause = cause.getCause();
+            }
+            if (cause instanceof LLMServiceException) {
+                throw (LLMServiceException) cause;
+            } else if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            }
+            throw new LLMServiceException("Unexpected error during stream", cause);
+        }
+    }
+}
@@ -15,5 +15,13 @@ public interface StreamHandler {
      * @param response The {@link StreamResponse} object containing the content and reasoning for the current chunk.
      */
     void onStream(StreamResponse response);
+
+    /**
+     * Called once after the last chunk when the stream has ended normally, before the call returns or its future
+     * completes. It is not called if the stream fails or is cancelled. Handlers that buffer chunks use it to hand
+     * on what they still hold; handlers that wrap another handler must pass it on.
+     */
+    default void onComplete() {
+    }
 }
 
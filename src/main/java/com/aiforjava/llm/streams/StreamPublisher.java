@@ -0,0 +1,279 @@
+package com.aiforjava.llm.streams;
+
+import com.aiforjava.exception.LLMStreamProcessingException;
+
+import java.util.ArrayDeque;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * Exposes a streaming generation as a {@link Flow.Publisher}, so that the consumer sets the pace with
+ * {@link Flow.Subscription#request(long)} instead of being pushed every chunk as it arrives.
+ * <p>
+ * The generation is started when the publisher is subscribed to, and only one subscriber is allowed. Chunks are
+ * held in a bounded buffer until they are requested; what happens when it is full is set by the
+ * {@link OverflowPolicy}. Signals are delivered on a virtual thread of the subscription, never on the thread that
+ * delivers the chunks, so a slow subscriber holds up the stream only if the policy is {@link OverflowPolicy#BLOCK}.
+ * In that case the thread delivering the chunks waits for room in the buffer. Both bundled clients deliver each
+ * stream's chunks on a thread of its own, so the wait pauses the reading of that one connection:
+ * {@link com.aiforjava.llm.client.PooledAsyncHttpClient} hands chunks off its I/O reactor thread and withholds
+ * flow-control capacity, and {@link com.aiforjava.llm.client.DefaultHttpClient} requests no further data. A custom
+ * {@link com.aiforjava.llm.client.LLM_Client} that calls its handlers on a shared I/O thread should not be used with
+ * {@code BLOCK}.
+ * Cancelling the subscription aborts the generation.
+ */
+public final class StreamPublisher implements Flow.Publisher<StreamResponse> {
+    private final Function<StreamHandler, CompletableFuture<Void>> source;
+    private final int bufferSize;
+    private final OverflowPolicy overflowPolicy;
+    private final AtomicBoolean subscribed = new AtomicBoolean();
+    private final AtomicLong droppedChunks = new AtomicLong();
+
+    /**
+     * @param source Starts the generation, delivering its chunks to the given handler, and returns a future that
+     *               completes when the generation has ended. Cancelling the future must abort the generation.
+     * @param bufferSize The number of chunks held for the subscriber. Must be greater than 0.
+     * @param overflowPolicy What to do with a chunk when the buffer is full.
+     */
+    public StreamPublisher(Function<StreamHandler, CompletableFuture<Void>> source, int bufferSize, OverflowPolicy overflowPolicy) {
+        this.source = Objects.requireNonNull(source, "Source cannot be null");
+        if (bufferSize <= 0) {
+            throw new IllegalArgumentException("Buffer size must be greater than 0");
+        }
+        this.bufferSize = bufferSize;
+        this.overflowPolicy = Objects.requireNonNull(overflowPolicy, "Overflow policy cannot be null");
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super StreamResponse> subscriber) {
+        Objects.requireNonNull(subscriber, "Subscriber cannot be null");
+        if (!subscribed.compareAndSet(false, true)) {
+            subscriber.onSubscribe(new Flow.Subscription() {
+                @Override
+                public void request(long n) {
+                }
+
+                @Override
+                public void cancel() {
+                }
+            });
+            subscriber.onError(new IllegalStateException("A StreamPublisher can only be subscribed to once"));
+            return;
+        }
+        Subscription subscription = new Subscription(subscriber);
+        subscriber.onSubscribe(subscription);
+        subscription.start();
+    }
+
+    /**
+     * @return The number of chunks discarded by the overflow policy so far.
+     */
+    public long getDroppedChunks() {
+        return droppedChunks.get();
+    }
+
+    private final class Subscription implements Flow.Subscription, StreamHandler {
+        private final Flow.Subscriber<? super StreamResponse> subscriber;
+        private final ReentrantLock lock = new ReentrantLock(); // Not a monitor, which would pin the virtual thread
+        private final Condition changed = lock.newCondition();
+        private final Condition notFull = lock.newCondition();
+
+        // All fields below are guarded by "lock"
+        private final ArrayDeque<StreamResponse> buffer = new ArrayDeque<>();
+        private long demand;
+        private boolean cancelled;
+        private boolean upstreamDone;
+        private Throwable failure; // Of the generation, or of a request that broke the Flow rules
+        private CompletableFuture<Void> upstream;
+
+        Subscription(Flow.Subscriber<? super StreamResponse> subscriber) {
+            this.subscriber = subscriber;
+        }
+
+        void start() {
+            lock.lock();
+            try {
+                if (cancelled) {
+                    return; // Cancelled from onSubscribe
+                }
+            } finally {
+                lock.unlock();
+            }
+            CompletableFuture<Void> stream;
+            try {
+                stream = source.apply(this);
+            } catch (RuntimeException e) {
+                stream = CompletableFuture.failedFuture(e);
+            }
+            stream.whenComplete((ignored, error) -> {
+                lock.lock();
+                try {
+                    upstreamDone = true;
+                    if (error != null && failure == null) {
+                        failure = unwrap(error);
+                    }
+                    changed.signalAll();
+                } finally {
+                    lock.unlock();
+                }
+            });
+            boolean cancelledMeanwhile;
+            lock.lock();
+            try {
+                upstream = stream;
+                cancelledMeanwhile = cancelled;
+            } finally {
+                lock.unlock();
+            }
+            if (cancelledMeanwhile) {
+                stream.cancel(true);
+                return;
+            }
+            Thread.ofVirtual().name("ai4j-stream-publisher").start(this::deliver);
+        }
+
+        @Override
+        public void onStream(StreamResponse response) {
+            lock.lock();
+            try {
+                if (cancelled) {
+                    return;
+                }
+                if (overflowPolicy == OverflowPolicy.LATEST_ONLY) {
+                    droppedChunks.addAndGet(buffer.size());
+                    buffer.clear();
+                } else if (buffer.size() >= bufferSize) {
+                    if (overflowPolicy == OverflowPolicy.DROP_OLDEST) {
+                        buffer.poll();
+                        droppedChunks.incrementAndGet();
+                    } else {
+                        while (buffer.size() >= bufferSize && !cancelled) {
+                            notFull.await();
+                        }
+                        if (cancelled) {
+                            return;
+                        }
+                    }
+                }
+                buffer.add(response);
+                changed.signalAll();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new LLMStreamProcessingException("Interrupted while waiting for the subscriber", e);
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void request(long n) {
+            CompletableFuture<Void> toCancel = null;
+            lock.lock();
+            try {
+                if (n <= 0) {
+                    if (failure == null) {
+                        failure = new IllegalArgumentException("Requested " + n + " chunks, but the demand must be positive");
+                    }
+                    upstreamDone = true;
+                    buffer.clear();
+                    notFull.signalAll();
+                    toCancel = upstream;
+                } else {
+                    demand = demand + n < 0 ? Long.MAX_VALUE : demand + n;
+                }
+                changed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+            cancelUpstream(toCancel);
+        }
+
+        @Override
+        public void cancel() {
+            CompletableFuture<Void> toCancel = null;
+            lock.lock();
+            try {
+                if (!cancelled) {
+                    cancelled = true;
+                    buffer.clear();
+                    changed.signalAll();
+                    notFull.signalAll();
+                    toCancel = upstream;
+                }
+            } finally {
+                lock.unlock();
+            }
+            cancelUpstream(toCancel);
+        }
+
+        /**
+         * Aborts the generation. Called without holding the lock: the transport may hold its own lock while it
+         * waits in {@link #onStream} for room in the buffer, and cancelling takes that lock too.
+         */
+        private void cancelUpstream(CompletableFuture<Void> stream) {
+            if (stream != null) {
+                stream.cancel(true);
+            }
+        }
+
+        /**
+         * Hands buffered chunks to the subscriber as far as it has requested them, then the final signal. A failed
+         * generation is signalled once the buffer is drained, or at once if the subscriber has no demand left.
+         */
+        private void deliver() {
+            try {
+                while (true) {
+                    StreamResponse next;
+                    Throwable error;
+                    lock.lock();
+                    try {
+                        while (!cancelled && !(demand > 0 && !buffer.isEmpty()) && !(upstreamDone && (buffer.isEmpty() || failure != null && demand == 0))) {
+                            changed.await();
+                        }
+                        if (cancelled) {
+                            return;
+                        }
+                        next = demand > 0 ? buffer.poll() : null;
+                        if (next != null) {
+                            demand--;
+                            notFull.signal();
+                        } else {
+                            cancelled = true; // Terminal: no further signals, and a blocked producer gives up
+                            notFull.signalAll();
+                        }
+                        error = failure;
+                    } finally {
+                        lock.unlock();
+                    }
+                    if (next == null) {
+                        if (error != null) {
+                            subscriber.onError(error);
+                        } else {
+                            subscriber.onComplete();
+                        }
+                        return;
+                    }
+                    subscriber.onNext(next);
+                }
+            } catch (InterruptedException e) {
+                cancel();
+            } catch (RuntimeException e) {
+                cancel(); // A subscriber that throws is treated as having cancelled
+            }
+        }
+    }
+
+    private static Throwable unwrap(Throwable failure) {
+        while (failure instanceof CompletionException && failure.getCause() != null) {
+            failure = failure.getCause();
+        }
+        return failure;
+    }
+}
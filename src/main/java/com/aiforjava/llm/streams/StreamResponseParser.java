@@ -2,10 +2,16 @@ package com.aiforjava.llm.streams;
 
 import com.aiforjava.exception.LLMParseException;
 
+import java.nio.charset.StandardCharsets;
+
 /**
  * Defines the contract for parsing a single line of a streaming LLM response.
  * Implementations of this interface are responsible for extracting meaningful content
  * from raw streaming data, typically JSON chunks.
+ * <p>
+ * The parser configured on a client is used as a factory: the client calls {@link #newSession()} for every
+ * stream and feeds that stream's events to the session only, so parsers that keep state across the chunks of a
+ * stream can serve any number of concurrent streams.
  */
 public interface StreamResponseParser {
 
@@ -17,4 +23,39 @@ public interface StreamResponseParser {
      * @throws LLMParseException If the line cannot be parsed or does not conform to the expected format.
      */
     StreamResponse parse(String line) throws LLMParseException;
-}
\ No newline at end of file
+
+    /**
+     * Parses the data of one Server-Sent-Event straight from the bytes framed by {@link SseEventDecoder}.
+     * The default implementation rebuilds the "data: " line and delegates to {@link #parse(String)};
+     * implementations that can read JSON from bytes should override it to avoid the intermediate Strings.
+     *
+     * @param eventType The SSE event type, or null for the default "message" type.
+     * @param data The array holding the event data. It is reused after this call and must not be retained.
+     * @param offset The start of the data within the array.
+     * @param length The number of data bytes.
+     * @return A {@link StreamResponse} containing the extracted content and reasoning, or null if the event does not contain content.
+     * @throws LLMParseException If the data cannot be parsed or does not conform to the expected format.
+     */
+    default StreamResponse parseEvent(String eventType, byte[] data, int offset, int length) throws LLMParseException {
+        return parse("data: " + new String(data, offset, length, StandardCharsets.UTF_8));
+    }
+
+    /**
+     * Returns a parser for the events of one new stream. Its state is not shared with other sessions, and it is
+     * called from one thread at a time, in the order the events arrive.
+     * The default implementation returns this parser, which suits parsers that keep no state between chunks.
+     *
+     * @return The parser for the new stream.
+     */
+    default StreamResponseParser newSession() {
+        return this;
+    }
+
+    /**
+     * Called on a session once its stream has ended, whether it completed, failed or was cancelled, so that a
+     * parser can release what it holds for the stream. Clients call it after the last event, possibly more than
+     * once, so implementations must tolerate repeated calls. The default implementation does nothing.
+     */
+    default void endSession() {
+    }
+}
@@ -0,0 +1,231 @@
+package com.aiforjava.llm.streams;
+
+import java.text.BreakIterator;
+import java.text.CharacterIterator;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Objects;
+
+/**
+ * A {@link StreamHandler} that turns the content of a stream into the words of a {@link WordStreamHandler}. The
+ * deltas of a model split words at arbitrary points ("hel", "lo wor", "ld"), so text-to-speech, keyword spotting or
+ * a typewriter effect would otherwise have to re-buffer the text themselves. This handler finds word boundaries
+ * with a {@link BreakIterator}, so words are segmented by the Unicode rules rather than by spaces: "can't" and
+ * "3.14" stay one word, and ideographic text without spaces is split too. Punctuation and whitespace between words
+ * are not passed on.
+ * <p>
+ * A word is passed on as soon as the text after it shows that it cannot grow: right away if a space follows,
+ * otherwise once two more characters have arrived, since an apostrophe or a decimal point may still join it to the
+ * next chunk. The word still open when the stream completes is passed on then. Only the content of the stream is
+ * segmented, not its reasoning.
+ * <p>
+ * Text is held in a single char array that is reused across chunks, and only the words themselves are turned into
+ * Strings. An instance serves one stream and is not thread-safe.
+ */
+public final class WordSegmentingStreamHandler implements StreamHandler {
+    private final WordStreamHandler delegate;
+    private final BreakIterator wordBreaks;
+    private final CharBufferIterator text = new CharBufferIterator();
+
+    private char[] buffer = new char[256];
+    private int length; // Text not yet segmented, from the start of the buffer
+
+    /**
+     * Creates a handler that segments words by the rules of the default locale.
+     *
+     * @param delegate The handler that receives the words. Must not be null.
+     */
+    public WordSegmentingStreamHandler(WordStreamHandler delegate) {
+        this(delegate, Locale.getDefault());
+    }
+
+    /**
+     * @param delegate The handler that receives the words. Must not be null.
+     * @param locale The locale whose word-boundary rules are applied.
+     */
+    public WordSegmentingStreamHandler(WordStreamHandler delegate, Locale locale) {
+        this.delegate = Objects.requireNonNull(delegate, "Delegate handler cannot be null");
+        this.wordBreaks = BreakIterator.getWordInstance(Objects.requireNonNull(locale, "Locale cannot be null"));
+    }
+
+    @Override
+    public void onStream(StreamResponse response) {
+        String content = response.getContent();
+        if (content == null || content.isEmpty()) {
+            return;
+        }
+        append(content);
+        segment(false);
+    }
+
+    /**
+     * Passes on the word still open at the end of the stream.
+     */
+    @Override
+    public void onComplete() {
+        segment(true);
+    }
+
+    private void append(String content) {
+        int required = length + content.length();
+        if (required > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(required, buffer.length * 2));
+        }
+        content.getChars(0, content.length(), buffer, length);
+        length = required;
+    }
+
+    /**
+     * Passes on every word whose end is settled and drops the text before it from the buffer. At the end of the
+     * stream, every boundary is settled.
+     */
+    private void segment(boolean endOfStream) {
+        if (length == 0) {
+            return;
+        }
+        text.reset(buffer, length);
+        wordBreaks.setText(text);
+        // The last segment may still be continued by the next chunk
+        int settledLimit = length;
+        if (!endOfStream) {
+            wordBreaks.last();
+            settledLimit = wordBreaks.previous();
+        }
+        int consumed = 0;
+        int start = wordBreaks.first();
+        for (int end = wordBreaks.next(); end != BreakIterator.DONE && end <= settledLimit; end = wordBreaks.next()) {
+            if (!endOfStream && !isSettled(end)) {
+                break;
+            }
+            if (isWord(start, end)) {
+                delegate.onWord(new String(buffer, start, end - start));
+            }
+            consumed = end;
+            start = end;
+        }
+        if (consumed > 0) {
+            System.arraycopy(buffer, consumed, buffer, 0, length - consumed);
+            length -= consumed;
+        }
+    }
+
+    /**
+     * Returns whether the boundary at the given index can no longer move. The word-boundary rules look at most
+     * two characters ahead (a letter, an apostrophe, a letter), not counting combining marks and format
+     * characters, which belong to the character before them.
+     */
+    private boolean isSettled(int boundary) {
+        if (Character.isWhitespace(buffer[boundary])) {
+            return true;
+        }
+        int lookahead = 0;
+        for (int i = boundary; i < length; i++) {
+            switch (Character.getType(buffer[i])) {
+                case Character.NON_SPACING_MARK:
+                case Character.ENCLOSING_MARK:
+                case Character.COMBINING_SPACING_MARK:
+                case Character.FORMAT:
+                    break;
+                default:
+                    if (++lookahead == 2) {
+                        return true;
+                    }
+            }
+        }
+        return false;
+    }
+
+    private boolean isWord(int start, int end) {
+        for (int i = start; i < end; ) {
+            int codePoint = Character.codePointAt(buffer, i, end);
+            if (Character.isLetterOrDigit(codePoint)) {
+                return true;
+            }
+            i += Character.charCount(codePoint);
+        }
+        return false;
+    }
+
+    /**
+     * A {@link CharacterIterator} over the filled part of the buffer, so that the break iterator reads the text in
+     * place instead of from a String copied for each chunk.
+     */
+    private static final class CharBufferIterator implements CharacterIterator {
+        private char[] chars;
+        private int end;
+        private int index;
+
+        void reset(char[] chars, int end) {
+            this.chars = chars;
+            this.end = end;
+            this.index = 0;
+        }
+
+        @Override
+        public char first() {
+            index = 0;
+            return current();
+        }
+
+        @Override
+        public char last() {
+            index = end > 0 ? end - 1 : 0;
+            return current();
+        }
+
+        @Override
+        public char current() {
+            return index < end ? chars[index] : DONE;
+        }
+
+        @Override
+        public char next() {
+            if (index < end) {
+                index++;
+            }
+            return current();
+        }
+
+        @Override
+        public char previous() {
+            if (index == 0) {
+                return DONE;
+            }
+            index--;
+            return current();
+        }
+
+        @Override
+        public char setIndex(int position) {
+            if (position < 0 || position > end) {
+                throw new IllegalArgumentException("Invalid index: " + position);
+            }
+            index = position;
+            return current();
+        }
+
+        @Override
+        public int getBeginIndex() {
+            return 0;
+        }
+
+        @Override
+        public int getEndIndex() {
+            return end;
+        }
+
+        @Override
+        public int getIndex() {
+            return index;
+        }
+
+        @Override
+        public Object clone() {
+            try {
+                return super.clone();
+            } catch (CloneNotSupportedException e) {
+                throw new AssertionError(e);
+            }
+        }
+    }
+}
@@ -2,18 +2,23 @@ package com.aiforjava.memory.cache;
 
 
 import com.aiforjava.llm.client.LLMResponse;
-import com.github.benmanes.caffeine.cache.Cache;
+import com.github.benmanes.caffeine.cache.AsyncCache;
 import com.github.benmanes.caffeine.cache.Caffeine;
 import java.time.Duration;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 /**
  * Manages caching of LLM responses using Caffeine. This class provides a centralized
  * mechanism to store and retrieve LLM responses, reducing redundant API calls and improving performance.
+ * The cache holds futures, so a response that is still being generated is already visible to other callers:
+ * {@link #get(String, Function)} starts at most one load per key and every concurrent caller shares its result.
+ * Failed loads are removed automatically.
  */
 public class LLMCacheManager {
 
-    private final Cache<String, LLMResponse> llmResponseCache;
+    private final AsyncCache<String, LLMResponse> llmResponseCache;
 
     /**
      * Constructs an LLMCacheManager with default caching parameters.
@@ -38,17 +43,32 @@ public class LLMCacheManager {
         this.llmResponseCache = Caffeine.newBuilder()
                 .maximumSize(maximumSize)
                 .expireAfterWrite(expireAfterWrite)
-                .build();
+                .buildAsync();
     }
 
     /**
      * Retrieves an LLM response from the cache.
      *
      * @param key The cache key (e.g., a hash of the prompt and model parameters).
-     * @return The cached LLMResponse, or null if not found.
+     * @return The cached LLMResponse, or null if not found or still being generated.
      */
     public LLMResponse get(String key) {
-        return llmResponseCache.getIfPresent(key);
+        CompletableFuture<LLMResponse> future = llmResponseCache.getIfPresent(key);
+        return future != null && future.isDone() && !future.isCompletedExceptionally() ? future.join() : null;
+    }
+
+    /**
+     * Returns the cached response for a key, or starts loading it if absent. The load is atomic per key:
+     * concurrent callers for the same key receive the same in-flight future instead of issuing their own request.
+     * If the load fails, the entry is removed so that the next caller tries again.
+     *
+     * @param key The cache key.
+     * @param loader Starts generating the response for a missing key.
+     * @return The future of the cached or in-flight response. Cancelling it cancels the load for every caller,
+     *         so callers that may give up should wait on a {@link CompletableFuture#copy() copy}.
+     */
+    public CompletableFuture<LLMResponse> get(String key, Function<String, CompletableFuture<LLMResponse>> loader) {
+        return llmResponseCache.get(key, (k, executor) -> loader.apply(k));
     }
 
     /**
@@ -58,7 +78,7 @@ public class LLMCacheManager {
      * @param value The LLMResponse to cache.
      */
     public void put(String key, LLMResponse value) {
-        llmResponseCache.put(key, value);
+        llmResponseCache.put(key, CompletableFuture.completedFuture(value));
     }
 
     /**
@@ -67,13 +87,13 @@ public class LLMCacheManager {
      * @param key The key of the entry to invalidate.
      */
     public void invalidate(String key) {
-        llmResponseCache.invalidate(key);
+        llmResponseCache.synchronous().invalidate(key);
     }
 
     /**
      * Clears all entries from the cache.
      */
     public void invalidateAll() {
-        llmResponseCache.invalidateAll();
+        llmResponseCache.synchronous().invalidateAll();
     }
 }